@@ -0,0 +1,164 @@
+package com.mycompany.library.benchmarks;
+
+import com.mycompany.library.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the circulation hot paths of {@link Library}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+public class CirculationBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Looks up a random book in the global index.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @return the book found
+     */
+    @Benchmark
+    public Book searchBookByID(LibraryState state, ThreadState thread) {
+        return state.library.searchBookByID(state.randomBook(thread.random));
+    }
+
+    /**
+     * Lends a random book from the branch that holds it and returns it to the
+     * same branch on time, so the library stays in the same state.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @param blackhole sink for the results
+     */
+    @Benchmark
+    public void lendBookAndReturnBook(LibraryState state, ThreadState thread, Blackhole blackhole) {
+        String bookID = state.randomBook(thread.random);
+        String userID = state.randomUser(thread.random);
+        String branchID = state.library.searchBranchOfBook(bookID).getID();
+        CirculationResult lent = state.library.lendBook(userID, bookID, branchID);
+        blackhole.consume(lent);
+        if (lent.isSuccess()) {
+            blackhole.consume(state.library.returnBook(userID, bookID, branchID, new Date()));
+        }
+    }
+
+    /**
+     * Lends and returns a random book like {@link #lendBookAndReturnBook},
+     * routing both through the shard of the book's branch.
+     *
+     * @param state the populated library
+     * @param shards the branch shards of the library
+     * @param thread the per-thread random source
+     * @param blackhole sink for the results
+     */
+    @Benchmark
+    public void lendBookAndReturnBookSharded(LibraryState state, ShardState shards, ThreadState thread,
+            Blackhole blackhole) {
+        String bookID = state.randomBook(thread.random);
+        String userID = state.randomUser(thread.random);
+        String branchID = state.library.searchBranchOfBook(bookID).getID();
+        CirculationResult lent = shards.shards.lendBook(userID, bookID, branchID);
+        blackhole.consume(lent);
+        if (lent.isSuccess()) {
+            blackhole.consume(shards.shards.returnBook(userID, bookID, branchID, new Date()));
+        }
+    }
+
+    /**
+     * Returns a random book for a random user, which usually does not hold
+     * it, measuring the lookup path of {@link Library#returnBook}.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @return whether the book was returned
+     */
+    @Benchmark
+    public boolean returnBookNotHeld(LibraryState state, ThreadState thread) {
+        return state.library.returnBook(state.randomUser(thread.random), state.randomBook(thread.random),
+                state.randomBranch(thread.random), new Date());
+    }
+
+    /**
+     * Reads one page of the available books of a random branch. Nothing
+     * changes the library meanwhile, so after the first call of each branch
+     * this measures a hit of the query cache.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @return the page of books
+     */
+    @Benchmark
+    public List<Book> getAvailableBooksPage(LibraryState state, ThreadState thread) {
+        return state.library.getAvailableBooks(state.randomBranch(thread.random), 0, PAGE_SIZE);
+    }
+
+    /**
+     * Copies every available book of a random branch, as the unpaged
+     * {@link Library#getAvailableBooks(String)} does. Like
+     * {@link #getAvailableBooksPage}, this measures cache hits.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @return the available books
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Book> getAvailableBooks(LibraryState state, ThreadState thread) {
+        return state.library.getAvailableBooks(state.randomBranch(thread.random));
+    }
+
+    /**
+     * Reads one page of the available books of a random branch with an empty
+     * query cache, like {@link #getAvailableBooksPage} after the branch
+     * changed.
+     *
+     * @param state the populated library
+     * @param uncached empties the query cache before the call
+     * @param thread the per-thread random source
+     * @return the page of books
+     */
+    @Benchmark
+    public List<Book> getAvailableBooksPageUncached(LibraryState state, UncachedState uncached, ThreadState thread) {
+        return state.library.getAvailableBooks(state.randomBranch(thread.random), 0, PAGE_SIZE);
+    }
+
+    /**
+     * Copies every available book of a random branch with an empty query
+     * cache, like {@link #getAvailableBooks} after the branch changed.
+     *
+     * @param state the populated library
+     * @param uncached empties the query cache before the call
+     * @param thread the per-thread random source
+     * @return the available books
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Book> getAvailableBooksUncached(LibraryState state, UncachedState uncached, ThreadState thread) {
+        return state.library.getAvailableBooks(state.randomBranch(thread.random));
+    }
+
+    /**
+     * Searches the catalog for the available books of a random author in a
+     * random branch.
+     *
+     * @param state the populated library
+     * @param thread the per-thread random source
+     * @return the first page of matches
+     */
+    @Benchmark
+    public List<Book> searchBooks(LibraryState state, ThreadState thread) {
+        return state.library.searchBooks("author " + thread.random.nextInt(20_000),
+                state.randomBranch(thread.random), true, PAGE_SIZE);
+    }
+}
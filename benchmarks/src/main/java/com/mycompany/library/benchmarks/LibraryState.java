@@ -0,0 +1,106 @@
+package com.mycompany.library.benchmarks;
+
+import com.mycompany.library.*;
+
+import java.util.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A library populated at a given scale, shared by every benchmark thread.
+ * <p>
+ * The population follows the ratios of a real network: one branch per
+ * {@value #BOOKS_PER_BRANCH} books and one user per {@value #BOOKS_PER_USER}
+ * books. A tenth of the books is on loan and a tenth of the users owes
+ * fines, so reports and availability lists are not trivially empty or full.
+ * Circulation metrics are off unless the {@code metrics} parameter turns them
+ * on, which measures their overhead.
+ */
+@State(Scope.Benchmark)
+public class LibraryState {
+
+    static final int BOOKS_PER_BRANCH = 50_000;
+    static final int BOOKS_PER_USER = 20;
+    private static final long DAY = 86_400_000L;
+
+    @Param({"1000", "100000", "10000000"})
+    public int books;
+
+    @Param({"false"})
+    public boolean metrics;
+
+    Library library;
+    String[] bookIDs;
+    String[] userIDs;
+    String[] branchIDs;
+
+    /**
+     * Builds the library once per trial.
+     */
+    @Setup(Level.Trial)
+    public void populate() {
+        int branchCount = Math.max(1, books / BOOKS_PER_BRANCH);
+        int userCount = Math.max(10, books / BOOKS_PER_USER);
+        library = new Library();
+        branchIDs = new String[branchCount];
+        for (int i = 0; i < branchCount; i++) {
+            branchIDs[i] = "BR" + i;
+            library.addBranch(new Branch(branchIDs[i], "Branch " + i));
+        }
+        bookIDs = new String[books];
+        List<Book> batch = new ArrayList<>();
+        for (int b = 0; b < branchCount; b++) {
+            batch.clear();
+            for (int i = b; i < books; i += branchCount) {
+                bookIDs[i] = "BK" + i;
+                batch.add(new Book(bookIDs[i], "Title " + (i % 100_000), "Author " + (i % 20_000)));
+            }
+            library.searchBranchByID(branchIDs[b]).addBooks(batch);
+        }
+        userIDs = new String[userCount];
+        for (int i = 0; i < userCount; i++) {
+            userIDs[i] = "US" + i;
+            library.addUser(new User(userIDs[i], "User " + i));
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        Date late = new Date(System.currentTimeMillis() + 30 * DAY);
+        for (int i = 0; i < books / 5; i++) {
+            String userID = userIDs[random.nextInt(userCount)];
+            String bookID = bookIDs[random.nextInt(books)];
+            String branchID = library.searchBranchOfBook(bookID).getID();
+            if (library.lendBook(userID, bookID, branchID).isSuccess() && random.nextBoolean()) {
+                library.returnBook(userID, bookID, branchID, i % 10 == 0 ? late : new Date());
+            }
+        }
+        library.getMetrics().setEnabled(metrics);
+    }
+
+    /**
+     * Picks a random book ID.
+     *
+     * @param random the random source of the calling thread
+     * @return a book ID
+     */
+    String randomBook(SplittableRandom random) {
+        return bookIDs[random.nextInt(bookIDs.length)];
+    }
+
+    /**
+     * Picks a random user ID.
+     *
+     * @param random the random source of the calling thread
+     * @return a user ID
+     */
+    String randomUser(SplittableRandom random) {
+        return userIDs[random.nextInt(userIDs.length)];
+    }
+
+    /**
+     * Picks a random branch ID.
+     *
+     * @param random the random source of the calling thread
+     * @return a branch ID
+     */
+    String randomBranch(SplittableRandom random) {
+        return branchIDs[random.nextInt(branchIDs.length)];
+    }
+}
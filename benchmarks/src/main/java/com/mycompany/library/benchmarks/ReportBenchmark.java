@@ -0,0 +1,116 @@
+package com.mycompany.library.benchmarks;
+
+import com.mycompany.library.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of fine calculation, the loan history and the all-users debt
+ * report.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g"})
+public class ReportBenchmark {
+
+    private static final long DAY = 86_400_000L;
+
+    /**
+     * Loans with return dates spread over the first two months, some of them
+     * late.
+     */
+    @State(Scope.Benchmark)
+    public static class Loans {
+
+        Loan[] loans;
+
+        /**
+         * Builds the loans once per trial.
+         */
+        @Setup(Level.Trial)
+        public void build() {
+            User user = new User("US0", "User");
+            Branch branch = new Branch("BR0", "Branch");
+            loans = new Loan[1024];
+            for (int i = 0; i < loans.length; i++) {
+                Book book = new Book("BK" + i, "Title", "Author");
+                loans[i] = new Loan(user, book, branch);
+                loans[i].setDateOfReturn(new Date(loans[i].getDateOfLoan().getTime() + (i % 60) * DAY));
+            }
+        }
+    }
+
+    /**
+     * Computes the penalty of a loan.
+     *
+     * @param loans the prepared loans
+     * @param thread the per-thread random source
+     * @return the penalty
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long calculatePenalty(Loans loans, ThreadState thread) {
+        return loans.loans[thread.random.nextInt(loans.loans.length)].calculatePenalty();
+    }
+
+    /**
+     * Builds the debt of every user the way the console's "debts of all
+     * users" option does.
+     *
+     * @param state the populated library
+     * @param blackhole sink for the report rows
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void getAllDebts(LibraryState state, Blackhole blackhole) {
+        for (User user : state.library.getUsers()) {
+            blackhole.consume("ID: " + user.getID() + ", name: " + user.getName()
+                    + ", debt: $" + user.getAccumulatedDebts());
+        }
+    }
+
+    /**
+     * Reads the ten largest debtors from the debt ledger.
+     *
+     * @param state the populated library
+     * @return the top debtors
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<DebtLedger.Entry> getTopDebtors(LibraryState state) {
+        return state.library.getDebtLedger().getTopDebtors(10);
+    }
+
+    /**
+     * Reads the ten largest debtors through the library's query cache, which
+     * recomputes them only after a fine.
+     *
+     * @param state the populated library
+     * @return the top debtors
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<DebtLedger.Entry> getTopDebtorsCached(LibraryState state) {
+        return state.library.getTopDebtors(10);
+    }
+
+    /**
+     * Sums the penalties of every returned loan in the columnar history.
+     *
+     * @param state the populated library
+     * @return the total of the penalties
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long getTotalPenalties(LibraryState state) {
+        return state.library.getLoanHistory().getTotalPenalties();
+    }
+}
@@ -0,0 +1,33 @@
+package com.mycompany.library.benchmarks;
+
+import com.mycompany.library.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Branch shards over the populated library, one per core, shared by every
+ * benchmark thread.
+ */
+@State(Scope.Benchmark)
+public class ShardState {
+
+    BranchShards shards;
+
+    /**
+     * Starts the shards once per trial.
+     *
+     * @param state the populated library
+     */
+    @Setup(Level.Trial)
+    public void start(LibraryState state) {
+        shards = new BranchShards(state.library, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stops the shards at the end of the trial.
+     */
+    @TearDown(Level.Trial)
+    public void stop() {
+        shards.close();
+    }
+}
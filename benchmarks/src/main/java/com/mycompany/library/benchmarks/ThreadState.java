@@ -0,0 +1,21 @@
+package com.mycompany.library.benchmarks;
+
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-thread random source, so benchmark threads do not contend on it.
+ */
+@State(Scope.Thread)
+public class ThreadState {
+
+    SplittableRandom random;
+
+    /**
+     * Seeds the random source of the thread.
+     */
+    @Setup(Level.Trial)
+    public void seed() {
+        random = new SplittableRandom(Thread.currentThread().getId());
+    }
+}
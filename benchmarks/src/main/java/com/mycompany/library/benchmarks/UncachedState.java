@@ -0,0 +1,23 @@
+package com.mycompany.library.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Empties the library's query cache before every call, so the benchmarks
+ * that use it measure the queries themselves instead of a cache lookup.
+ * With several threads, another thread can refill the cache in between, so
+ * uncached results are exact only with {@code -t 1}.
+ */
+@State(Scope.Thread)
+public class UncachedState {
+
+    /**
+     * Drops every cached result. Runs outside the measured time.
+     *
+     * @param state the populated library
+     */
+    @Setup(Level.Invocation)
+    public void clearCache(LibraryState state) {
+        state.library.getQueryCache().clear();
+    }
+}
@@ -0,0 +1,244 @@
+package com.mycompany.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Represents a book that can be loaned
+ * Extends the Element class to inherit common properties.
+ * A book is one copy of a {@link Title}, which holds its name and author and
+ * its loan state, one bit per copy. The loan state is changed with
+ * compare-and-set so that concurrent desks can never lend the same copy
+ * twice.
+ */
+public class Book extends Element{
+    private static final VarHandle HOLDS;
+
+    static {
+        try {
+            HOLDS = MethodHandles.lookup().findVarHandle(Book.class, "holds", HoldQueue.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+     private volatile Title title;
+     private int copy;
+     private volatile Branch branch;
+     private volatile Loan currentLoan;
+     private volatile HoldQueue holds;
+     private int availableSlot = -1;
+     private int collectionSlot = -1;
+
+    /**
+     * Constructs a new Book with the specified ID, name and author.
+     * @param ID, the unique identifier of the book
+     * @param name, the name/title of the book
+     * @param author, the book's author
+      */
+    public Book(String ID, String name, String author) {
+        super(ID, null);
+        Title own = new Title(name, author, null);
+        this.copy = own.addCopy(false);
+        this.title = own;
+    }
+
+    /**
+     * Gets the name of the book, which is the name of its title.
+     *
+     * @return the name of the book
+     */
+    @Override
+    public String getName() {
+        return title.getName();
+    }
+
+     /**
+     * Gets the author of the book.
+     * 
+     * @return the author of the book
+     */
+    public String getAuthor() {
+        return title.getAuthor();
+    }
+
+    /**
+     * Gets the title the book is a copy of.
+     *
+     * @return the title
+     */
+    public Title getTitle() {
+        return title;
+    }
+
+    /**
+     * Makes the book a copy of a library's shared title, carrying over its
+     * loan state. Called by the library when it indexes the book, before
+     * other threads can reach it.
+     *
+     * @param shared the library's title with the same name and author
+     */
+    void attachTitle(Title shared) {
+        Title own = title;
+        boolean loaned = own.isLoaned(copy);
+        this.copy = shared.addCopy(loaned);
+        this.title = shared;
+        Branch holder = branch;
+        if (holder != null && availableSlot >= 0) {
+            // put on a shelf before the library knew it
+            shared.setAvailableAt(holder.getHandle(), true);
+        }
+    }
+    
+     /**
+     * Checks if the book is currently loaned.
+     * 
+     * @return true if the book is loaned, false otherwise
+     */
+    public boolean isLoaned() {
+        return title.isLoaned(copy);
+    }
+
+      /**
+     * Sets the loan status of the book.
+     * 
+     * @param isLoaned, true if the book is loaned false otherwise
+     */
+    public void setIsLoaned(boolean isLoaned) {
+        title.setLoaned(copy, isLoaned);
+    }
+
+    /**
+     * Atomically marks the book as loaned if it is not loaned already.
+     *
+     * @return true if the caller obtained the book, false if it was already
+     * loaned
+     */
+    public boolean tryLoan() {
+        return title.tryLoan(copy);
+    }
+
+    /**
+     * Gets the branch that currently holds the book.
+     *
+     * @return the owning branch, or null if the book is not in any branch
+     */
+    public Branch getBranch() {
+        return branch;
+    }
+
+    /**
+     * Sets the branch that currently holds the book. Only branches update this
+     * value when the book enters or leaves their collection.
+     *
+     * @param branch the new owning branch
+     */
+    void setBranch(Branch branch) {
+        this.branch = branch;
+    }
+
+    /**
+     * Gets the open loan of the book.
+     *
+     * @return the open loan, or null if the book is not loaned
+     */
+    public Loan getCurrentLoan() {
+        return currentLoan;
+    }
+
+    /**
+     * Sets the open loan of the book. Only branches update this value when
+     * the book is lent or returned.
+     *
+     * @param currentLoan the open loan, or null when the book is returned
+     */
+    void setCurrentLoan(Loan currentLoan) {
+        this.currentLoan = currentLoan;
+    }
+
+    /**
+     * Gets the number of patrons waiting for the book.
+     *
+     * @return the number of waiting holds
+     */
+    public int getHoldCount() {
+        HoldQueue queue = holds;
+        return queue != null ? queue.getWaitingCount() : 0;
+    }
+
+    /**
+     * Checks if the book is set aside for a patron's hold. Such a book is
+     * flagged as loaned but has no loan.
+     *
+     * @return true if the book is set aside
+     */
+    public boolean isReserved() {
+        HoldQueue queue = holds;
+        return queue != null && queue.getReady() != null;
+    }
+
+    /**
+     * Gets the hold queue of the book.
+     *
+     * @return the queue, or null if no hold was ever placed on the book
+     */
+    HoldQueue getHolds() {
+        return holds;
+    }
+
+    /**
+     * Gets the hold queue of the book, creating it on the first hold.
+     *
+     * @param clock the version clock of the book's library
+     * @return the queue
+     */
+    HoldQueue createHolds(VersionClock clock) {
+        HoldQueue queue = holds;
+        if (queue == null) {
+            queue = new HoldQueue(this, clock);
+            if (!HOLDS.compareAndSet(this, null, queue)) {
+                queue = holds;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Gets the position of the book in its branch's available set.
+     *
+     * @return the position in the available set, or -1 if it is not in it
+     */
+    int getAvailableSlot() {
+        return availableSlot;
+    }
+
+    /**
+     * Sets the position of the book in its branch's available set.
+     *
+     * @param availableSlot the new position, or -1 when it leaves the set
+     */
+    void setAvailableSlot(int availableSlot) {
+        this.availableSlot = availableSlot;
+    }
+
+    /**
+     * Gets the position of the book in its branch's collection.
+     *
+     * @return the position in the collection, or -1 if it is not in one
+     */
+    int getCollectionSlot() {
+        return collectionSlot;
+    }
+
+    /**
+     * Sets the position of the book in its branch's collection.
+     *
+     * @param collectionSlot the new position, or -1 when it leaves the
+     * collection
+     */
+    void setCollectionSlot(int collectionSlot) {
+        this.collectionSlot = collectionSlot;
+    }
+    
+    
+}
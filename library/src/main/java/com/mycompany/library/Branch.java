@@ -0,0 +1,757 @@
+package com.mycompany.library;
+
+import java.util.*;
+
+/**
+ * Represents a branch of the library. Extends the Element class to inherit
+ * common properties. Besides its collection, a branch keeps the set of books
+ * that are not loaned, updated on every loan and return. Books know their
+ * position in both lists, so adding and removing a book is O(1).
+ * <p>
+ * Branches are safe to use from several circulation desks at once. Book
+ * lookups are lock-free, the loan state of a book is claimed with
+ * compare-and-set, and the collection and available set are guarded by the
+ * branch's monitor. The sizes of the collection and of the available set
+ * also keep their recent changes by version, so a {@link ReadView} can read
+ * them as of its point in time, and every change of either bumps the
+ * branch's generation, which tells the {@link QueryCache} that the branch's
+ * cached query results are out of date. The available set is also counted
+ * by {@link Title}, so the available copies of a title are known without a
+ * scan.
+ * <p>
+ * A book with a {@link HoldQueue} is not put back on the shelf when it is
+ * returned: it is set aside for the first waiting hold, and stays flagged as
+ * loaned until that patron borrows it or cancels.
+ */
+public class Branch extends Element {
+
+    private List<Book> bookCollection;
+    private IntObjectMap<Book> booksByID;
+    private List<Book> availableBooks;
+    private Map<Title, int[]> availableByTitle;
+    private final VersionedCounter bookCountVersions;
+    private final VersionedCounter availableCountVersions;
+    private volatile long generation;
+    private volatile Library library;
+    private volatile SymbolTable bookIds;
+
+    /**
+     * Constructs a new Branch with the specified ID and name.
+     *
+     * @param ID the unique identifier of the branch
+     * @param name the name of the branch
+     */
+    public Branch(String ID, String name) {
+        super(ID, name);
+        this.bookCollection = new ArrayList<>();
+        this.booksByID = new IntObjectMap<>();
+        this.availableBooks = new ArrayList<>();
+        this.availableByTitle = new HashMap<>();
+        this.bookCountVersions = new VersionedCounter();
+        this.availableCountVersions = new VersionedCounter();
+        this.bookIds = new SymbolTable();
+    }
+
+    /**
+     * Adds a book to the branch's book collection. If the branch belongs to a
+     * library, the book is also registered in the library's global index and
+     * written to the library's journal.
+     *
+     * @param book the book to be added to the collection
+     * @return true if the book was added, false if it is null or its ID is
+     * already in use
+     */
+    public boolean addBook(Book book) {
+        VersionClock clock = clock();
+        long version = clock.begin();
+        boolean added;
+        try {
+            added = insertBook(book, version);
+        } finally {
+            clock.commit(version);
+        }
+        syncJournal();
+        return added;
+    }
+
+    /**
+     * Adds several books to the branch's book collection, taking the branch's
+     * lock once for the whole batch.
+     *
+     * @param books the books to be added to the collection
+     * @return the books that were not added because they are null or their ID
+     * is already in use
+     */
+    public List<Book> addBooks(Collection<Book> books) {
+        List<Book> rejected = new ArrayList<>();
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            synchronized (this) {
+                for (Book book : books) {
+                    if (!insertBook(book, version)) {
+                        rejected.add(book);
+                    }
+                }
+            }
+        } finally {
+            clock.commit(version);
+        }
+        syncJournal();
+        return rejected;
+    }
+
+    /**
+     * Inserts a book into the collection. Books that are not in any branch yet
+     * are new to the library and are journaled; books moving in from another
+     * branch are not.
+     *
+     * @param book the book to be added to the collection
+     * @param version the version of the change
+     * @return true if the book was added, false if it is null or its ID is
+     * already in use
+     */
+    private synchronized boolean insertBook(Book book, long version) {
+        int handle = book != null ? bookIds.intern(book.getID()) : -1;
+        if (handle < 0 || booksByID.containsKey(handle)) {
+            return false;
+        }
+        int previous = book.getHandle();
+        book.setHandle(handle);
+        if (library != null && !library.indexBook(book)) {
+            book.setHandle(previous);
+            return false;
+        }
+        TransactionJournal journal = journal();
+        boolean added = book.getBranch() == null;
+        if (journal != null && added) {
+            journal.logAddBook(book, this);
+        }
+        addToCollection(book, version);
+        this.booksByID.put(book.getHandle(), book);
+        book.setBranch(this);
+        if (!book.isLoaned()) {
+            markAvailable(book, version);
+        }
+        if (library != null && added) {
+            library.getFeed().publish(CirculationEvent.Type.BOOK_ADDED, null, book, this, 0, System.currentTimeMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Gets a copy of the book collection of the branch.
+     *
+     * @return the list of books in the branch's collection
+     */
+    public synchronized List<Book> getBookCollection() {
+        return new ArrayList<>(this.bookCollection);
+    }
+
+    /**
+     * Gets the number of books in the branch's collection.
+     *
+     * @return the number of books
+     */
+    public synchronized int getBookCount() {
+        return bookCollection.size();
+    }
+
+    /**
+     * Gets the number of books of the branch that are not loaned.
+     *
+     * @return the number of available books
+     */
+    public synchronized int getAvailableCount() {
+        return availableBooks.size();
+    }
+
+    /**
+     * Gets the number of copies of a title the branch has available.
+     *
+     * @param title the title
+     * @return the number of available copies
+     */
+    public synchronized int getAvailableCount(Title title) {
+        int[] count = availableByTitle.get(title);
+        return count != null ? count[0] : 0;
+    }
+
+    /**
+     * Gets the generation of the branch's collection and available set. It
+     * grows after every change of either, so a query result computed after
+     * reading a generation is current for as long as the generation stays
+     * the same.
+     *
+     * @return the generation
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Gets the number of books in the branch's collection as of a version.
+     *
+     * @param version a version pinned by a read view
+     * @return the number of books at that version
+     */
+    int getBookCount(long version) {
+        return (int) bookCountVersions.get(version);
+    }
+
+    /**
+     * Gets the number of books of the branch that were not loaned as of a
+     * version.
+     *
+     * @param version a version pinned by a read view
+     * @return the number of available books at that version
+     */
+    int getAvailableCount(long version) {
+        return (int) availableCountVersions.get(version);
+    }
+
+    /**
+     * Gets a page of the books of the branch that are not loaned.
+     *
+     * @param offset the position of the first available book to return
+     * @param limit the maximum number of books to return
+     * @return the available books in the requested page, empty if the offset
+     * is past the end
+     */
+    public synchronized List<Book> getAvailableBooks(int offset, int limit) {
+        int from = Math.max(offset, 0);
+        int to = (int) Math.min((long) from + Math.max(limit, 0), availableBooks.size());
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(availableBooks.subList(from, to));
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Search for a book in the collection by its ID.
+     *
+     * @param ID, the unique identifier of the book to search for.
+     * @return the book with the specified ID, or null if not found
+     */
+    public Book searchBookByID(String ID) {
+        int handle = bookIds.lookup(ID);
+        return handle >= 0 ? booksByID.get(handle) : null;
+    }
+
+    /**
+     * Loans a book to a user if the book is available
+     *
+     * @param user, user who wants to borrow the book
+     * @param bookID, the unique identifier of the book to be loaned
+     * @return LENT if the book was loaned, UNKNOWN_BOOK if it is not in the
+     * branch, ALREADY_LOANED if it is already loaned or ON_HOLD if it is set
+     * aside for another user
+     */
+    public CirculationResult loanBook(User user, String bookID) {
+        CirculationResult result = applyLoan(user, bookID, new Date());
+        syncJournal();
+        return result;
+    }
+
+    /**
+     * Loans a book to a user without waiting for the journal to reach disk.
+     * The loan is journaled before the user can see it, so the journal never
+     * records a return ahead of the loan it closes. A book set aside for a
+     * hold is only lent to the hold's user, and fulfills the hold.
+     *
+     * @param user user who wants to borrow the book
+     * @param bookID the unique identifier of the book to be loaned
+     * @param dateOfLoan the date of the loan
+     * @return the outcome of the loan
+     */
+    CirculationResult applyLoan(User user, String bookID, Date dateOfLoan) {
+        Book book = searchBookByID(bookID);
+        if (book == null) {
+            return CirculationResult.UNKNOWN_BOOK;
+        }
+        if (!book.tryLoan()) {
+            HoldQueue holds = book.getHolds();
+            Hold ready = holds != null ? holds.getReady() : null;
+            if (ready == null) {
+                return CirculationResult.ALREADY_LOANED;
+            }
+            if (ready.getUser() != user) {
+                return CirculationResult.ON_HOLD;
+            }
+            if (ready.getBranch() != this) {
+                // set aside for the user in the branch the book moved to
+                return CirculationResult.UNKNOWN_BOOK;
+            }
+            if (!holds.fulfill(ready)) {
+                return CirculationResult.ALREADY_LOANED;
+            }
+            // set aside in this branch, the book is already flagged and off the shelf
+        }
+        Hold promoted;
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            boolean moved;
+            synchronized (this) {
+                // the book may have moved to another branch after it was looked up
+                moved = book.getBranch() != this;
+                if (moved) {
+                    book.setIsLoaned(false);
+                } else {
+                    markUnavailable(book, version);
+                }
+            }
+            if (!moved) {
+                return openLoan(user, book, dateOfLoan, version);
+            }
+            HoldQueue holds = book.getHolds();
+            // a hold placed while the flag was taken here is still waiting
+            promoted = holds != null ? holds.dispatch(version) : null;
+        } finally {
+            clock.commit(version);
+        }
+        if (promoted != null) {
+            promoted.notifyReady();
+        }
+        return CirculationResult.UNKNOWN_BOOK;
+    }
+
+    /**
+     * Opens the loan of a book already taken off the shelf for a user.
+     *
+     * @param user the user borrowing the book
+     * @param book the book, flagged as loaned and out of the available set
+     * @param dateOfLoan the date of the loan
+     * @param version the version of the loan, committed by the caller
+     * @return LENT
+     */
+    private CirculationResult openLoan(User user, Book book, Date dateOfLoan, long version) {
+        Loan loan = new Loan(user, book, this, dateOfLoan);
+        loan.setLoanVersion(version);
+        TransactionJournal journal = journal();
+        if (journal != null) {
+            journal.logLend(user, book, this, dateOfLoan);
+        }
+        Library owner = library;
+        if (owner != null) {
+            // scheduled before anyone can return it, so unregister never runs first
+            owner.getDueDates().register(loan);
+        }
+        book.setCurrentLoan(loan);
+        user.addLoan(loan);
+        if (owner != null) {
+            owner.getFeed().publish(CirculationEvent.Type.LENT, user, book, this, 0, dateOfLoan.getTime());
+        }
+        return CirculationResult.LENT;
+    }
+
+    /**
+     * Processes the return of a lonaed book to a user. Only one of several
+     * concurrent returns of the same loan succeeds.
+     *
+     * @param user, the user returning the book
+     * @param book, the book to return
+     * @param dateOfReturn, the book's return date
+     * @return boolean, true if it was possible to deliver the book, false otherwise
+     */
+    public boolean returnBook(User user, Book book, Date dateOfReturn) {
+        boolean returned = applyReturn(user, book, dateOfReturn);
+        syncJournal();
+        return returned;
+    }
+
+    /**
+     * Processes the return of a book without waiting for the journal to reach
+     * disk. The return is journaled before the book can be lent again. If
+     * patrons are waiting for the book, it goes to the first of them, who is
+     * told once the return is committed.
+     *
+     * @param user the user returning the book
+     * @param book the book to return
+     * @param dateOfReturn the book's return date
+     * @return true if it was possible to deliver the book, false otherwise
+     */
+    boolean applyReturn(User user, Book book, Date dateOfReturn) {
+        if (book == null || !book.isLoaned()) {
+            return false;
+        }
+        Hold hold;
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            if (!closeReturn(user, book, dateOfReturn, version)) {
+                return false;
+            }
+            hold = receiveReturn(user, book, dateOfReturn, version);
+        } finally {
+            clock.commit(version);
+        }
+        if (hold != null) {
+            hold.notifyReady();
+        }
+        return true;
+    }
+
+    /**
+     * First half of a return to this branch: closes the user's loan, charges
+     * the fine and, if the book was lent by another branch, takes it out of
+     * that branch. Only the lending branch's collection is changed, so the
+     * step belongs to the lending branch's owner.
+     *
+     * @param user the user returning the book
+     * @param book the book to return
+     * @param dateOfReturn the book's return date
+     * @param version the version of the return, committed by the caller
+     * @return true if the loan was closed, false if the user does not hold it
+     */
+    boolean closeReturn(User user, Book book, Date dateOfReturn, long version) {
+        Loan loan = user.closeLoan(book.getID(), version);
+        if (loan == null) {
+            return false;
+        }
+        TransactionJournal journal = journal();
+        if (journal != null) {
+            journal.logReturn(user, book, this, dateOfReturn);
+        }
+        book.setCurrentLoan(null);
+        loan.close(dateOfReturn, version);
+        Library owner = library;
+        if (owner != null) {
+            owner.getDueDates().unregister(loan);
+        }
+        long penalty = loan.calculatePenalty();
+        if (penalty > 0) {
+            if (owner != null) {
+                owner.getDebtLedger().recordFine(user, loan.getBranch(), penalty, version);
+                owner.getMetrics().recordFine(penalty);
+                owner.getFeed().publish(CirculationEvent.Type.FINED, user, book, this, penalty,
+                        dateOfReturn.getTime());
+            } else {
+                user.addDebts(penalty, version);
+            }
+        }
+        user.archiveLoan(loan);
+        Branch from = book.getBranch();
+        if (from != this && from != null) {
+            // released before it is inserted here, while its slots still index the lending branch
+            from.releaseBook(book, version);
+        }
+        return true;
+    }
+
+    /**
+     * Second half of a return to this branch: puts the book into the
+     * collection if it came from another branch and sets it aside for the
+     * first waiting hold, or makes it available if there is none.
+     *
+     * @param user the user returning the book
+     * @param book the book whose loan was closed by {@link #closeReturn}
+     * @param dateOfReturn the book's return date
+     * @param version the version of the return, committed by the caller
+     * @return the hold the book was set aside for, to be notified once the
+     * return is committed, or null if the book is available
+     */
+    Hold receiveReturn(User user, Book book, Date dateOfReturn, long version) {
+        if (book.getBranch() != this) {
+            this.insertBook(book, version);
+        }
+        HoldQueue holds = book.getHolds();
+        Hold hold = holds != null ? holds.assign(this) : null;
+        if (hold == null) {
+            shelveBook(book, version);
+            // a hold placed while the book was still flagged as loaned waits for this return
+            holds = book.getHolds();
+            hold = holds != null ? holds.dispatch(version) : null;
+        }
+        Library owner = library;
+        if (owner != null) {
+            owner.getFeed().publish(CirculationEvent.Type.RETURNED, user, book, this, 0, dateOfReturn.getTime());
+        }
+        return hold;
+    }
+
+    /**
+     * Clears the loan flag of a book of the branch and puts it in the
+     * available set.
+     *
+     * @param book the book
+     * @param version the version of the change
+     */
+    synchronized void shelveBook(Book book, long version) {
+        book.setIsLoaned(false);
+        markAvailable(book, version);
+    }
+
+    /**
+     * Takes a book of the branch, already flagged as loaned, out of the
+     * available set to set it aside for a hold.
+     *
+     * @param book the book
+     * @param version the version of the change
+     * @return true if the book is in the branch, false if it moved
+     */
+    synchronized boolean reserveBook(Book book, long version) {
+        if (book.getBranch() != this) {
+            return false;
+        }
+        markUnavailable(book, version);
+        return true;
+    }
+
+    /**
+     * Removes a book from the branch's book collection.
+     *
+     * @param book the book to be removed from the collection
+     * @param version the version of the change
+     * @return true if the book was successfully removed, code false otherwise
+     */
+    synchronized boolean removeBook(Book book, long version) {
+        if (releaseBook(book, version)) {
+            if (book.getBranch() == this) {
+                book.setBranch(null);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes a book out of the collection, the lookup index and the available
+     * set, leaving the book pointing to this branch until the branch
+     * receiving it inserts it.
+     *
+     * @param book the book leaving the branch
+     * @param version the version of the change
+     * @return true if the book was in the branch, false otherwise
+     */
+    synchronized boolean releaseBook(Book book, long version) {
+        if (book == null || !booksByID.remove(book.getHandle(), book)) {
+            return false;
+        }
+        markUnavailable(book, version);
+        removeFromCollection(book, version);
+        return true;
+    }
+
+    /**
+     * Moves books from this branch to another branch of the same library,
+     * holding both branches' locks for the whole batch. Every book leaves
+     * this branch's collection, lookup index and available set and enters
+     * the other branch's, and the moves are journaled together.
+     *
+     * @param books the books to move
+     * @param to the branch receiving the books
+     * @return the books that were not moved because they are not in this
+     * branch, are loaned, or the branches are not in the same library
+     */
+    public List<Book> transferBooks(Collection<Book> books, Branch to) {
+        List<Book> rejected = new ArrayList<>();
+        if (to == null || to == this || to.library != library) {
+            rejected.addAll(books);
+            return rejected;
+        }
+        boolean thisFirst = getHandle() != to.getHandle()
+                ? getHandle() < to.getHandle()
+                : System.identityHashCode(this) < System.identityHashCode(to);
+        Branch first = thisFirst ? this : to;
+        Branch second = thisFirst ? to : this;
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            transferBooks(books, to, first, second, rejected, version);
+        } finally {
+            clock.commit(version);
+        }
+        syncJournal();
+        return rejected;
+    }
+
+    /**
+     * Moves books to another branch while holding both branches' locks.
+     *
+     * @param books the books to move
+     * @param to the branch receiving the books
+     * @param first the branch locked first
+     * @param second the branch locked second
+     * @param rejected where the books that were not moved are added
+     * @param version the version of the change
+     */
+    private void transferBooks(Collection<Book> books, Branch to, Branch first, Branch second,
+            List<Book> rejected, long version) {
+        synchronized (first) {
+            synchronized (second) {
+                TransactionJournal journal = journal();
+                for (Book book : books) {
+                    if (book == null || book.getBranch() != this || book.isLoaned()
+                            || to.booksByID.containsKey(book.getHandle())) {
+                        rejected.add(book);
+                        continue;
+                    }
+                    if (journal != null) {
+                        journal.logTransfer(book, this, to);
+                    }
+                    booksByID.remove(book.getHandle(), book);
+                    markUnavailable(book, version);
+                    removeFromCollection(book, version);
+                    to.addToCollection(book, version);
+                    to.booksByID.put(book.getHandle(), book);
+                    book.setBranch(to);
+                    to.markAvailable(book, version);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a book to the collection. Callers must hold the branch's
+     * monitor.
+     *
+     * @param book the book entering the collection
+     * @param version the version of the change
+     */
+    private void addToCollection(Book book, long version) {
+        book.setCollectionSlot(bookCollection.size());
+        bookCollection.add(book);
+        bookCountVersions.add(1, version, clock());
+        generation++;
+    }
+
+    /**
+     * Removes a book from the collection by moving the last book of the
+     * collection into its slot. Callers must hold the branch's monitor.
+     *
+     * @param book the book leaving the collection
+     * @param version the version of the change
+     */
+    private void removeFromCollection(Book book, long version) {
+        int slot = book.getCollectionSlot();
+        if (slot < 0) {
+            return;
+        }
+        Book last = bookCollection.remove(bookCollection.size() - 1);
+        if (last != book) {
+            bookCollection.set(slot, last);
+            last.setCollectionSlot(slot);
+        }
+        book.setCollectionSlot(-1);
+        bookCountVersions.add(-1, version, clock());
+        generation++;
+    }
+
+    /**
+     * Adds a book to the available set if it is not already there. Callers
+     * must hold the branch's monitor.
+     *
+     * @param book the book that became available
+     * @param version the version of the change
+     */
+    private void markAvailable(Book book, long version) {
+        if (book.getAvailableSlot() < 0) {
+            book.setAvailableSlot(availableBooks.size());
+            availableBooks.add(book);
+            availableCountVersions.add(1, version, clock());
+            generation++;
+            Title title = book.getTitle();
+            int[] count = availableByTitle.computeIfAbsent(title, key -> new int[1]);
+            if (count[0]++ == 0) {
+                title.setAvailableAt(getHandle(), true);
+            }
+        }
+    }
+
+    /**
+     * Removes a book from the available set by moving the last available book
+     * into its slot. Callers must hold the branch's monitor.
+     *
+     * @param book the book that is no longer available
+     * @param version the version of the change
+     */
+    private void markUnavailable(Book book, long version) {
+        int slot = book.getAvailableSlot();
+        if (slot < 0) {
+            return;
+        }
+        Book last = availableBooks.remove(availableBooks.size() - 1);
+        if (last != book) {
+            availableBooks.set(slot, last);
+            last.setAvailableSlot(slot);
+        }
+        book.setAvailableSlot(-1);
+        availableCountVersions.add(-1, version, clock());
+        generation++;
+        Title title = book.getTitle();
+        int[] count = availableByTitle.get(title);
+        if (count != null && --count[0] == 0) {
+            availableByTitle.remove(title);
+            title.setAvailableAt(getHandle(), false);
+        }
+    }
+
+    /**
+     * Gets the journal of the library this branch belongs to.
+     *
+     * @return the journal, or null if the library is not journaled
+     */
+    private TransactionJournal journal() {
+        Library owner = library;
+        return owner != null ? owner.getJournal() : null;
+    }
+
+    /**
+     * Waits until the journal records written by the current thread are on
+     * disk.
+     */
+    private void syncJournal() {
+        TransactionJournal journal = journal();
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Gets the clock that versions the branch's changes.
+     *
+     * @return the clock of the branch's library, or the detached clock if
+     * the branch is not in a library
+     */
+    private VersionClock clock() {
+        Library owner = library;
+        return owner != null ? owner.getClock() : VersionClock.DETACHED;
+    }
+
+    /**
+     * Gets the library this branch belongs to.
+     *
+     * @return the owning library, or null if the branch was not added to one
+     */
+    Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Attaches the branch to a library so that books added to it are
+     * registered in the library's global index. Until then the branch's books
+     * have handles from a symbol table of the branch's own; they get their
+     * handles from the library's table here, and the open loans of the
+     * loaned ones are re-keyed in their users.
+     *
+     * @param library the owning library
+     */
+    synchronized void setLibrary(Library library) {
+        SymbolTable ids = library.getBookIds();
+        IntObjectMap<Book> rekeyed = new IntObjectMap<>();
+        for (Book book : bookCollection) {
+            int previous = book.getHandle();
+            book.setHandle(ids.intern(book.getID()));
+            rekeyed.put(book.getHandle(), book);
+            Loan loan = book.getCurrentLoan();
+            if (loan != null && previous != book.getHandle()) {
+                loan.getUser().rekeyLoan(loan, previous);
+            }
+        }
+        this.booksByID = rekeyed;
+        this.bookIds = ids;
+        this.library = library;
+    }
+}
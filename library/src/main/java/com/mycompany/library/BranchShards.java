@@ -0,0 +1,411 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the circulation of a library on branch shards. Every branch belongs to
+ * one shard, chosen by the handle of its ID, and each shard has a single
+ * thread that applies all the lends, returns and availability queries of its
+ * branches in the order they arrive. Circulation desks hand their requests to
+ * the shard of the branch and wait for the outcome, so desks working with
+ * different shards never touch the same branch, and the branch's monitor is
+ * only ever taken by its owner.
+ * <p>
+ * A return to a branch of another shard than the one that lent the book is a
+ * two-shard handoff. The lending branch's shard closes the loan and releases
+ * the book from its collection, then passes the book to the receiving
+ * branch's shard, which puts it in its collection and makes it available.
+ * Between the two steps the book is in transit: a {@link ReadView} counts it
+ * in neither branch and neither as loaned nor as available, but never in
+ * both branches.
+ * <p>
+ * Shard threads never wait for the journal: they only queue records, and the
+ * desk that asked waits until its records are on disk, so the fsyncs of all
+ * shards are still shared. Branches stay safe to use directly, bypassing the
+ * shards, and users are shared by every shard.
+ * <p>
+ * Once set with {@link Library#setShards(BranchShards)}, the shards also run
+ * the lends and returns made through the library, single or in batches.
+ */
+public final class BranchShards implements AutoCloseable {
+
+    private final Library library;
+    private final ExecutorService[] executors;
+
+    /**
+     * Starts the shards of a library.
+     *
+     * @param library the library whose circulation is sharded
+     * @param shardCount the number of shards, usually the number of cores
+     * @throws IllegalArgumentException if the count is not positive
+     */
+    public BranchShards(Library library, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.library = library;
+        this.executors = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String name = "branch-shard-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return executors.length;
+    }
+
+    /**
+     * Gets the shard that owns a branch.
+     *
+     * @param branch the branch
+     * @return the index of the branch's shard
+     */
+    int shardOf(Branch branch) {
+        return Math.floorMod(branch.getHandle(), executors.length);
+    }
+
+    /**
+     * Lends a book to a user on the shard of the branch.
+     *
+     * @param userID the ID of the user
+     * @param bookID the ID of the book
+     * @param branchID the ID of the branch
+     * @return the outcome of the lend
+     * @throws RejectedExecutionException if the shards are closed
+     */
+    public CirculationResult lendBook(String userID, String bookID, String branchID) {
+        CirculationMetrics metrics = library.getMetrics();
+        long start = metrics.start();
+        Branch branch = library.searchBranchByID(branchID);
+        User user = library.searchUserByID(userID);
+        CirculationResult result;
+        if (branch == null) {
+            result = CirculationResult.UNKNOWN_BRANCH;
+        } else if (user == null) {
+            result = CirculationResult.UNKNOWN_USER;
+        } else {
+            AtomicLong sequence = new AtomicLong();
+            result = await(submit(branch, () -> branch.applyLoan(user, bookID, new Date()), sequence), sequence);
+        }
+        metrics.record(CirculationMetrics.Operation.LEND, branch, result, start);
+        return result;
+    }
+
+    /**
+     * Returns a book from a user to a branch. If another shard owns the branch
+     * that lent the book, the return is handed from that shard to the shard
+     * of the receiving branch.
+     *
+     * @param userID the ID of the user returning the book
+     * @param bookID the ID of the book being returned
+     * @param branchID the ID of the branch to which the book is returned
+     * @param dateOfReturn the date the book is returned
+     * @return true if the book was successfully returned, false otherwise
+     * @throws RejectedExecutionException if the shards are closed
+     */
+    public boolean returnBook(String userID, String bookID, String branchID, Date dateOfReturn) {
+        CirculationMetrics metrics = library.getMetrics();
+        long start = metrics.start();
+        Branch branch = library.searchBranchByID(branchID);
+        User user = library.searchUserByID(userID);
+        Book book = library.lookupBook(bookID);
+        CirculationResult result;
+        if (branch == null) {
+            result = CirculationResult.UNKNOWN_BRANCH;
+        } else if (user == null) {
+            result = CirculationResult.UNKNOWN_USER;
+        } else if (book == null) {
+            result = CirculationResult.UNKNOWN_BOOK;
+        } else {
+            AtomicLong sequence = new AtomicLong();
+            result = await(routeReturn(branch, user, book, dateOfReturn, sequence), sequence)
+                    ? CirculationResult.RETURNED : CirculationResult.NOT_LOANED;
+        }
+        metrics.record(CirculationMetrics.Operation.RETURN, branch, result, start);
+        return result == CirculationResult.RETURNED;
+    }
+
+    /**
+     * Gets a page of the available books of a branch, read on the branch's
+     * shard after the requests queued before it.
+     *
+     * @param branchID the ID of the branch
+     * @param offset the position of the first available book to return
+     * @param limit the maximum number of books to return
+     * @return the available books in the requested page, read-only, or an
+     * empty list if the branch is not found
+     * @throws RejectedExecutionException if the shards are closed
+     */
+    public List<Book> getAvailableBooks(String branchID, int offset, int limit) {
+        Branch branch = library.searchBranchByID(branchID);
+        if (branch == null) {
+            return new ArrayList<>();
+        }
+        AtomicLong sequence = new AtomicLong();
+        return await(submit(branch, () -> library.getAvailableBooks(branchID, offset, limit), sequence), sequence);
+    }
+
+    /**
+     * Lends several books of one branch to a user in a single task on the
+     * branch's shard. Each lend is timed and counted in the metrics.
+     *
+     * @param branch the branch
+     * @param user the user
+     * @param bookIDs the IDs of the books to lend
+     * @return the outcome of each lend, in the same order as the book IDs
+     * @throws RejectedExecutionException if the shards are closed
+     */
+    List<CirculationResult> lendBooks(Branch branch, User user, List<String> bookIDs) {
+        CirculationMetrics metrics = library.getMetrics();
+        AtomicLong sequence = new AtomicLong();
+        return await(submit(branch, () -> {
+            List<CirculationResult> results = new ArrayList<>(bookIDs.size());
+            for (String bookID : bookIDs) {
+                long start = metrics.start();
+                CirculationResult result = branch.applyLoan(user, bookID, new Date());
+                metrics.record(CirculationMetrics.Operation.LEND, branch, result, start);
+                results.add(result);
+            }
+            return results;
+        }, sequence), sequence);
+    }
+
+    /**
+     * Returns several books to a branch, each routed like
+     * {@link #returnBook}, and waits for all of them. The journal is synced
+     * once for the batch. If the shards close halfway, the remaining returns
+     * are applied on the calling thread.
+     *
+     * @param branch the branch receiving the books
+     * @param users the user returning each book, or null if nobody holds it
+     * @param books the books being returned, or null for unknown IDs
+     * @param dateOfReturn the date the books are returned
+     * @return the outcome of each return, in the same order as the books
+     */
+    List<CirculationResult> returnBooks(Branch branch, List<User> users, List<Book> books, Date dateOfReturn) {
+        CirculationMetrics metrics = library.getMetrics();
+        AtomicLong sequence = new AtomicLong();
+        long[] starts = new long[books.size()];
+        List<CompletableFuture<Boolean>> returns = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            starts[i] = metrics.start();
+            User user = users.get(i);
+            Book book = books.get(i);
+            if (user == null || book == null) {
+                returns.add(CompletableFuture.completedFuture(false));
+                continue;
+            }
+            try {
+                returns.add(routeReturn(branch, user, book, dateOfReturn, sequence));
+            } catch (RejectedExecutionException e) {
+                returns.add(CompletableFuture.completedFuture(branch.applyReturn(user, book, dateOfReturn)));
+                TransactionJournal journal = library.getJournal();
+                if (journal != null) {
+                    // written on this thread, so the batch's sync must wait for it too
+                    sequence.accumulateAndGet(journal.getLastWritten(), Math::max);
+                }
+            }
+        }
+        List<CirculationResult> results = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            CirculationResult result = books.get(i) == null ? CirculationResult.UNKNOWN_BOOK
+                    : join(returns.get(i)) ? CirculationResult.RETURNED : CirculationResult.NOT_LOANED;
+            metrics.record(CirculationMetrics.Operation.RETURN, branch, result, starts[i]);
+            results.add(result);
+        }
+        sync(sequence);
+        return results;
+    }
+
+    /**
+     * Gets the library whose circulation is sharded.
+     *
+     * @return the library
+     */
+    Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Stops accepting requests and waits until the queued ones are applied.
+     * If the shards are set on their library, the library goes back to
+     * running its circulation on the callers' threads.
+     */
+    @Override
+    public void close() {
+        library.detachShards(this);
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        try {
+            for (ExecutorService executor : executors) {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // a handoff may still be queued on another shard
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a return to the shard that owns the book: the receiving branch's
+     * shard when the book was lent there or by another branch of the same
+     * shard, the lending branch's shard otherwise.
+     *
+     * @param branch the branch receiving the book
+     * @param user the user returning the book
+     * @param book the book being returned
+     * @param dateOfReturn the date the book is returned
+     * @param sequence collects the last journal record of the return
+     * @return completes with true if the book was returned
+     */
+    private CompletableFuture<Boolean> routeReturn(Branch branch, User user, Book book, Date dateOfReturn,
+            AtomicLong sequence) {
+        Branch from = book.getBranch();
+        if (from == null || shardOf(from) == shardOf(branch)) {
+            return submit(branch, () -> branch.applyReturn(user, book, dateOfReturn), sequence);
+        }
+        return submit(from, () -> handOff(from, branch, user, book, dateOfReturn, sequence), sequence)
+                .thenCompose(received -> received);
+    }
+
+    /**
+     * First step of a two-shard return, run on the lending branch's shard:
+     * closes the loan, releases the book and passes it to the receiving
+     * branch's shard. Each step commits its own version; holding one version
+     * across the queue would stall every shard that begins a change.
+     *
+     * @param from the branch that lent the book
+     * @param branch the branch receiving the book
+     * @param user the user returning the book
+     * @param book the book being returned
+     * @param dateOfReturn the date the book is returned
+     * @param sequence collects the last journal record of the return
+     * @return completes with true once the receiving shard has the book
+     */
+    private CompletableFuture<Boolean> handOff(Branch from, Branch branch, User user, Book book, Date dateOfReturn,
+            AtomicLong sequence) {
+        if (book.getBranch() != from) {
+            // the book moved while the return was queued
+            return routeReturn(branch, user, book, dateOfReturn, sequence);
+        }
+        if (!book.isLoaned()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        VersionClock clock = library.getClock();
+        long version = clock.begin();
+        boolean closed;
+        try {
+            closed = branch.closeReturn(user, book, dateOfReturn, version);
+        } finally {
+            clock.commit(version);
+        }
+        if (!closed) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Supplier<Boolean> receive = () -> {
+            Hold hold;
+            long received = clock.begin();
+            try {
+                hold = branch.receiveReturn(user, book, dateOfReturn, received);
+            } finally {
+                clock.commit(received);
+            }
+            if (hold != null) {
+                hold.notifyReady();
+            }
+            return true;
+        };
+        try {
+            return submit(branch, receive, sequence);
+        } catch (RejectedExecutionException e) {
+            // the shards are closing; finish here so the book is not left out of both branches
+            return CompletableFuture.completedFuture(receive.get());
+        }
+    }
+
+    /**
+     * Queues a task on the shard of a branch.
+     *
+     * @param <T> the type of the task's result
+     * @param branch the branch the task works on
+     * @param task the task
+     * @param sequence collects the last journal record queued by the shard
+     * @return completes with the task's result on the shard's thread
+     */
+    private <T> CompletableFuture<T> submit(Branch branch, Supplier<T> task, AtomicLong sequence) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.get();
+            } finally {
+                TransactionJournal journal = library.getJournal();
+                if (journal != null) {
+                    sequence.accumulateAndGet(journal.getLastWritten(), Math::max);
+                }
+            }
+        }, executors[shardOf(branch)]);
+    }
+
+    /**
+     * Waits for a request applied on the shards and then for its journal
+     * records to reach disk.
+     *
+     * @param <T> the type of the result
+     * @param future the request
+     * @param sequence the last journal record of the request
+     * @return the result
+     */
+    private <T> T await(CompletableFuture<T> future, AtomicLong sequence) {
+        T result = join(future);
+        sync(sequence);
+        return result;
+    }
+
+    /**
+     * Waits for a request applied on the shards.
+     *
+     * @param <T> the type of the result
+     * @param future the request
+     * @return the result
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the journal records of a request to reach disk.
+     *
+     * @param sequence the last journal record of the request
+     */
+    private void sync(AtomicLong sequence) {
+        TransactionJournal journal = library.getJournal();
+        if (journal != null) {
+            journal.sync(sequence.get());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.mycompany.library;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Full-text index of the books of a library by title and author.
+ * <p>
+ * Titles and authors are split into tokens made of letters and digits,
+ * lower-cased and stripped of accents, so "García Márquez" is found by
+ * "garcia marquez". Every token maps to the handles of the books that contain
+ * it. Each query term matches the tokens it is a prefix of, and a book matches
+ * when it matches every term. A query walks the postings of its rarest term
+ * and checks the other terms, the branch and the availability only for those
+ * books, stopping once it has enough results. Books are indexed as they enter
+ * the library.
+ */
+public class CatalogIndex {
+
+    private final Library library;
+    private final ConcurrentSkipListMap<String, Postings> postings;
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param library the library whose books are indexed
+     */
+    CatalogIndex(Library library) {
+        this.library = library;
+        this.postings = new ConcurrentSkipListMap<>();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Indexes the title and author of a book.
+     *
+     * @param book the book to index
+     */
+    void add(Book book) {
+        for (String token : new HashSet<>(tokens(book))) {
+            postings.computeIfAbsent(token, key -> new Postings()).add(book.getHandle());
+        }
+    }
+
+    /**
+     * Searches for books whose title or author contain every term of a query,
+     * where each term can be the beginning of a word.
+     *
+     * @param query the words to look for
+     * @param branch the branch the books must be in, or null for any branch
+     * @param availableOnly true to skip the books that are loaned
+     * @param limit the maximum number of books to return
+     * @return the matching books, in no particular order
+     */
+    public List<Book> search(String query, Branch branch, boolean availableOnly, int limit) {
+        List<String> terms = tokenize(query);
+        List<Book> results = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return results;
+        }
+        String rarest = null;
+        Collection<Postings> rarestPostings = null;
+        long rarestCount = Long.MAX_VALUE;
+        for (String term : terms) {
+            Collection<Postings> matches = postings.subMap(term, term + Character.MAX_VALUE).values();
+            long count = 0;
+            for (Postings posting : matches) {
+                count += posting.size();
+            }
+            if (count < rarestCount) {
+                rarest = term;
+                rarestPostings = matches;
+                rarestCount = count;
+            }
+        }
+        if (rarestCount == 0) {
+            return results;
+        }
+        terms.remove(rarest);
+        Set<Book> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Postings posting : rarestPostings) {
+            int size = posting.size();
+            int[] handles = posting.handles();
+            for (int i = 0; i < size; i++) {
+                Book book = library.getBook(handles[i]);
+                if (book == null
+                        || (branch != null && book.getBranch() != branch)
+                        || (availableOnly && book.isLoaned())
+                        || !matchesAll(book, terms)
+                        || !seen.add(book)) {
+                    continue;
+                }
+                results.add(book);
+                if (results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks whether every term is a prefix of a token of a book.
+     *
+     * @param book the book
+     * @param terms the terms
+     * @return true if the book matches all the terms
+     */
+    private static boolean matchesAll(Book book, List<String> terms) {
+        if (terms.isEmpty()) {
+            return true;
+        }
+        List<String> tokens = tokens(book);
+        for (String term : terms) {
+            boolean found = false;
+            for (String token : tokens) {
+                if (token.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the tokens of a book's title and author.
+     *
+     * @param book the book
+     * @return the tokens, possibly repeated
+     */
+    private static List<String> tokens(Book book) {
+        List<String> tokens = tokenize(book.getName());
+        tokens.addAll(tokenize(book.getAuthor()));
+        return tokens;
+    }
+
+    /**
+     * Splits a text into lower-case tokens of letters and digits, without
+     * accents.
+     *
+     * @param text the text, or null
+     * @return the tokens of the text
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * The handles of the books that contain a token, in the order they were
+     * indexed. Handles are only appended and the size is published after
+     * them, so a reader that reads the size and then the array can walk that
+     * many handles without a lock.
+     */
+    private static final class Postings {
+
+        private volatile int[] handles = new int[4];
+        private volatile int size;
+
+        /**
+         * Appends a book handle.
+         *
+         * @param handle the handle
+         */
+        synchronized void add(int handle) {
+            int[] current = handles;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = handle;
+            handles = current;
+            size = size + 1;
+        }
+
+        /**
+         * Gets the number of handles.
+         *
+         * @return the number of books with the token
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Gets the array of handles. Read the size first; the array holds at
+         * least that many handles.
+         *
+         * @return the handles, with unused slots at the end
+         */
+        int[] handles() {
+            return handles;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.mycompany.library;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Is told when a checkpoint scheduled with
+ * {@link LibrarySnapshot#scheduleCheckpoints} fails. The failed checkpoint
+ * is retried at the next period, so the listener is only there to report
+ * the failure.
+ */
+@FunctionalInterface
+public interface CheckpointListener {
+
+    /**
+     * Handles a failed checkpoint. The call runs on the checkpoint thread, so
+     * it delays the next checkpoint while it runs.
+     *
+     * @param file the snapshot file that could not be written
+     * @param cause the failure
+     */
+    void onCheckpointFailed(Path file, IOException cause);
+}
@@ -0,0 +1,139 @@
+package com.mycompany.library;
+
+/**
+ * A circulation event read from a {@link CirculationFeed}.
+ * <p>
+ * Events are not allocated per publication: each subscription fills one
+ * instance from the ring buffer and hands it to its handler, so an event is
+ * only valid during the handler call and must be copied if it is kept.
+ */
+public final class CirculationEvent {
+
+    private final Library library;
+    private long sequence;
+    private Type type;
+    private int userHandle;
+    private int bookHandle;
+    private int branchHandle;
+    private long amount;
+    private long time;
+
+    /**
+     * Constructs an empty event that resolves handles through a library.
+     *
+     * @param library the library the events come from
+     */
+    CirculationEvent(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * The kinds of events.
+     */
+    public enum Type {
+
+        /**
+         * A book was lent to a user.
+         */
+        LENT,
+        /**
+         * A user returned a book.
+         */
+        RETURNED,
+        /**
+         * A user was fined for returning a book late; the amount is the fine.
+         */
+        FINED,
+        /**
+         * A book joined the library; there is no user.
+         */
+        BOOK_ADDED
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Fills the event from a slot of the ring buffer.
+     *
+     * @param sequence the position of the event in the feed
+     * @param type the kind of event
+     * @param userHandle the handle of the user, or -1
+     * @param bookHandle the handle of the book
+     * @param branchHandle the handle of the branch
+     * @param amount the amount of a fine, or 0
+     * @param time the time of the event in milliseconds since the epoch
+     */
+    void set(long sequence, Type type, int userHandle, int bookHandle, int branchHandle, long amount, long time) {
+        this.sequence = sequence;
+        this.type = type;
+        this.userHandle = userHandle;
+        this.bookHandle = bookHandle;
+        this.branchHandle = branchHandle;
+        this.amount = amount;
+        this.time = time;
+    }
+
+    /**
+     * Gets the position of the event in the feed. Positions grow by one per
+     * event, so a gap means events were dropped.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the kind of event.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the user of the event.
+     *
+     * @return the user, or null for events without a user
+     */
+    public User getUser() {
+        return library.getUser(userHandle);
+    }
+
+    /**
+     * Gets the book of the event.
+     *
+     * @return the book
+     */
+    public Book getBook() {
+        return library.getBook(bookHandle);
+    }
+
+    /**
+     * Gets the branch where the event happened.
+     *
+     * @return the branch
+     */
+    public Branch getBranch() {
+        return library.getBranch(branchHandle);
+    }
+
+    /**
+     * Gets the amount of a fine.
+     *
+     * @return the fine, or 0 for other events
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets the time of the event: the date of the loan or of the return, or
+     * when the book was added.
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+}
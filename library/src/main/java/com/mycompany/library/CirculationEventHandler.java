@@ -0,0 +1,27 @@
+package com.mycompany.library;
+
+/**
+ * Reacts to the events of a {@link CirculationFeed}.
+ */
+@FunctionalInterface
+public interface CirculationEventHandler {
+
+    /**
+     * Handles one event. Events arrive in batches; the last event of a batch
+     * is flagged so that handlers can flush their work once per batch.
+     *
+     * @param event the event, valid only during the call
+     * @param endOfBatch true for the last event of the batch
+     */
+    void onEvent(CirculationEvent event, boolean endOfBatch);
+
+    /**
+     * Is told that {@link #onEvent} failed on a subscription's own thread.
+     * The event that failed is skipped and the subscription goes on. Does
+     * nothing by default.
+     *
+     * @param cause the failure
+     */
+    default void onFailure(RuntimeException cause) {
+    }
+}
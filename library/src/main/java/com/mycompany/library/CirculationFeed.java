@@ -0,0 +1,324 @@
+package com.mycompany.library;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the lends, returns, fines and new books of a library to
+ * asynchronous subscribers through a preallocated ring buffer.
+ * <p>
+ * Events are stored column by column in primitive arrays allocated once, so
+ * publishing writes a few array slots and never allocates. Circulation desks
+ * publish concurrently: each claims the next sequence number with one atomic
+ * increment, writes its slot and then releases the slot's sequence. When
+ * nobody is subscribed, publishing only reads a counter.
+ * <p>
+ * Each {@link Subscription} keeps its own cursor and reads in batches,
+ * either from a thread of its own or from {@link Subscription#poll}. The
+ * desks never wait for subscribers: a subscriber that falls more than a ring
+ * behind loses the events that were overwritten, and counts them as
+ * dropped.
+ */
+public final class CirculationFeed {
+
+    private static final long BUSY = Long.MIN_VALUE;
+    private static final int BATCH_SIZE = 256;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    private static final CirculationEvent.Type[] TYPES = CirculationEvent.Type.values();
+
+    private final Library library;
+    private final int capacity;
+    private final int mask;
+    private final int[] typeColumn;
+    private final int[] userColumn;
+    private final int[] bookColumn;
+    private final int[] branchColumn;
+    private final long[] amountColumn;
+    private final long[] timeColumn;
+    private final AtomicLongArray published;
+    private final AtomicLong next;
+    private final AtomicInteger subscribers;
+
+    /**
+     * Constructs an empty feed.
+     *
+     * @param library the library whose events are published
+     * @param capacity the number of slots of the ring, a power of two
+     * @throws IllegalArgumentException if the capacity is not a power of two
+     */
+    CirculationFeed(Library library, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.library = library;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.typeColumn = new int[capacity];
+        this.userColumn = new int[capacity];
+        this.bookColumn = new int[capacity];
+        this.branchColumn = new int[capacity];
+        this.amountColumn = new long[capacity];
+        this.timeColumn = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            // as if the previous lap had been published
+            published.set(slot, slot - (long) capacity);
+        }
+        this.next = new AtomicLong();
+        this.subscribers = new AtomicInteger();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Publishes an event.
+     *
+     * @param type the kind of event
+     * @param user the user, or null for events without a user
+     * @param book the book
+     * @param branch the branch where the event happened
+     * @param amount the amount of a fine, or 0
+     * @param time the time of the event in milliseconds since the epoch
+     */
+    void publish(CirculationEvent.Type type, User user, Book book, Branch branch, long amount, long time) {
+        if (subscribers.get() == 0) {
+            return;
+        }
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        while (published.get(slot) != sequence - capacity) {
+            // the publisher of the previous lap is still writing this slot
+            Thread.onSpinWait();
+        }
+        published.set(slot, BUSY);
+        VarHandle.storeStoreFence();
+        typeColumn[slot] = type.ordinal();
+        userColumn[slot] = user != null ? user.getHandle() : -1;
+        bookColumn[slot] = book.getHandle();
+        branchColumn[slot] = branch.getHandle();
+        amountColumn[slot] = amount;
+        timeColumn[slot] = time;
+        published.setRelease(slot, sequence);
+    }
+
+    /**
+     * Gets the number of events published so far.
+     *
+     * @return the sequence number of the next event
+     */
+    public long getPublished() {
+        return next.get();
+    }
+
+    /**
+     * Gets the number of slots of the ring.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Subscribes to the events published from now on. The subscription reads
+     * nothing until it is polled or started.
+     *
+     * @return the subscription
+     */
+    public Subscription subscribe() {
+        subscribers.incrementAndGet();
+        return new Subscription(next.get());
+    }
+
+    /**
+     * Subscribes a handler that runs on a daemon thread of its own and
+     * receives the events published from now on in batches.
+     *
+     * @param name the name of the thread
+     * @param handler the handler of the events
+     * @return the running subscription
+     */
+    public Subscription subscribe(String name, CirculationEventHandler handler) {
+        Subscription subscription = subscribe();
+        Thread thread = new Thread(() -> subscription.run(handler), name);
+        thread.setDaemon(true);
+        thread.start();
+        return subscription;
+    }
+
+    /**
+     * A reader of the feed with its own cursor.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final CirculationEvent event;
+        private volatile long cursor;
+        private volatile long dropped;
+        private volatile boolean closed;
+
+        /**
+         * Constructs a subscription.
+         *
+         * @param cursor the sequence number of the first event to read
+         */
+        private Subscription(long cursor) {
+            this.event = new CirculationEvent(library);
+            this.cursor = cursor;
+        }
+
+        /**
+         * Delivers the events published since the last poll, up to a limit,
+         * as one batch. Must be called from one thread at a time.
+         *
+         * @param handler the handler of the events
+         * @param maxEvents the most events to deliver
+         * @return the number of events delivered
+         */
+        public int poll(CirculationEventHandler handler, int maxEvents) {
+            long head = next.get();
+            long sequence = cursor;
+            if (head - sequence > capacity) {
+                dropped += head - capacity - sequence;
+                sequence = head - capacity;
+            }
+            int delivered = 0;
+            boolean pending = false;
+            long pendingSequence = 0;
+            int type = 0;
+            int user = 0;
+            int book = 0;
+            int branch = 0;
+            long amount = 0;
+            long time = 0;
+            while (sequence < head && delivered + (pending ? 1 : 0) < maxEvents) {
+                int slot = (int) sequence & mask;
+                long current = published.getAcquire(slot);
+                if (current != sequence) {
+                    if (current == BUSY || current < sequence) {
+                        break; // claimed but not published yet
+                    }
+                    dropped++;
+                    sequence++;
+                    continue;
+                }
+                int nextType = typeColumn[slot];
+                int nextUser = userColumn[slot];
+                int nextBook = bookColumn[slot];
+                int nextBranch = branchColumn[slot];
+                long nextAmount = amountColumn[slot];
+                long nextTime = timeColumn[slot];
+                VarHandle.loadLoadFence();
+                if (published.get(slot) != sequence) {
+                    // overwritten while it was read
+                    dropped++;
+                    sequence++;
+                    continue;
+                }
+                if (pending) {
+                    cursor = pendingSequence + 1;
+                    deliver(handler, pendingSequence, type, user, book, branch, amount, time, false);
+                    delivered++;
+                }
+                pending = true;
+                pendingSequence = sequence;
+                type = nextType;
+                user = nextUser;
+                book = nextBook;
+                branch = nextBranch;
+                amount = nextAmount;
+                time = nextTime;
+                sequence++;
+            }
+            cursor = sequence;
+            if (pending) {
+                deliver(handler, pendingSequence, type, user, book, branch, amount, time, true);
+                delivered++;
+            }
+            return delivered;
+        }
+
+        /**
+         * Gets the sequence number of the next event the subscription reads.
+         *
+         * @return the cursor
+         */
+        public long getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Gets the number of events published but not read yet.
+         *
+         * @return the lag
+         */
+        public long getLag() {
+            return Math.max(0, next.get() - cursor);
+        }
+
+        /**
+         * Gets the number of events overwritten before the subscription read
+         * them.
+         *
+         * @return the dropped events
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Ends the subscription and stops its thread, if it has one.
+         */
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                subscribers.decrementAndGet();
+            }
+        }
+
+        /**
+         * Polls in batches until the subscription is closed, parking for a
+         * growing time while the feed is idle. Handler failures skip the
+         * event that failed and are reported to the handler.
+         *
+         * @param handler the handler of the events
+         */
+        private void run(CirculationEventHandler handler) {
+            long park = 0;
+            while (!closed) {
+                int delivered;
+                try {
+                    delivered = poll(handler, BATCH_SIZE);
+                } catch (RuntimeException e) {
+                    delivered = 1;
+                    handler.onFailure(e);
+                }
+                if (delivered > 0) {
+                    park = 0;
+                } else {
+                    park = Math.min(Math.max(park * 2, 1_000), MAX_PARK_NANOS);
+                    LockSupport.parkNanos(park);
+                }
+            }
+        }
+
+        /**
+         * Fills the subscription's event and hands it to the handler.
+         *
+         * @param handler the handler of the events
+         * @param sequence the sequence number of the event
+         * @param type the ordinal of the event's type
+         * @param user the handle of the user
+         * @param book the handle of the book
+         * @param branch the handle of the branch
+         * @param amount the amount of a fine
+         * @param time the time of the event
+         * @param endOfBatch true for the last event of the batch
+         */
+        private void deliver(CirculationEventHandler handler, long sequence, int type, int user, int book,
+                int branch, long amount, long time, boolean endOfBatch) {
+            event.set(sequence, TYPES[type], user, book, branch, amount, time);
+            handler.onEvent(event, endOfBatch);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.mycompany.library;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Measures how the circulation operations of a library behave under load:
+ * the latency of each operation, overall and per branch, the outcome of
+ * every lend and return, and the fines issued.
+ * <p>
+ * Operations call {@link #start()} and then one of the {@code record}
+ * methods with the value it returned. Recording touches {@link LongAdder}s
+ * and {@link LatencyHistogram} buckets only, so it never allocates once the
+ * histograms of a branch exist. Metrics are off by default; while they are
+ * off, {@link #start()} reads a flag and returns without calling the clock,
+ * and the {@code record} methods return at once. The metrics can be
+ * registered as a platform MXBean to be read and switched from JMX.
+ */
+public final class CirculationMetrics implements CirculationMetricsMXBean {
+
+    /**
+     * The name the metrics are registered under.
+     */
+    public static final String OBJECT_NAME = "com.mycompany.library:type=CirculationMetrics";
+
+    private static final long OFF = Long.MIN_VALUE;
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final CirculationResult[] RESULTS = CirculationResult.values();
+
+    private volatile boolean enabled;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder[] outcomes;
+    private final LongAdder finesIssued;
+    private final LongAdder fineAmount;
+    private final IntObjectMap<LatencyHistogram[]> branchLatencies;
+    private final SymbolTable branchIds;
+
+    /**
+     * Constructs metrics with recording off.
+     *
+     * @param branchIds the symbol table of the IDs of the library's branches
+     */
+    CirculationMetrics(SymbolTable branchIds) {
+        this.branchIds = branchIds;
+        this.latencies = newHistograms();
+        this.outcomes = new LongAdder[RESULTS.length];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+        this.finesIssued = new LongAdder();
+        this.fineAmount = new LongAdder();
+        this.branchLatencies = new IntObjectMap<>();
+    }
+
+    /**
+     * The instrumented operations of a library.
+     */
+    public enum Operation {
+
+        /**
+         * {@link Library#lendBook(String, String, String)}, and each lend of
+         * {@link Library#lendBooks(String, List, String)}.
+         */
+        LEND,
+        /**
+         * {@link Library#returnBook(String, String, String, Date)}, and each
+         * return of {@link Library#returnBooks(String, List, String, Date)}
+         * and {@link Library#returnDropBox(List, String, Date)}.
+         */
+        RETURN,
+        /**
+         * {@link Library#searchBookByID(String)}.
+         */
+        BOOK_LOOKUP,
+        /**
+         * {@link Library#getAvailableBooks(String, int, int)}.
+         */
+        AVAILABLE_BOOKS
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Starts timing an operation.
+     *
+     * @return the start time to pass to {@code record}, or a marker that
+     * makes {@code record} do nothing if metrics are off
+     */
+    long start() {
+        return enabled ? System.nanoTime() : OFF;
+    }
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param operation the operation
+     * @param branch the branch the operation ran at, or null
+     * @param start the value returned by {@link #start()}
+     */
+    void record(Operation operation, Branch branch, long start) {
+        if (start == OFF) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        latencies[operation.ordinal()].record(elapsed);
+        if (branch != null) {
+            histogramsOf(branch)[operation.ordinal()].record(elapsed);
+        }
+    }
+
+    /**
+     * Records the latency and the outcome of a lend or a return.
+     *
+     * @param operation the operation
+     * @param branch the branch the operation ran at, or null
+     * @param result the outcome
+     * @param start the value returned by {@link #start()}
+     */
+    void record(Operation operation, Branch branch, CirculationResult result, long start) {
+        if (start == OFF) {
+            return;
+        }
+        record(operation, branch, start);
+        outcomes[result.ordinal()].increment();
+    }
+
+    /**
+     * Records a fine issued on a return.
+     *
+     * @param amount the amount of the fine
+     */
+    void recordFine(long amount) {
+        if (enabled) {
+            finesIssued.increment();
+            fineAmount.add(amount);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation.name(), latencies[operation.ordinal()].getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getOutcomeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (CirculationResult result : RESULTS) {
+            counts.put(result.name(), outcomes[result.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of lends and returns that ended with an outcome.
+     *
+     * @param result the outcome
+     * @return the count
+     */
+    public long getOutcomeCount(CirculationResult result) {
+        return outcomes[result.ordinal()].sum();
+    }
+
+    @Override
+    public long getFinesIssued() {
+        return finesIssued.sum();
+    }
+
+    @Override
+    public long getFineAmount() {
+        return fineAmount.sum();
+    }
+
+    @Override
+    public Map<String, Double> getMedianMicros() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        Map<String, Double> maxima = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            maxima.put(operation.name(), latencies[operation.ordinal()].getMax() / 1000.0);
+        }
+        return maxima;
+    }
+
+    @Override
+    public double getPercentileMicros(String operation, double percentile) {
+        return latencies[parse(operation).ordinal()].getPercentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public double getBranchPercentileMicros(String branchID, String operation, double percentile) {
+        int handle = branchIds.lookup(branchID);
+        LatencyHistogram[] histograms = handle >= 0 ? branchLatencies.get(handle) : null;
+        return histograms != null ? histograms[parse(operation).ordinal()].getPercentile(percentile) / 1000.0 : 0;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        for (LongAdder outcome : outcomes) {
+            outcome.reset();
+        }
+        finesIssued.reset();
+        fineAmount.reset();
+        for (LatencyHistogram[] histograms : branchLatencies.values()) {
+            for (LatencyHistogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under
+     * {@link #OBJECT_NAME}, replacing the metrics of another library
+     * registered before.
+     *
+     * @throws JMException if the metrics cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * Gets the histograms of a branch, creating them the first time the
+     * branch is seen.
+     *
+     * @param branch the branch
+     * @return the branch's histograms, one per operation
+     */
+    private LatencyHistogram[] histogramsOf(Branch branch) {
+        LatencyHistogram[] histograms = branchLatencies.get(branch.getHandle());
+        if (histograms != null) {
+            return histograms;
+        }
+        synchronized (branchLatencies) {
+            histograms = branchLatencies.get(branch.getHandle());
+            if (histograms == null) {
+                histograms = newHistograms();
+                branchLatencies.put(branch.getHandle(), histograms);
+            }
+            return histograms;
+        }
+    }
+
+    /**
+     * Gets a percentile of the latency of every operation.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latencies in microseconds by operation name
+     */
+    private Map<String, Double> percentiles(double percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            values.put(operation.name(), latencies[operation.ordinal()].getPercentile(percentile) / 1000.0);
+        }
+        return values;
+    }
+
+    /**
+     * Parses the name of an operation, ignoring case.
+     *
+     * @param operation the name
+     * @return the operation
+     * @throws IllegalArgumentException if no operation has the name
+     */
+    private static Operation parse(String operation) {
+        return Operation.valueOf(operation.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Creates one empty histogram per operation.
+     *
+     * @return the histograms, indexed by operation ordinal
+     */
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+}
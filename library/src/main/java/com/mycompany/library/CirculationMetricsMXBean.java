@@ -0,0 +1,99 @@
+package com.mycompany.library;
+
+import java.util.*;
+
+/**
+ * Management interface of {@link CirculationMetrics}, as seen from JConsole
+ * or any other JMX client. Latencies are in microseconds, and operations are
+ * named after {@link CirculationMetrics.Operation}.
+ */
+public interface CirculationMetricsMXBean {
+
+    /**
+     * Checks whether metrics are being recorded.
+     *
+     * @return true if recording is on
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording on or off. While it is off, the instrumented
+     * operations only read a flag.
+     *
+     * @param enabled true to record
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Gets the number of calls of each operation.
+     *
+     * @return the calls by operation name
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * Gets the number of lends and returns that ended with each outcome.
+     *
+     * @return the counts by {@link CirculationResult} name
+     */
+    Map<String, Long> getOutcomeCounts();
+
+    /**
+     * Gets the number of fines issued on returns.
+     *
+     * @return the number of fines
+     */
+    long getFinesIssued();
+
+    /**
+     * Gets the sum of the fines issued on returns.
+     *
+     * @return the amount of the fines
+     */
+    long getFineAmount();
+
+    /**
+     * Gets the median latency of each operation.
+     *
+     * @return the medians by operation name
+     */
+    Map<String, Double> getMedianMicros();
+
+    /**
+     * Gets the 99th percentile latency of each operation.
+     *
+     * @return the 99th percentiles by operation name
+     */
+    Map<String, Double> getP99Micros();
+
+    /**
+     * Gets the largest latency of each operation.
+     *
+     * @return the maxima by operation name
+     */
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * Gets a percentile of the latency of an operation.
+     *
+     * @param operation the name of the operation
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency, or 0 if nothing was recorded
+     */
+    double getPercentileMicros(String operation, double percentile);
+
+    /**
+     * Gets a percentile of the latency of an operation at one branch.
+     *
+     * @param branchID the ID of the branch
+     * @param operation the name of the operation
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency, or 0 if nothing was recorded for the branch
+     */
+    double getBranchPercentileMicros(String branchID, String operation, double percentile);
+
+    /**
+     * Clears every counter and histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,49 @@
+package com.mycompany.library;
+
+/**
+ * Outcome of a single lend or return operation.
+ */
+public enum CirculationResult {
+
+    /**
+     * The book was lent to the user.
+     */
+    LENT,
+    /**
+     * The book was returned and its loan closed.
+     */
+    RETURNED,
+    /**
+     * The book exists but is already loaned.
+     */
+    ALREADY_LOANED,
+    /**
+     * The book is set aside for another user's hold.
+     */
+    ON_HOLD,
+    /**
+     * The book exists but there is no open loan for it to close.
+     */
+    NOT_LOANED,
+    /**
+     * No book with the given ID exists in the branch or library.
+     */
+    UNKNOWN_BOOK,
+    /**
+     * No user with the given ID exists in the library.
+     */
+    UNKNOWN_USER,
+    /**
+     * No branch with the given ID exists in the library.
+     */
+    UNKNOWN_BRANCH;
+
+    /**
+     * Checks whether the operation changed the loan state of the book.
+     *
+     * @return true if the book was lent or returned, false otherwise
+     */
+    public boolean isSuccess() {
+        return this == LENT || this == RETURNED;
+    }
+}
@@ -0,0 +1,257 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Keeps the outstanding fines of a library up to date as they are issued, so
+ * debt reports do not have to visit every user.
+ * <p>
+ * The ledger holds the total outstanding amount, a total per branch and the
+ * users that owe something ordered by debt, largest first. Recording a fine
+ * costs O(log n) in the number of debtors; the totals are O(1), the top N
+ * debtors O(N + log n), and the full list of debtors is streamed in one
+ * linear pass. Fines are attributed to the branch that lent the book.
+ */
+public class DebtLedger {
+
+    private final AtomicLong total;
+    private final Map<String, AtomicLong> branchTotals;
+    private final ConcurrentSkipListSet<Entry> debtors;
+    private final AtomicLong generation;
+    private final VersionClock clock;
+
+    /**
+     * Constructs an empty ledger.
+     */
+    public DebtLedger() {
+        this(VersionClock.DETACHED);
+    }
+
+    /**
+     * Constructs an empty ledger whose fines are versioned by a library's
+     * clock.
+     *
+     * @param clock the version clock of the library
+     */
+    DebtLedger(VersionClock clock) {
+        this.clock = clock;
+        this.total = new AtomicLong();
+        this.branchTotals = new ConcurrentHashMap<>();
+        this.debtors = new ConcurrentSkipListSet<>();
+        this.generation = new AtomicLong();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Adds a fine to a user's debts and to the ledger.
+     *
+     * @param user the user who owes the fine
+     * @param branch the branch the fine is attributed to
+     * @param amount the amount of the fine
+     */
+    public void recordFine(User user, Branch branch, long amount) {
+        long version = clock.begin();
+        try {
+            recordFine(user, branch, amount, version);
+        } finally {
+            clock.commit(version);
+        }
+    }
+
+    /**
+     * Adds a fine to a user's debts and to the ledger as part of a versioned
+     * change.
+     *
+     * @param user the user who owes the fine
+     * @param branch the branch the fine is attributed to
+     * @param amount the amount of the fine
+     * @param version the version of the change
+     */
+    void recordFine(User user, Branch branch, long amount, long version) {
+        if (amount <= 0) {
+            return;
+        }
+        synchronized (user) {
+            long before = user.getAccumulatedDebts();
+            user.addDebts(amount, version);
+            reindex(user, before, before + amount);
+        }
+        total.addAndGet(amount);
+        if (branch != null) {
+            branchTotals.computeIfAbsent(branch.getID(), id -> new AtomicLong()).addAndGet(amount);
+        }
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Brings an existing user into the ledger, for example after the user was
+     * restored from a snapshot. The user's debt is added to the total, and
+     * as much of it as the penalties of the user's returned loans account for
+     * is added to the totals of the branches that lent them; the rest, like a
+     * fine recorded without a branch, counts only towards the total.
+     *
+     * @param user the user to track
+     */
+    public void track(User user) {
+        long debt;
+        List<Loan> loans;
+        synchronized (user) {
+            debt = user.getAccumulatedDebts();
+            if (debt <= 0) {
+                return;
+            }
+            loans = user.getLoan();
+            reindex(user, 0, debt);
+        }
+        long unattributed = debt;
+        for (Loan loan : loans) {
+            long penalty = Math.min(loan.calculatePenalty(), unattributed);
+            if (penalty > 0 && loan.getBranch() != null) {
+                branchTotals.computeIfAbsent(loan.getBranch().getID(), id -> new AtomicLong()).addAndGet(penalty);
+                unattributed -= penalty;
+            }
+        }
+        total.addAndGet(debt);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Gets the generation of the ledger. It grows after every fine, so a
+     * summary computed after reading a generation is current for as long as
+     * the generation stays the same.
+     *
+     * @return the generation
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Gets the sum of the debts of every user.
+     *
+     * @return the total outstanding fines
+     */
+    public long getTotalOutstanding() {
+        return total.get();
+    }
+
+    /**
+     * Gets the sum of the fines attributed to a branch.
+     *
+     * @param branchID the ID of the branch
+     * @return the branch's outstanding fines, or 0 if it has none
+     */
+    public long getBranchTotal(String branchID) {
+        AtomicLong branchTotal = branchID != null ? branchTotals.get(branchID) : null;
+        return branchTotal != null ? branchTotal.get() : 0;
+    }
+
+    /**
+     * Gets the number of users that owe something.
+     *
+     * @return the number of debtors
+     */
+    public int getDebtorCount() {
+        return debtors.size();
+    }
+
+    /**
+     * Gets the users with the largest debts, largest first.
+     *
+     * @param n the maximum number of debtors to return
+     * @return up to n debtors with their debts
+     */
+    public List<Entry> getTopDebtors(int n) {
+        List<Entry> top = new ArrayList<>(Math.min(Math.max(n, 0), 1024));
+        Iterator<Entry> it = debtors.iterator();
+        while (top.size() < n && it.hasNext()) {
+            top.add(it.next());
+        }
+        return top;
+    }
+
+    /**
+     * Visits every user that owes something, largest debt first, in one pass
+     * and without copying the ledger.
+     *
+     * @param action the action to run for each debtor and its debt
+     */
+    public void forEachDebtor(ObjLongConsumer<User> action) {
+        for (Entry entry : debtors) {
+            action.accept(entry.getUser(), entry.getDebt());
+        }
+    }
+
+    /**
+     * Moves a user to its new position in the debtor order. Callers must hold
+     * the user's monitor.
+     *
+     * @param user the user whose debt changed
+     * @param before the debt before the change
+     * @param after the debt after the change
+     */
+    private void reindex(User user, long before, long after) {
+        if (before > 0) {
+            debtors.remove(new Entry(user, before));
+        }
+        debtors.add(new Entry(user, after));
+    }
+
+    /**
+     * A user and the debt the user had when the entry was created. Entries
+     * are ordered by debt, largest first, then by user ID.
+     */
+    public static final class Entry implements Comparable<Entry> {
+
+        private final User user;
+        private final long debt;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param user the user
+         * @param debt the user's debt
+         */
+        Entry(User user, long debt) {
+            this.user = user;
+            this.debt = debt;
+        }
+
+        /**
+         * Gets the user.
+         *
+         * @return the user
+         */
+        public User getUser() {
+            return user;
+        }
+
+        /**
+         * Gets the user's debt.
+         *
+         * @return the debt
+         */
+        public long getDebt() {
+            return debt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDebt = Long.compare(other.debt, debt);
+            return byDebt != 0 ? byDebt : user.getID().compareTo(other.user.getID());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user.getID(), debt);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Indexes the open loans of a library by due day, so overdue and due-soon
+ * queries only visit the loans they return.
+ * <p>
+ * Days are counted since the epoch in UTC. A loan made on day {@code d} is due
+ * on day {@code d + 15} and is overdue from the
+ * next day on. Loans sharing a due day are kept in one bucket, so the fines
+ * accrued by all overdue loans are computed per bucket instead of per loan.
+ * Buckets left empty by returns are dropped by the sweep, so the overdue
+ * queries only visit the days that still have open loans.
+ */
+public class DueDateScheduler {
+
+    private static final long MILLISECONDS_BY_DAY = 86_400_000L;
+
+    private final ConcurrentSkipListMap<Long, Set<Loan>> buckets;
+
+    /**
+     * Constructs an empty scheduler.
+     */
+    public DueDateScheduler() {
+        this.buckets = new ConcurrentSkipListMap<>();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the current day.
+     *
+     * @return the number of days since the epoch
+     */
+    public static long today() {
+        return Math.floorDiv(System.currentTimeMillis(), MILLISECONDS_BY_DAY);
+    }
+
+    /**
+     * Gets the day a loan is due.
+     *
+     * @param loan the loan
+     * @return the due day, in days since the epoch
+     */
+    public static long dueDay(Loan loan) {
+        return Math.floorDiv(loan.getDateOfLoan().getTime(), MILLISECONDS_BY_DAY) + Loan.LOAN_PERIOD_DAYS;
+    }
+
+    /**
+     * Starts tracking an open loan. A loan that is already past due, for
+     * example one restored from a snapshot or a journal, is flagged by the
+     * next sweep.
+     *
+     * @param loan the loan to track
+     */
+    public void register(Loan loan) {
+        long day = dueDay(loan);
+        while (true) {
+            Set<Loan> bucket = buckets.computeIfAbsent(day, d -> ConcurrentHashMap.newKeySet());
+            bucket.add(loan);
+            // a sweep may have dropped the bucket as empty before the add
+            if (buckets.get(day) == bucket) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a loan, typically because it was returned. Empty buckets
+     * are left in place and dropped by the next sweep.
+     *
+     * @param loan the loan to forget
+     */
+    public void unregister(Loan loan) {
+        Set<Loan> bucket = buckets.get(dueDay(loan));
+        if (bucket != null) {
+            bucket.remove(loan);
+        }
+    }
+
+    /**
+     * Gets the open loans that are overdue on a day.
+     *
+     * @param day the day, in days since the epoch
+     * @return the loans due before that day
+     */
+    public List<Loan> getOverdue(long day) {
+        List<Loan> overdue = new ArrayList<>();
+        for (Set<Loan> bucket : buckets.headMap(day).values()) {
+            overdue.addAll(bucket);
+        }
+        return overdue;
+    }
+
+    /**
+     * Gets the open loans that are due on a day, for example tomorrow's.
+     *
+     * @param day the day, in days since the epoch
+     * @return the loans due on that day
+     */
+    public List<Loan> getDueOn(long day) {
+        Set<Loan> bucket = buckets.get(day);
+        return bucket != null ? new ArrayList<>(bucket) : new ArrayList<>();
+    }
+
+    /**
+     * Estimates the fines accrued by the open loans as of a day, which will be
+     * billed when the books are returned.
+     *
+     * @param day the day, in days since the epoch
+     * @return the accrued but unbilled fines
+     */
+    public long getAccruedFines(long day) {
+        long fines = 0;
+        for (Map.Entry<Long, Set<Loan>> entry : buckets.headMap(day).entrySet()) {
+            fines += (day - entry.getKey()) * Loan.PENALTY * entry.getValue().size();
+        }
+        return fines;
+    }
+
+    /**
+     * Flags the open loans that are overdue and not flagged yet, however late
+     * they were registered, and hands each of them to a listener. Sweeping
+     * the same day twice has no effect. Buckets before the day that returns
+     * left empty are dropped.
+     *
+     * @param day the current day, in days since the epoch
+     * @param listener receives every newly overdue loan, or null
+     * @return the number of newly overdue loans
+     */
+    public synchronized int sweep(long day, Consumer<Loan> listener) {
+        int flagged = 0;
+        for (Map.Entry<Long, Set<Loan>> entry : buckets.headMap(day, false).entrySet()) {
+            Set<Loan> bucket = entry.getValue();
+            for (Loan loan : bucket) {
+                flagged += flag(loan, listener);
+            }
+            if (bucket.isEmpty() && buckets.remove(entry.getKey(), bucket)) {
+                // a loan registered between the check and the removal goes to a new bucket
+                for (Loan loan : bucket) {
+                    if (loan.getDateOfReturn() == null) {
+                        register(loan);
+                        if (loan.getDateOfReturn() != null) {
+                            // returned meanwhile, and unregistered from the old bucket
+                            unregister(loan);
+                        } else {
+                            flagged += flag(loan, listener);
+                        }
+                    }
+                }
+            }
+        }
+        return flagged;
+    }
+
+    /**
+     * Flags an overdue loan unless it is already flagged.
+     *
+     * @param loan the overdue loan
+     * @param listener receives the loan if it is newly flagged, or null
+     * @return 1 if the loan was newly flagged, 0 otherwise
+     */
+    private static int flag(Loan loan, Consumer<Loan> listener) {
+        if (loan.isOverdue()) {
+            return 0;
+        }
+        loan.setOverdue(true);
+        if (listener != null) {
+            listener.accept(loan);
+        }
+        return 1;
+    }
+
+    /**
+     * Sweeps once an hour on a background daemon thread, so overdue loans are
+     * flagged shortly after the day rolls over.
+     *
+     * @param listener receives every newly overdue loan, or null
+     * @return the executor running the sweep; shut it down to stop it
+     */
+    public ScheduledExecutorService startDailySweep(Consumer<Loan> listener) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "overdue-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> sweep(today(), listener), 0, 1, TimeUnit.HOURS);
+        return executor;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mycompany.library;
+
+/**
+ * Represents a generic element in the library. This class
+ * provides common properties for library elements. Besides its string ID,
+ * an element that joins a library gets a dense int handle from the library's
+ * symbol table of its kind, which is what the library's internal indexes are
+ * keyed by.
+ */
+public class Element {
+
+    private String ID;
+    private String name;
+    private int handle;
+    private volatile long version;
+
+    /**
+     * Constructs a new Element with the specified ID and name.
+     *
+     * @param ID the unique identifier of the element
+     * @param name the name of the element
+     */
+    public Element(String ID, String name) {
+        this.ID = ID;
+        this.name = name;
+        this.handle = -1;
+    }
+
+    /**
+     * Gets the unique identifier of the element.
+     *
+     * @return the unique identifier of the element
+     */
+    public String getID() {
+        return ID;
+    }
+
+    /**
+     * Gets the dense int handle of the element's ID in its library.
+     *
+     * @return the handle, or -1 if the element is not in a library
+     */
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Sets the handle of the element's ID. Set by the library, or the
+     * branch, the element joins, before other threads can reach it.
+     *
+     * @param handle the handle from the symbol table of the element's kind
+     */
+    void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Gets the version at which the element joined its library.
+     *
+     * @return the version, or 0 if the element is not in a library
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version at which the element joined its library.
+     *
+     * @param version the version of the change that added the element
+     */
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Gets the name of the element.
+     *
+     * @return the name of the element
+     */
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Indexes elements by their handle. Handles are dense, so the index is an
+ * array split into fixed-size chunks that are allocated the first time one
+ * of their handles is used; growing never copies the elements. Elements are
+ * added and removed with compare-and-set and read without locks.
+ *
+ * @param <T> the type of the elements
+ */
+final class ElementIndex<T extends Element> extends AbstractCollection<T> {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private volatile AtomicReferenceArray<T>[] chunks;
+    private final AtomicInteger size;
+
+    /**
+     * Constructs an empty index.
+     */
+    @SuppressWarnings("unchecked")
+    ElementIndex() {
+        this.chunks = (AtomicReferenceArray<T>[]) new AtomicReferenceArray<?>[0];
+        this.size = new AtomicInteger();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the element with a handle.
+     *
+     * @param handle the handle
+     * @return the element, or null if no element has the handle
+     */
+    T get(int handle) {
+        AtomicReferenceArray<T>[] current = chunks;
+        int chunk = handle >>> CHUNK_BITS;
+        if (handle < 0 || chunk >= current.length || current[chunk] == null) {
+            return null;
+        }
+        return current[chunk].get(handle & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Adds an element unless its handle is taken.
+     *
+     * @param element the element
+     * @return the element already indexed under the handle, or null if the
+     * element was added
+     */
+    T putIfAbsent(T element) {
+        int handle = element.getHandle();
+        AtomicReferenceArray<T> chunk = chunk(handle >>> CHUNK_BITS);
+        int slot = handle & (CHUNK_SIZE - 1);
+        if (chunk.compareAndSet(slot, null, element)) {
+            size.incrementAndGet();
+            return null;
+        }
+        T existing = chunk.get(slot);
+        return existing != null ? existing : putIfAbsent(element);
+    }
+
+    /**
+     * Checks whether an element is indexed under a handle.
+     *
+     * @param handle the handle
+     * @return true if an element has the handle
+     */
+    boolean containsHandle(int handle) {
+        return get(handle) != null;
+    }
+
+    /**
+     * Removes an element if it is the one indexed under its handle.
+     *
+     * @param element the element
+     * @return true if the element was removed
+     */
+    boolean removeElement(T element) {
+        AtomicReferenceArray<T> chunk = element.getHandle() >= 0 ? chunk(element.getHandle() >>> CHUNK_BITS) : null;
+        if (chunk != null && chunk.compareAndSet(element.getHandle() & (CHUNK_SIZE - 1), element, null)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Iterates over the elements in handle order, starting at a handle. The
+     * iterator is weakly consistent: it never fails, and sees elements added
+     * after it was created only if their chunk already existed.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the iterator
+     */
+    Iterator<T> iterator(int fromHandle) {
+        AtomicReferenceArray<T>[] current = chunks;
+        return new Iterator<T>() {
+            private int handle = Math.max(fromHandle, 0) - 1;
+            private T next = advance();
+
+            private T advance() {
+                while (++handle < current.length << CHUNK_BITS) {
+                    AtomicReferenceArray<T> chunk = current[handle >>> CHUNK_BITS];
+                    if (chunk == null) {
+                        handle |= CHUNK_SIZE - 1;
+                        continue;
+                    }
+                    T element = chunk.get(handle & (CHUNK_SIZE - 1));
+                    if (element != null) {
+                        return element;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T element = next;
+                next = advance();
+                return element;
+            }
+        };
+    }
+
+    /**
+     * Gets a chunk, allocating it and growing the chunk table if needed.
+     *
+     * @param index the index of the chunk
+     * @return the chunk
+     */
+    private AtomicReferenceArray<T> chunk(int index) {
+        AtomicReferenceArray<T>[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length || current[index] == null) {
+                current = Arrays.copyOf(current, Math.max(current.length, index + 1));
+                current[index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+                chunks = current;
+            }
+            return current[index];
+        }
+    }
+}
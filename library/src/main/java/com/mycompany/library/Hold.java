@@ -0,0 +1,158 @@
+package com.mycompany.library;
+
+/**
+ * A patron's place in the hold queue of a book. A hold waits until a copy is
+ * returned or cancelled ahead of it, then becomes ready: the copy is set
+ * aside at a branch for the patron, who is told through the hold's
+ * {@link HoldListener}, and only that patron can borrow it there. The hold is
+ * fulfilled by the patron's lend, or cancelled.
+ * <p>
+ * Holds link to their neighbours in the queue, so cancelling one is O(1).
+ * The links and the state are guarded by the monitor of the book's
+ * {@link HoldQueue}.
+ */
+public final class Hold {
+
+    /**
+     * The states of a hold.
+     */
+    public enum State {
+
+        /**
+         * The hold is in the queue waiting for a copy.
+         */
+        WAITING,
+        /**
+         * A copy is set aside for the patron.
+         */
+        READY,
+        /**
+         * The patron borrowed the copy set aside.
+         */
+        FULFILLED,
+        /**
+         * The hold was cancelled.
+         */
+        CANCELLED
+    }
+
+    private final HoldQueue queue;
+    private final User user;
+    private final HoldListener listener;
+    private final long placedTime;
+    private volatile State state;
+    private volatile Branch branch;
+    Hold previous;
+    Hold next;
+
+    /**
+     * Constructs a waiting hold.
+     *
+     * @param queue the hold queue of the book
+     * @param user the patron waiting for the book
+     * @param listener told when the hold becomes ready
+     */
+    Hold(HoldQueue queue, User user, HoldListener listener) {
+        this.queue = queue;
+        this.user = user;
+        this.listener = listener;
+        this.placedTime = System.currentTimeMillis();
+        this.state = State.WAITING;
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the patron waiting for the book.
+     *
+     * @return the user
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the book held.
+     *
+     * @return the book
+     */
+    public Book getBook() {
+        return queue.getBook();
+    }
+
+    /**
+     * Gets the time the hold was placed.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getPlacedTime() {
+        return placedTime;
+    }
+
+    /**
+     * Gets the state of the hold.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the branch where the copy is set aside.
+     *
+     * @return the branch, or null while the hold is waiting
+     */
+    public Branch getBranch() {
+        return branch;
+    }
+
+    /**
+     * Cancels the hold. A waiting hold leaves the queue; the copy of a ready
+     * hold passes to the next hold, or becomes available if nobody else is
+     * waiting.
+     *
+     * @return true if the hold was cancelled, false if it was already
+     * fulfilled or cancelled
+     */
+    public boolean cancel() {
+        return queue.cancel(this);
+    }
+
+    /**
+     * Changes the state of the hold. Callers must hold the queue's monitor.
+     *
+     * @param state the new state
+     */
+    void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * Sets the branch where the copy is set aside. Callers must hold the
+     * queue's monitor.
+     *
+     * @param branch the branch
+     */
+    void setBranch(Branch branch) {
+        this.branch = branch;
+    }
+
+    /**
+     * Tells the patron that the hold is ready. Called without any lock held,
+     * once the change that freed the copy is committed. A patron whose
+     * listener fails cannot be told, so the hold is cancelled and the copy
+     * passes to the next hold; the circulation that freed it is not affected.
+     *
+     * @return true if the patron was told, false if the listener failed and
+     * the hold was cancelled
+     */
+    boolean notifyReady() {
+        try {
+            listener.onHoldReady(this);
+            return true;
+        } catch (RuntimeException e) {
+            queue.cancel(this);
+            return false;
+        }
+    }
+}
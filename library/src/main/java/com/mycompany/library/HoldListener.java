@@ -0,0 +1,19 @@
+package com.mycompany.library;
+
+/**
+ * Is told when a copy is set aside for a {@link Hold}.
+ */
+@FunctionalInterface
+public interface HoldListener {
+
+    /**
+     * Handles a hold that became ready. The call runs on the thread that
+     * freed the copy, possibly a branch shard, so it must not wait for
+     * circulation; a lend for the patron must be handed to another thread.
+     * If the call throws, the hold is cancelled and the copy passes to the
+     * next hold.
+     *
+     * @param hold the hold, now ready at {@link Hold#getBranch()}
+     */
+    void onHoldReady(Hold hold);
+}
@@ -0,0 +1,225 @@
+package com.mycompany.library;
+
+/**
+ * The first-come, first-served queue of the holds on one book. It is a
+ * doubly linked list of the waiting {@link Hold}s plus the hold the book is
+ * set aside for, if any, so placing, cancelling and assigning a hold are all
+ * O(1).
+ * <p>
+ * A copy set aside stays flagged as loaned and out of its branch's available
+ * set, so nobody else can borrow it and a return always finds it loaned. The
+ * queue's monitor is taken before the branch's monitor, never after. Holds
+ * are not journaled: after a restart, or on a replica, a copy set aside is
+ * simply available.
+ */
+final class HoldQueue {
+
+    private final Book book;
+    private final VersionClock clock;
+    private Hold head;
+    private Hold tail;
+    private volatile int waiting;
+    private volatile Hold ready;
+
+    /**
+     * Constructs an empty queue.
+     *
+     * @param book the book held
+     * @param clock the version clock of the book's library
+     */
+    HoldQueue(Book book, VersionClock clock) {
+        this.book = book;
+        this.clock = clock;
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the book held.
+     *
+     * @return the book
+     */
+    Book getBook() {
+        return book;
+    }
+
+    /**
+     * Gets the number of holds waiting for a copy.
+     *
+     * @return the number of waiting holds
+     */
+    int getWaitingCount() {
+        return waiting;
+    }
+
+    /**
+     * Gets the hold the book is set aside for.
+     *
+     * @return the ready hold, or null if the book is not set aside
+     */
+    Hold getReady() {
+        return ready;
+    }
+
+    /**
+     * Puts a patron at the end of the queue. If the book is on a shelf, it is
+     * set aside at once for the first waiting hold, which is then this one.
+     *
+     * @param user the patron
+     * @param listener told when the hold becomes ready
+     * @return the hold
+     */
+    Hold place(User user, HoldListener listener) {
+        Hold hold = new Hold(this, user, listener);
+        Hold promoted;
+        long version = clock.begin();
+        try {
+            synchronized (this) {
+                append(hold);
+                promoted = dispatch(version);
+            }
+        } finally {
+            clock.commit(version);
+        }
+        if (promoted != null) {
+            promoted.notifyReady();
+        }
+        return hold;
+    }
+
+    /**
+     * Gives a returned copy, still flagged as loaned, to the first waiting
+     * hold.
+     *
+     * @param branch the branch the copy was returned to
+     * @return the hold that became ready, to be notified once the return is
+     * committed, or null if nobody is waiting
+     */
+    synchronized Hold assign(Branch branch) {
+        Hold first = head;
+        if (first == null) {
+            return null;
+        }
+        unlink(first);
+        first.setBranch(branch);
+        first.setState(Hold.State.READY);
+        ready = first;
+        return first;
+    }
+
+    /**
+     * Sets the book aside for the first waiting hold if it is on a shelf.
+     * Called after a return made the copy available, in case a hold was
+     * placed while the copy was still flagged as loaned.
+     *
+     * @param version the version of the change
+     * @return the hold that became ready, to be notified once the change is
+     * committed, or null if nobody is waiting or the book is loaned
+     */
+    synchronized Hold dispatch(long version) {
+        if (head == null || !book.tryLoan()) {
+            return null;
+        }
+        Branch branch = book.getBranch();
+        // flagged as loaned, the book can no longer be transferred
+        while (branch != null && !branch.reserveBook(book, version)) {
+            branch = book.getBranch();
+        }
+        if (branch == null) {
+            // the book was removed from the library
+            book.setIsLoaned(false);
+            return null;
+        }
+        return assign(branch);
+    }
+
+    /**
+     * Lets the patron of the ready hold borrow the copy set aside.
+     *
+     * @param hold the ready hold
+     * @return true if the hold is fulfilled and the copy, still flagged as
+     * loaned, is the patron's; false if the hold was cancelled meanwhile
+     */
+    synchronized boolean fulfill(Hold hold) {
+        if (ready != hold || hold.getState() != Hold.State.READY) {
+            return false;
+        }
+        hold.setState(Hold.State.FULFILLED);
+        ready = null;
+        return true;
+    }
+
+    /**
+     * Cancels a hold. The copy of a ready hold passes to the next hold, or
+     * is put back on its branch's shelf.
+     *
+     * @param hold the hold to cancel
+     * @return true if the hold was cancelled, false if it was already
+     * fulfilled or cancelled
+     */
+    boolean cancel(Hold hold) {
+        Hold promoted = null;
+        long version = clock.begin();
+        try {
+            synchronized (this) {
+                switch (hold.getState()) {
+                    case WAITING ->
+                        unlink(hold);
+                    case READY -> {
+                        ready = null;
+                        promoted = assign(hold.getBranch());
+                        if (promoted == null) {
+                            hold.getBranch().shelveBook(book, version);
+                        }
+                    }
+                    default -> {
+                        return false;
+                    }
+                }
+                hold.setState(Hold.State.CANCELLED);
+            }
+        } finally {
+            clock.commit(version);
+        }
+        if (promoted != null) {
+            promoted.notifyReady();
+        }
+        return true;
+    }
+
+    /**
+     * Appends a hold to the list. Callers must hold the queue's monitor.
+     *
+     * @param hold the hold
+     */
+    private void append(Hold hold) {
+        hold.previous = tail;
+        if (tail != null) {
+            tail.next = hold;
+        } else {
+            head = hold;
+        }
+        tail = hold;
+        waiting++;
+    }
+
+    /**
+     * Takes a hold out of the list. Callers must hold the queue's monitor.
+     *
+     * @param hold the hold
+     */
+    private void unlink(Hold hold) {
+        if (hold.previous != null) {
+            hold.previous.next = hold.next;
+        } else {
+            head = hold.next;
+        }
+        if (hold.next != null) {
+            hold.next.previous = hold.previous;
+        } else {
+            tail = hold.previous;
+        }
+        hold.previous = null;
+        hold.next = null;
+        waiting--;
+    }
+}
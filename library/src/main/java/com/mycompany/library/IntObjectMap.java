@@ -0,0 +1,214 @@
+package com.mycompany.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * Maps int handles to objects without boxing the keys. Writers must hold a
+ * lock of their choosing; readers do not need one.
+ * <p>
+ * Keys live in an open-addressing table. A value is written after its key is
+ * and read before it, so a reader that finds a value also finds the right
+ * key. Removed entries leave a marker that the key reuses if it comes back,
+ * so a key never moves while readers may be probing for it; markers are
+ * dropped when the table is rebuilt.
+ *
+ * @param <V> the type of the values
+ */
+final class IntObjectMap<V> {
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final Object REMOVED = new Object();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private volatile Table table;
+    private volatile int size;
+    private int used;
+
+    /**
+     * Constructs an empty map.
+     */
+    IntObjectMap() {
+        this.table = new Table(INITIAL_CAPACITY);
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Object value = VALUES.getAcquire(current.values, i);
+            if (value == null) {
+                return null;
+            }
+            if (current.keys[i] == key) {
+                return value != REMOVED ? (V) value : null;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key is in the map.
+     *
+     * @param key the key
+     * @return true if the key has a value
+     */
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value of a key. Callers must hold the writers' lock.
+     *
+     * @param key the key
+     * @param value the value, not null
+     * @return the previous value, or null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        Table current = table;
+        int i = find(current, key);
+        Object previous = current.values[i];
+        if (previous == null) {
+            if ((used + 1) * 4 > current.keys.length * 3) {
+                current = rebuild(current);
+                i = find(current, key);
+            }
+            current.keys[i] = key;
+            used++;
+        }
+        VALUES.setRelease(current.values, i, value);
+        if (previous == null || previous == REMOVED) {
+            size++;
+            return null;
+        }
+        return (V) previous;
+    }
+
+    /**
+     * Removes a key if it maps to a given value. Callers must hold the
+     * writers' lock.
+     *
+     * @param key the key
+     * @param value the expected value
+     * @return true if the key was removed
+     */
+    boolean remove(int key, V value) {
+        Table current = table;
+        int i = find(current, key);
+        if (current.values[i] != value) {
+            return false;
+        }
+        VALUES.setRelease(current.values, i, REMOVED);
+        size--;
+        return true;
+    }
+
+    /**
+     * Gets the number of keys in the map.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the values of the map. Callers must hold the writers' lock for
+     * the copy to be exact.
+     *
+     * @return the values
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        Table current = table;
+        List<V> values = new ArrayList<>(size);
+        for (Object value : current.values) {
+            if (value != null && value != REMOVED) {
+                values.add((V) value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Finds the slot of a key, or the empty slot where it would go.
+     *
+     * @param current the table to search
+     * @param key the key
+     * @return the slot
+     */
+    private static int find(Table current, int key) {
+        int mask = current.keys.length - 1;
+        int i = slot(key, mask);
+        while (current.values[i] != null && current.keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Copies the live entries into a new table sized for them and publishes
+     * it.
+     *
+     * @param current the full table
+     * @return the new table
+     */
+    private Table rebuild(Table current) {
+        int capacity = INITIAL_CAPACITY;
+        while ((size + 1) * 2 > capacity) {
+            capacity *= 2;
+        }
+        Table rebuilt = new Table(capacity);
+        for (int i = 0; i < current.keys.length; i++) {
+            Object value = current.values[i];
+            if (value != null && value != REMOVED) {
+                int j = find(rebuilt, current.keys[i]);
+                rebuilt.keys[j] = current.keys[i];
+                rebuilt.values[j] = value;
+            }
+        }
+        used = size;
+        table = rebuilt;
+        return rebuilt;
+    }
+
+    /**
+     * Gets the first slot to probe for a key.
+     *
+     * @param key the key
+     * @param mask the table length minus one
+     * @return the slot
+     */
+    private static int slot(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * The keys and values, in two parallel arrays.
+     */
+    private static final class Table {
+
+        final int[] keys;
+        final Object[] values;
+
+        /**
+         * Constructs an empty table.
+         *
+         * @param capacity the number of slots, a power of two
+         */
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+}
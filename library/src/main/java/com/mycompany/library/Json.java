@@ -0,0 +1,54 @@
+package com.mycompany.library;
+
+/**
+ * Helpers for writing JSON by hand.
+ */
+final class Json {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Prevents instantiation.
+     */
+    private Json() {
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Appends a string as a JSON string literal, escaping quotes, backslashes
+     * and control characters.
+     *
+     * @param json the JSON being written
+     * @param value the string, or null to write {@code null}
+     */
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' ->
+                    json.append("\\\"");
+                case '\\' ->
+                    json.append("\\\\");
+                case '\n' ->
+                    json.append("\\n");
+                case '\r' ->
+                    json.append("\\r");
+                case '\t' ->
+                    json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
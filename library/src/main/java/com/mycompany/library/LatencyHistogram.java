@@ -0,0 +1,152 @@
+package com.mycompany.library;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts latencies in log-linear buckets, in the style of an HDR histogram.
+ * <p>
+ * Values below 32 ns get a bucket each; above that, every power of two is
+ * split into 32 buckets, so a recorded value is off by at most 1/32 of
+ * itself. Values from 32 ns up to about 68 seconds fit in 1,024 buckets, and
+ * longer ones are counted in the last bucket. Recording is a bucket
+ * increment plus a couple of adder updates and never allocates; percentiles
+ * are computed on demand by walking the buckets.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.getAndIncrement(bucketOf(value));
+        count.increment();
+        total.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return the count
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    double getMean() {
+        long n = count.sum();
+        return n > 0 ? (double) total.sum() / n : 0;
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     *
+     * @return the maximum in nanoseconds
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the latency below which a given percentage of the recorded
+     * latencies fall.
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears the histogram. Latencies recorded while it is being cleared may
+     * be partly kept.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value a value that is not negative
+     * @return the index of its bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int bucket = shift * SUB_BUCKETS + (int) (value >>> shift);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Gets the value a bucket stands for: the middle of its range.
+     *
+     * @param bucket the index of the bucket
+     * @return the value in nanoseconds
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - (long) shift * SUB_BUCKETS;
+        return (mantissa << shift) + ((1L << shift) >> 1);
+    }
+}
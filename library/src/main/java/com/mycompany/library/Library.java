@@ -0,0 +1,864 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Represents a library system that manages users and branches. Users,
+ * branches and books are indexed by the int handle of their ID, so a lookup
+ * hashes the string ID once and then reads an array. Each library has its own
+ * symbol tables, which go away with it. All indexes are
+ * concurrent, so several circulation desks can share one library. Reports
+ * that need a consistent view while circulation goes on read through a
+ * {@link ReadView}. Lends and returns can be run on {@link BranchShards}
+ * instead of the callers' threads.
+ */
+public class Library {
+
+    private static final long QUERY_CACHE_WEIGHT = 1 << 20;
+    private static final int FEED_CAPACITY = 1 << 16;
+
+    private final SymbolTable userIds;
+    private final SymbolTable branchIds;
+    private final SymbolTable bookIds;
+    private final VersionClock clock;
+    private ElementIndex<User> users;
+    private ElementIndex<Branch> branches;
+    private ElementIndex<Book> books;
+    private final ConcurrentHashMap<Title, Title> titles;
+    private final DebtLedger debtLedger;
+    private final DueDateScheduler dueDates;
+    private final LoanHistory loanHistory;
+    private final CatalogIndex catalog;
+    private final CirculationMetrics metrics;
+    private final QueryCache queryCache;
+    private final CirculationFeed feed;
+    private volatile TransactionJournal journal;
+    private volatile BranchShards shards;
+
+    /**
+     * Constructs a new Library instance. Initializes a version clock, empty
+     * symbol tables and indexes for users, branches, books and titles, an
+     * empty debt ledger, an empty due-date scheduler, an empty loan history,
+     * an empty catalog index, metrics that are off, an empty query cache and
+     * an event feed without subscribers.
+     */
+    public Library() {
+        this.userIds = new SymbolTable();
+        this.branchIds = new SymbolTable();
+        this.bookIds = new SymbolTable();
+        this.clock = new VersionClock();
+        this.users = new ElementIndex<>();
+        this.branches = new ElementIndex<>();
+        this.books = new ElementIndex<>();
+        this.titles = new ConcurrentHashMap<>();
+        this.debtLedger = new DebtLedger(clock);
+        this.dueDates = new DueDateScheduler();
+        this.loanHistory = new LoanHistory(this);
+        this.catalog = new CatalogIndex(this);
+        this.metrics = new CirculationMetrics(branchIds);
+        this.queryCache = new QueryCache(QUERY_CACHE_WEIGHT);
+        this.feed = new CirculationFeed(this, FEED_CAPACITY);
+    }
+
+    /**
+     * Adds a branch to the library. Books already in the branch get handles
+     * from the library's symbol table and are registered in the global book
+     * index; books whose ID is already in use are dropped from the branch.
+     *
+     * @param branch the branch to be added
+     * @return true if the branch was added, false if it is null or its ID is
+     * already in use
+     */
+    public boolean addBranch(Branch branch) {
+        int handle = branch != null ? branchIds.intern(branch.getID()) : -1;
+        if (handle < 0 || branches.containsHandle(handle)) {
+            return false;
+        }
+        TransactionJournal journal = this.journal;
+        branch.setHandle(handle);
+        long version = clock.begin();
+        try {
+            branch.setVersion(version);
+            if (branches.putIfAbsent(branch) != null) {
+                return false;
+            }
+            if (journal != null) {
+                journal.logAddBranch(branch);
+            }
+            branch.setLibrary(this);
+            for (Book book : new ArrayList<>(branch.getBookCollection())) {
+                if (!indexBook(book)) {
+                    branch.removeBook(book, version);
+                } else if (journal != null) {
+                    journal.logAddBook(book, branch);
+                }
+            }
+        } finally {
+            clock.commit(version);
+        }
+        syncJournal();
+        return true;
+    }
+
+    /**
+     * Adds a user to the library. The user's open loans, if any, are
+     * scheduled by due date, and the returned ones are moved to the library's
+     * loan history.
+     *
+     * @param user the user to be added
+     * @return true if the user was added, false if it is null or its ID is
+     * already in use
+     */
+    public boolean addUser(User user) {
+        int handle = user != null ? userIds.intern(user.getID()) : -1;
+        // one registration at a time, so a user that loses a race for its ID is never tracked
+        synchronized (userIds) {
+            if (handle < 0 || users.containsHandle(handle)) {
+                return false;
+            }
+            user.setHandle(handle);
+            // ready before it is published, so a fine charged right after is counted once
+            debtLedger.track(user);
+            user.setLibrary(this);
+            user.attachHistory(loanHistory);
+            long version = clock.begin();
+            try {
+                user.setVersion(version);
+                users.putIfAbsent(user);
+            } finally {
+                clock.commit(version);
+            }
+            TransactionJournal journal = this.journal;
+            if (journal != null) {
+                journal.logAddUser(user);
+            }
+        }
+        for (Loan loan : user.getActiveLoans()) {
+            dueDates.register(loan);
+        }
+        syncJournal();
+        return true;
+    }
+
+    /**
+     * Gets the users registered in the library.
+     *
+     * @return the users of the library
+     */
+    public Collection<User> getUsers() {
+        return Collections.unmodifiableCollection(users);
+    }
+
+    /**
+     * Gets the branches of the library.
+     *
+     * @return the branches of the library
+     */
+    public Collection<Branch> getBranches() {
+        return Collections.unmodifiableCollection(branches);
+    }
+
+    /**
+     * Opens a read-only view of the library as of now. The view sees every
+     * change that completed before it was opened and none of the changes made
+     * after, while lends and returns go on without waiting for it. Opening a
+     * view copies nothing; it must be closed so that the history it keeps
+     * can be merged.
+     *
+     * @return the view
+     */
+    public ReadView openReadView() {
+        return new ReadView(this);
+    }
+
+    /**
+     * Gets the ledger of the fines owed to the library.
+     *
+     * @return the debt ledger
+     */
+    public DebtLedger getDebtLedger() {
+        return debtLedger;
+    }
+
+    /**
+     * Gets the scheduler that tracks the open loans by due date.
+     *
+     * @return the due-date scheduler
+     */
+    public DueDateScheduler getDueDates() {
+        return dueDates;
+    }
+
+    /**
+     * Gets the columnar history of the loans returned to the library.
+     *
+     * @return the loan history
+     */
+    public LoanHistory getLoanHistory() {
+        return loanHistory;
+    }
+
+    /**
+     * Gets the full-text index of the library's books by title and author.
+     *
+     * @return the catalog index
+     */
+    public CatalogIndex getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Gets the latency and outcome metrics of the library's circulation
+     * operations.
+     *
+     * @return the metrics
+     */
+    public CirculationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the cache of the results of the library's read queries.
+     *
+     * @return the query cache
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Gets the feed that publishes the library's lends, returns, fines and
+     * new books to asynchronous subscribers.
+     *
+     * @return the event feed
+     */
+    public CirculationFeed getFeed() {
+        return feed;
+    }
+
+    /**
+     * Gets the journal that records the library's changes.
+     *
+     * @return the journal, or null if changes are not journaled
+     */
+    public TransactionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal that records the library's changes. Once set, every
+     * add, lend and return is appended to it, and the public operations wait
+     * until their records are on disk before returning.
+     *
+     * @param journal the journal, or null to stop journaling
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Gets the branch shards that run the library's lends and returns.
+     *
+     * @return the shards, or null if circulation runs on the callers'
+     * threads
+     */
+    public BranchShards getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the branch shards that run the library's lends and returns. Once
+     * set, every lend and return made through the library, single or in a
+     * batch, is applied on the shard of its branch. Closing the shards
+     * unsets them.
+     *
+     * @param shards the shards of this library, or null to run circulation
+     * on the callers' threads
+     * @throws IllegalArgumentException if the shards belong to another
+     * library
+     */
+    public synchronized void setShards(BranchShards shards) {
+        if (shards != null && shards.getLibrary() != this) {
+            throw new IllegalArgumentException("The shards belong to another library");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Unsets the branch shards if they are the ones set. Called when the
+     * shards close.
+     *
+     * @param closing the shards that are closing
+     */
+    synchronized void detachShards(BranchShards closing) {
+        if (shards == closing) {
+            shards = null;
+        }
+    }
+
+    /**
+     * Waits until the journal records written by the current thread are on
+     * disk.
+     */
+    private void syncJournal() {
+        TransactionJournal journal = this.journal;
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Gets the clock that versions the library's changes.
+     *
+     * @return the version clock
+     */
+    VersionClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Gets the symbol table of the IDs of the library's books.
+     *
+     * @return the book symbol table
+     */
+    SymbolTable getBookIds() {
+        return bookIds;
+    }
+
+    /**
+     * Registers a book in the global book index and, the first time, in the
+     * catalog index, making it a copy of the library's title with its name
+     * and author. Called by branches when a book enters their collection,
+     * once the book has its handle from the library's symbol table.
+     *
+     * @param book the book to register
+     * @return true if the book is indexed, false if another book already uses
+     * its ID
+     */
+    boolean indexBook(Book book) {
+        if (book.getHandle() < 0) {
+            return false;
+        }
+        Book indexed = books.get(book.getHandle());
+        if (indexed != null) {
+            return indexed == book;
+        }
+        if (book.getTitle().getLibrary() != this) {
+            book.attachTitle(internTitle(book.getTitle()));
+        }
+        Book existing = books.putIfAbsent(book);
+        if (existing == null) {
+            catalog.add(book);
+        }
+        return existing == null || existing == book;
+    }
+
+    /**
+     * Gets the library's title with the name and author of another title,
+     * creating it the first time.
+     *
+     * @param title a title with the name and author to look for
+     * @return the library's title
+     */
+    private Title internTitle(Title title) {
+        Title shared = titles.get(title);
+        if (shared == null) {
+            Title created = new Title(title.getName(), title.getAuthor(), this);
+            shared = titles.putIfAbsent(created, created);
+            if (shared == null) {
+                shared = created;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Gets a user by handle.
+     *
+     * @param handle the handle of the user's ID
+     * @return the user, or null if not found
+     */
+    User getUser(int handle) {
+        return users.get(handle);
+    }
+
+    /**
+     * Gets a branch by handle.
+     *
+     * @param handle the handle of the branch's ID
+     * @return the branch, or null if not found
+     */
+    Branch getBranch(int handle) {
+        return branches.get(handle);
+    }
+
+    /**
+     * Gets a book by handle.
+     *
+     * @param handle the handle of the book's ID
+     * @return the book, or null if not found
+     */
+    Book getBook(int handle) {
+        return books.get(handle);
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Searches for a branch by its ID.
+     *
+     * @param branchID the ID of the branch to search for
+     * @return the branch with the specified ID, or null if not found
+     */
+    public Branch searchBranchByID(String branchID) {
+        return branches.get(branchIds.lookup(branchID));
+    }
+
+    /**
+     * Searches for a user by their ID.
+     *
+     * @param userID the ID of the user to search for
+     * @return the user with the specified ID, or null if not found
+     */
+    public User searchUserByID(String userID) {
+        return users.get(userIds.lookup(userID));
+    }
+
+    /**
+     * Searches for a book by its ID across all branches.
+     *
+     * @param bookID The unique identifier of the book to search for.
+     * @return The book with the specified ID, or null if no such book is found.
+     */
+    public Book searchBookByID(String bookID) {
+        long start = metrics.start();
+        Book book = lookupBook(bookID);
+        metrics.record(CirculationMetrics.Operation.BOOK_LOOKUP, null, start);
+        return book;
+    }
+
+    /**
+     * Looks up a book by its ID for the library's own use, without counting
+     * it in the metrics.
+     *
+     * @param bookID the ID of the book
+     * @return the book, or null if not found
+     */
+    Book lookupBook(String bookID) {
+        return books.get(bookIds.lookup(bookID));
+    }
+
+    /**
+     * Searches for a title of the library by its name and author. The title
+     * tells which branches have a copy available and how many.
+     *
+     * @param name the name of the title
+     * @param author the author of the title
+     * @return the title, or null if the library has no copy of it
+     */
+    public Title searchTitle(String name, String author) {
+        return titles.get(new Title(name, author, null));
+    }
+
+    /**
+     * Searches for the branch that currently holds a book.
+     *
+     * @param bookID the unique identifier of the book
+     * @return the branch holding the book, or null if no such book is found
+     */
+    public Branch searchBranchOfBook(String bookID) {
+        Book book = lookupBook(bookID);
+        return book != null ? book.getBranch() : null;
+    }
+
+    /**
+     * Searches for books by words of their title or author. Matching ignores
+     * case and accents, and each word can be the beginning of a longer one.
+     *
+     * @param query the words to look for
+     * @param branchID the ID of the branch to search in, or null for every
+     * branch
+     * @param availableOnly true to skip the books that are loaned
+     * @param limit the maximum number of books to return
+     * @return the matching books, empty if the branch is not found; the
+     * results of a search in one branch are cached and read-only
+     */
+    public List<Book> searchBooks(String query, String branchID, boolean availableOnly, int limit) {
+        if (branchID == null || query == null) {
+            return catalog.search(query, null, availableOnly, limit);
+        }
+        Branch branch = searchBranchByID(branchID);
+        if (branch == null) {
+            return new ArrayList<>();
+        }
+        return queryCache.get(List.of("search", branch.getHandle(), query, availableOnly, limit),
+                branch.getGeneration(), () -> catalog.search(query, branch, availableOnly, limit));
+    }
+
+    /**
+     * Gets the users with the largest debts, largest first. The list is
+     * cached until the next fine.
+     *
+     * @param n the maximum number of debtors to return
+     * @return up to n debtors with their debts, read-only
+     */
+    public List<DebtLedger.Entry> getTopDebtors(int n) {
+        return queryCache.get(List.of("debtors", n), debtLedger.getGeneration(), () -> debtLedger.getTopDebtors(n));
+    }
+
+    /**
+     * Calculates the penalty accumulated by a user.
+     *
+     * @param userID the ID of the user
+     * @return the accumulated penalty of the user, or 0 if the user is not
+     * found
+     */
+    public long calculatePenaltyByUser(String userID) {
+        User user = searchUserByID(userID);
+        if (user != null) {
+            return user.getAccumulatedDebts();
+        }
+        return 0;
+    }
+
+    /**
+     * Lends a book to a user.
+     *
+     * @param userID the ID of the user
+     * @param bookID the ID of the book
+     * @param branchID the ID of the branch
+     * @return the outcome of the lend
+     */
+    public CirculationResult lendBook(String userID, String bookID, String branchID) {
+        BranchShards sharded = shards;
+        if (sharded != null) {
+            try {
+                return sharded.lendBook(userID, bookID, branchID);
+            } catch (RejectedExecutionException e) {
+                // the shards closed meanwhile; lend here
+            }
+        }
+        long start = metrics.start();
+        Branch branch = searchBranchByID(branchID);
+        User user = searchUserByID(userID);
+        CirculationResult result;
+        if (branch == null) {
+            result = CirculationResult.UNKNOWN_BRANCH;
+        } else if (user == null) {
+            result = CirculationResult.UNKNOWN_USER;
+        } else {
+            result = branch.loanBook(user, bookID);
+        }
+        metrics.record(CirculationMetrics.Operation.LEND, branch, result, start);
+        return result;
+    }
+
+    /**
+     * Lends several books of one branch to a user. The user and the branch
+     * are resolved once for the whole batch; each lend is timed and counted
+     * in the metrics on its own.
+     *
+     * @param userID the ID of the user
+     * @param bookIDs the IDs of the books to lend
+     * @param branchID the ID of the branch
+     * @return the outcome of each lend, in the same order as the book IDs
+     */
+    public List<CirculationResult> lendBooks(String userID, List<String> bookIDs, String branchID) {
+        Branch branch = searchBranchByID(branchID);
+        User user = searchUserByID(userID);
+        BranchShards sharded = shards;
+        if (sharded != null && branch != null && user != null) {
+            try {
+                return sharded.lendBooks(branch, user, bookIDs);
+            } catch (RejectedExecutionException e) {
+                // the shards closed meanwhile; lend here
+            }
+        }
+        List<CirculationResult> results = new ArrayList<>(bookIDs.size());
+        for (String bookID : bookIDs) {
+            long start = metrics.start();
+            CirculationResult result;
+            if (branch == null) {
+                result = CirculationResult.UNKNOWN_BRANCH;
+            } else if (user == null) {
+                result = CirculationResult.UNKNOWN_USER;
+            } else {
+                result = branch.applyLoan(user, bookID, new Date());
+            }
+            metrics.record(CirculationMetrics.Operation.LEND, branch, result, start);
+            results.add(result);
+        }
+        syncJournal();
+        return results;
+    }
+
+   /**
+     * Returns a book from a user to a branch.
+     * 
+     * @param userID the ID of the user returning the book
+     * @param bookID the ID of the book being returned
+     * @param branchID the ID of the branch to which the book is returned
+     * @param dateOfReturn the date the book is returned
+     * @return true if the book was successfully returned, false otherwise
+     */
+    public boolean returnBook(String userID, String bookID, String branchID, Date dateOfReturn) {
+        BranchShards sharded = shards;
+        if (sharded != null) {
+            try {
+                return sharded.returnBook(userID, bookID, branchID, dateOfReturn);
+            } catch (RejectedExecutionException e) {
+                // the shards closed meanwhile; return here
+            }
+        }
+        long start = metrics.start();
+        Branch branch = searchBranchByID(branchID);
+        User user = searchUserByID(userID);
+        Book book = lookupBook(bookID);
+        CirculationResult result;
+        if (branch == null) {
+            result = CirculationResult.UNKNOWN_BRANCH;
+        } else if (user == null) {
+            result = CirculationResult.UNKNOWN_USER;
+        } else if (book == null) {
+            result = CirculationResult.UNKNOWN_BOOK;
+        } else {
+            result = branch.returnBook(user, book, dateOfReturn)
+                    ? CirculationResult.RETURNED : CirculationResult.NOT_LOANED;
+        }
+        metrics.record(CirculationMetrics.Operation.RETURN, branch, result, start);
+        return result == CirculationResult.RETURNED;
+    }
+
+    /**
+     * Returns several books from a user to a branch. The user and the branch
+     * are resolved once for the whole batch; each return is timed and counted
+     * in the metrics on its own.
+     *
+     * @param userID the ID of the user returning the books
+     * @param bookIDs the IDs of the books being returned
+     * @param branchID the ID of the branch to which the books are returned
+     * @param dateOfReturn the date the books are returned
+     * @return the outcome of each return, in the same order as the book IDs
+     */
+    public List<CirculationResult> returnBooks(String userID, List<String> bookIDs, String branchID, Date dateOfReturn) {
+        Branch branch = searchBranchByID(branchID);
+        User user = searchUserByID(userID);
+        BranchShards sharded = shards;
+        if (sharded != null && branch != null && user != null) {
+            List<Book> books = new ArrayList<>(bookIDs.size());
+            for (String bookID : bookIDs) {
+                books.add(lookupBook(bookID));
+            }
+            // never rejected: the returns the closed shards refuse are applied on this thread
+            return sharded.returnBooks(branch, Collections.nCopies(books.size(), user), books, dateOfReturn);
+        }
+        List<CirculationResult> results = new ArrayList<>(bookIDs.size());
+        for (String bookID : bookIDs) {
+            long start = metrics.start();
+            CirculationResult result;
+            if (branch == null) {
+                result = CirculationResult.UNKNOWN_BRANCH;
+            } else if (user == null) {
+                result = CirculationResult.UNKNOWN_USER;
+            } else {
+                result = returnToBranch(branch, user, lookupBook(bookID), dateOfReturn);
+            }
+            metrics.record(CirculationMetrics.Operation.RETURN, branch, result, start);
+            results.add(result);
+        }
+        syncJournal();
+        return results;
+    }
+
+    /**
+     * Moves books between two branches in one batch, for example to rebalance
+     * collections. Loaned books stay where they are.
+     *
+     * @param bookIDs the IDs of the books to move
+     * @param fromBranchID the ID of the branch holding the books
+     * @param toBranchID the ID of the branch receiving the books
+     * @return the IDs of the books that were not moved, which is all of them
+     * if either branch is not found
+     */
+    public List<String> transferBooks(List<String> bookIDs, String fromBranchID, String toBranchID) {
+        Branch from = searchBranchByID(fromBranchID);
+        Branch to = searchBranchByID(toBranchID);
+        if (from == null || to == null) {
+            return new ArrayList<>(bookIDs);
+        }
+        List<String> rejected = new ArrayList<>();
+        List<Book> books = new ArrayList<>(bookIDs.size());
+        for (String bookID : bookIDs) {
+            Book book = from.searchBookByID(bookID);
+            if (book == null) {
+                rejected.add(bookID);
+            } else {
+                books.add(book);
+            }
+        }
+        for (Book book : from.transferBooks(books, to)) {
+            rejected.add(book.getID());
+        }
+        return rejected;
+    }
+
+    /**
+     * Returns books left in a branch's drop box. The borrower of each book is
+     * taken from its open loan, so one call can process the returns of many
+     * users in a single pass. Each return is timed and counted in the metrics
+     * on its own.
+     *
+     * @param bookIDs the IDs of the books found in the drop box
+     * @param branchID the ID of the branch that owns the drop box
+     * @param dateOfReturn the date the books are returned
+     * @return the outcome of each return, in the same order as the book IDs
+     */
+    public List<CirculationResult> returnDropBox(List<String> bookIDs, String branchID, Date dateOfReturn) {
+        Branch branch = searchBranchByID(branchID);
+        BranchShards sharded = shards;
+        if (sharded != null && branch != null) {
+            List<User> users = new ArrayList<>(bookIDs.size());
+            List<Book> books = new ArrayList<>(bookIDs.size());
+            for (String bookID : bookIDs) {
+                Book book = lookupBook(bookID);
+                Loan loan = book != null ? book.getCurrentLoan() : null;
+                users.add(loan != null ? loan.getUser() : null);
+                books.add(book);
+            }
+            // never rejected: the returns the closed shards refuse are applied on this thread
+            return sharded.returnBooks(branch, users, books, dateOfReturn);
+        }
+        List<CirculationResult> results = new ArrayList<>(bookIDs.size());
+        for (String bookID : bookIDs) {
+            long start = metrics.start();
+            CirculationResult result;
+            if (branch == null) {
+                result = CirculationResult.UNKNOWN_BRANCH;
+            } else {
+                Book book = lookupBook(bookID);
+                Loan loan = book != null ? book.getCurrentLoan() : null;
+                User user = loan != null ? loan.getUser() : null;
+                result = returnToBranch(branch, user, book, dateOfReturn);
+            }
+            metrics.record(CirculationMetrics.Operation.RETURN, branch, result, start);
+            results.add(result);
+        }
+        syncJournal();
+        return results;
+    }
+
+    /**
+     * Places a hold on a book for a user, instead of polling for it to become
+     * available. Holds are served first come, first served: when a copy is
+     * returned, it is set aside at the branch receiving it for the first
+     * waiting hold and its listener is told; if the book is on a shelf now,
+     * that happens at once. The user then borrows it as usual with
+     * {@link #lendBook}.
+     *
+     * @param userID the ID of the user
+     * @param bookID the ID of the book
+     * @param listener told when the hold becomes ready
+     * @return the hold, or null if the user or the book is not found or
+     * there is no listener
+     */
+    public Hold placeHold(String userID, String bookID, HoldListener listener) {
+        User user = searchUserByID(userID);
+        Book book = lookupBook(bookID);
+        if (user == null || book == null || listener == null) {
+            return null;
+        }
+        return book.createHolds(clock).place(user, listener);
+    }
+
+    /**
+     * Returns a resolved book to a branch and reports the outcome.
+     *
+     * @param branch the branch receiving the book
+     * @param user the user returning the book, or null if nobody holds it
+     * @param book the book being returned, or null if it does not exist
+     * @param dateOfReturn the date the book is returned
+     * @return the outcome of the return
+     */
+    private CirculationResult returnToBranch(Branch branch, User user, Book book, Date dateOfReturn) {
+        if (book == null) {
+            return CirculationResult.UNKNOWN_BOOK;
+        }
+        if (user != null && branch.applyReturn(user, book, dateOfReturn)) {
+            return CirculationResult.RETURNED;
+        }
+        return CirculationResult.NOT_LOANED;
+    }
+
+    /**
+     * Iterates over the branches in handle order, starting at a handle.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the branches from that handle on
+     */
+    Iterator<Branch> iterateBranches(int fromHandle) {
+        return branches.iterator(fromHandle);
+    }
+
+    /**
+     * Iterates over the users in handle order, starting at a handle.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the users from that handle on
+     */
+    Iterator<User> iterateUsers(int fromHandle) {
+        return users.iterator(fromHandle);
+    }
+
+    /**
+     * Iterates over the books in handle order, starting at a handle.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the books from that handle on
+     */
+    Iterator<Book> iterateBooks(int fromHandle) {
+        return books.iterator(fromHandle);
+    }
+
+    /**
+     * Gets a list of available (not loaned) books in a branch.
+     *
+     * @param branchID the ID of the branch
+     * @return a list of available books in the branch, or an empty list if the
+     * branch is not found
+     */
+    public List<Book> getAvailableBooks(String branchID) {
+        return getAvailableBooks(branchID, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets a page of the available (not loaned) books in a branch.
+     *
+     * @param branchID the ID of the branch
+     * @param offset the position of the first available book to return
+     * @param limit the maximum number of books to return
+     * @return the available books in the requested page, read-only and
+     * cached until the branch changes, or an empty list if the branch is not
+     * found
+     */
+    public List<Book> getAvailableBooks(String branchID, int offset, int limit) {
+        long start = metrics.start();
+        Branch branch = searchBranchByID(branchID);
+        List<Book> available = branch == null ? new ArrayList<>()
+                : queryCache.get(List.of("available", branch.getHandle(), offset, limit), branch.getGeneration(),
+                        () -> branch.getAvailableBooks(offset, limit));
+        metrics.record(CirculationMetrics.Operation.AVAILABLE_BOOKS, branch, start);
+        return available;
+    }
+
+    /**
+     * Gets the number of available (not loaned) books in a branch.
+     *
+     * @param branchID the ID of the branch
+     * @return the number of available books, or 0 if the branch is not found
+     */
+    public int getAvailableCount(String branchID) {
+        Branch branch = searchBranchByID(branchID);
+        return branch != null ? branch.getAvailableCount() : 0;
+    }
+}
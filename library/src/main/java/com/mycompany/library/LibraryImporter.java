@@ -0,0 +1,377 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Loads branches, books and users into a library from CSV or TSV files without
+ * any interactive prompt.
+ * <p>
+ * The file is read sequentially through a buffered NIO reader and cut into
+ * batches of lines. Batches are parsed and inserted by a pool of worker
+ * threads. The queue of pending batches is bounded, so memory stays constant
+ * regardless of the file size. Rows that cannot be imported are counted and,
+ * when a rejection writer is given, written to it with their line number and
+ * reason.
+ * <p>
+ * Expected columns, in order:
+ * <ul>
+ * <li>branches: ID, name</li>
+ * <li>books: ID, title, author, branchID</li>
+ * <li>users: ID, name</li>
+ * </ul>
+ * Files ending in {@code .tsv} are split on tabs, any other file on commas.
+ * Fields may be quoted with double quotes. Empty lines, lines starting with
+ * {@code #} and a header on the first line whose first field is {@code ID}
+ * are skipped.
+ */
+public class LibraryImporter {
+
+    private static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final Library library;
+    private final int threads;
+    private final int batchSize;
+    private final Writer rejections;
+
+    /**
+     * Constructs an importer that uses one worker per available processor and
+     * does not write a rejection report.
+     *
+     * @param library the library that receives the imported data
+     */
+    public LibraryImporter(Library library) {
+        this(library, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, null);
+    }
+
+    /**
+     * Constructs an importer.
+     *
+     * @param library the library that receives the imported data
+     * @param threads the number of worker threads that parse and insert rows
+     * @param batchSize the number of lines handed to a worker at once
+     * @param rejections the writer that receives one line per rejected row, or
+     * null to only count rejections
+     */
+    public LibraryImporter(Library library, int threads, int batchSize, Writer rejections) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("threads and batchSize must be positive");
+        }
+        this.library = library;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.rejections = rejections;
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Imports branches from a file.
+     *
+     * @param file the file with one branch per row
+     * @return the import report
+     * @throws IOException if the file cannot be read
+     */
+    public Report importBranches(Path file) throws IOException {
+        return importFile(file, 2, (batch, report) -> {
+            for (Row row : batch) {
+                if (!library.addBranch(new Branch(row.fields[0], row.fields[1]))) {
+                    reject(report, row, "duplicate branch ID");
+                } else {
+                    report.accepted.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Imports users from a file.
+     *
+     * @param file the file with one user per row
+     * @return the import report
+     * @throws IOException if the file cannot be read
+     */
+    public Report importUsers(Path file) throws IOException {
+        return importFile(file, 2, (batch, report) -> {
+            for (Row row : batch) {
+                if (!library.addUser(new User(row.fields[0], row.fields[1]))) {
+                    reject(report, row, "duplicate user ID");
+                } else {
+                    report.accepted.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Imports books from a file. The branches they belong to must already
+     * exist. The books of a batch are grouped by branch and inserted with one
+     * call per branch.
+     *
+     * @param file the file with one book per row
+     * @return the import report
+     * @throws IOException if the file cannot be read
+     */
+    public Report importBooks(Path file) throws IOException {
+        return importFile(file, 4, (batch, report) -> {
+            Map<Branch, List<Book>> byBranch = new HashMap<>();
+            Map<Book, Row> rowsByBook = new HashMap<>();
+            for (Row row : batch) {
+                Branch branch = library.searchBranchByID(row.fields[3]);
+                if (branch == null) {
+                    reject(report, row, "unknown branch " + row.fields[3]);
+                    continue;
+                }
+                Book book = new Book(row.fields[0], row.fields[1], row.fields[2]);
+                byBranch.computeIfAbsent(branch, b -> new ArrayList<>()).add(book);
+                rowsByBook.put(book, row);
+            }
+            for (Map.Entry<Branch, List<Book>> entry : byBranch.entrySet()) {
+                List<Book> rejected = entry.getKey().addBooks(entry.getValue());
+                for (Book book : rejected) {
+                    reject(report, rowsByBook.get(book), "duplicate book ID");
+                }
+                report.accepted.addAndGet(entry.getValue().size() - rejected.size());
+            }
+        });
+    }
+
+    /**
+     * Streams a file through the worker pool.
+     *
+     * @param file the file to import
+     * @param columns the number of columns every row must have
+     * @param handler the code that inserts a batch of well-formed rows
+     * @return the import report
+     * @throws IOException if the file cannot be read
+     */
+    private Report importFile(Path file, int columns, BatchHandler handler) throws IOException {
+        Report report = new Report(file);
+        char delimiter = file.toString().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        ExecutorService workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Future<?>> pending = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<Row> batch = new ArrayList<>(batchSize);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                batch.add(new Row(lineNumber, line));
+                if (batch.size() == batchSize) {
+                    pending.add(submit(workers, batch, columns, delimiter, handler, report));
+                    for (Iterator<Future<?>> it = pending.iterator(); it.hasNext();) {
+                        Future<?> future = it.next();
+                        if (future.isDone()) {
+                            future.get();
+                            it.remove();
+                        }
+                    }
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(workers, batch, columns, delimiter, handler, report));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + file + " was interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Import of " + file + " failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        if (rejections != null) {
+            synchronized (rejections) {
+                rejections.flush();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Hands a batch of raw lines to the worker pool.
+     *
+     * @param workers the worker pool
+     * @param batch the raw lines
+     * @param columns the number of columns every row must have
+     * @param delimiter the field delimiter
+     * @param handler the code that inserts well-formed rows
+     * @param report the report to update
+     * @return the future of the batch
+     */
+    private Future<?> submit(ExecutorService workers, List<Row> batch, int columns, char delimiter,
+            BatchHandler handler, Report report) {
+        return workers.submit(() -> {
+            List<Row> parsed = new ArrayList<>(batch.size());
+            for (Row row : batch) {
+                row.fields = split(row.line, delimiter);
+                if (row.fields != null && row.lineNumber == 1 && row.fields[0].equalsIgnoreCase("ID")) {
+                    continue;
+                }
+                if (row.fields == null || row.fields.length != columns || row.fields[0].isEmpty()) {
+                    reject(report, row, "malformed row");
+                    continue;
+                }
+                parsed.add(row);
+            }
+            handler.insert(parsed, report);
+            return null;
+        });
+    }
+
+    /**
+     * Splits a line into trimmed fields. Fields may be enclosed in double
+     * quotes, and a doubled quote inside a quoted field stands for one quote.
+     *
+     * @param line the line to split
+     * @param delimiter the field delimiter
+     * @return the fields of the line, or null if a quote is not closed
+     */
+    static String[] split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Records a rejected row.
+     *
+     * @param report the report to update
+     * @param row the rejected row
+     * @param reason why the row was rejected
+     */
+    private void reject(Report report, Row row, String reason) {
+        report.rejected.incrementAndGet();
+        if (rejections == null) {
+            return;
+        }
+        try {
+            synchronized (rejections) {
+                rejections.write(report.file + ":" + row.lineNumber + ": " + reason + ": " + row.line + "\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Inserts a batch of well-formed rows.
+     */
+    private interface BatchHandler {
+
+        /**
+         * Inserts the rows into the library.
+         *
+         * @param batch the rows to insert
+         * @param report the report to update
+         */
+        void insert(List<Row> batch, Report report);
+    }
+
+    /**
+     * A line of the input file and its parsed fields.
+     */
+    private static class Row {
+
+        private final long lineNumber;
+        private final String line;
+        private String[] fields;
+
+        /**
+         * Constructs a new row.
+         *
+         * @param lineNumber the line number in the file, starting at 1
+         * @param line the raw line
+         */
+        Row(long lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Summary of an import: how many rows were accepted and rejected.
+     */
+    public static class Report {
+
+        private final Path file;
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * Constructs an empty report.
+         *
+         * @param file the imported file
+         */
+        Report(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Gets the imported file.
+         *
+         * @return the imported file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Gets the number of rows that were imported.
+         *
+         * @return the number of accepted rows
+         */
+        public long getAccepted() {
+            return accepted.get();
+        }
+
+        /**
+         * Gets the number of rows that were rejected.
+         *
+         * @return the number of rejected rows
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + getAccepted() + " imported, " + getRejected() + " rejected";
+        }
+    }
+}
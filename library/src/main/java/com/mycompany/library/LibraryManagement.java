@@ -0,0 +1,896 @@
+package com.mycompany.library;
+
+import com.mycompany.library.Branch;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.text.*;
+import javax.management.JMException;
+
+/**
+ * Manages the library system operations, including adding branches, books,
+ * users, lending and returning books, and handling user debts.
+ */
+public class LibraryManagement {
+
+    private static Scanner scanner = new Scanner(System.in);
+    private static Library library = new Library();
+    private static SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
+    private static final int PAGE_SIZE = 100;
+    private static final int CHECKPOINT_MINUTES = 5;
+    private static final long JOURNAL_SEGMENT_BYTES = 64L << 20;
+    private static Path snapshotFile;
+    private static TransactionJournal journal;
+    private static ScheduledExecutorService checkpoints;
+    private static ScheduledExecutorService overdueSweep;
+    private static ReplicationServer replication;
+    private static BranchShards shards;
+
+    /**
+     * Main method to run the library management system.
+     * <p>
+     * With {@code --snapshot <file>} the library is loaded from the snapshot
+     * if it exists, checkpointed every few minutes and saved on exit. With
+     * {@code --journal <directory>} every change is also appended to a
+     * journal that is replayed on startup. Data can be loaded before the menu
+     * starts with {@code --branches <file>}, {@code --books <file>},
+     * {@code --users <file>} and {@code --rejections <file>}. Branches are
+     * imported before books. Open loans are swept for overdue ones once an
+     * hour. With {@code --port <port>} the library is served over HTTP
+     * instead of the console menu until Enter is pressed. With
+     * {@code --shards <count>} lends and returns run on that many branch
+     * shards.
+     * <p>
+     * With {@code --replication-port <port>}, which needs a journal and a
+     * snapshot, the journal is shipped to replicas on that local port. A
+     * replica is started with {@code --replica-of <port>} and
+     * {@code --port <port>}: it follows the primary on the first port and
+     * serves read-only HTTP on the second, receiving snapshots in
+     * {@code --replica-dir <directory>} or a temporary directory.
+     *
+     * @param args command-line arguments
+     */
+    public static void main(String[] args) {
+        // the JDK server writes headers and body separately; without
+        // TCP_NODELAY each response waits for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        Map<String, Path> files;
+        try {
+            files = parseArguments(args);
+            if (files.containsKey("replica-of")) {
+                serveReplica(files);
+                return;
+            }
+            long sequence = 0;
+            if (files.containsKey("snapshot") && Files.exists(files.get("snapshot"))) {
+                library = LibrarySnapshot.load(files.get("snapshot"));
+                sequence = LibrarySnapshot.readSequence(files.get("snapshot"));
+            }
+            if (files.containsKey("journal")) {
+                journal = new TransactionJournal(files.get("journal"), JOURNAL_SEGMENT_BYTES);
+                journal.replay(library, sequence);
+                library.setJournal(journal);
+            }
+            if (files.containsKey("replication-port")) {
+                startReplication(files);
+            }
+            importData(files);
+            if (files.containsKey("shards")) {
+                shards = new BranchShards(library, Integer.parseInt(files.get("shards").toString()));
+                library.setShards(shards);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Startup failed: " + e.getMessage());
+            return;
+        }
+        if (files.containsKey("snapshot")) {
+            snapshotFile = files.get("snapshot");
+            checkpoints = LibrarySnapshot.scheduleCheckpoints(library, snapshotFile, CHECKPOINT_MINUTES, TimeUnit.MINUTES,
+                    (file, cause) -> System.out.println("Checkpoint to " + file + " failed: " + cause.getMessage()));
+        }
+        overdueSweep = library.getDueDates().startDailySweep(null);
+        try {
+            library.getMetrics().setEnabled(true);
+            library.getMetrics().register();
+            library.getQueryCache().register();
+        } catch (JMException e) {
+            System.out.println("Metrics are not available over JMX: " + e.getMessage());
+        }
+        LibraryManagement management = new LibraryManagement();
+        if (files.containsKey("port")) {
+            management.serve(files.get("port").toString());
+        } else {
+            management.run();
+        }
+    }
+
+    /**
+     * Serves the library over HTTP until Enter is pressed, then saves it like
+     * the menu's exit option.
+     *
+     * @param port the port to listen on
+     */
+    private void serve(String port) {
+        try (LibraryServer server = new LibraryServer(library, new InetSocketAddress(Integer.parseInt(port)))) {
+            server.start();
+            System.out.println("Serving the library on port " + server.getPort() + ". Press Enter to stop.");
+            scanner.nextLine();
+        } catch (IOException | NumberFormatException | NoSuchElementException e) {
+            System.out.println("Server stopped: " + e.getMessage());
+        }
+        saveSnapshot();
+    }
+
+    /**
+     * Starts shipping the journal to replicas on a local port.
+     *
+     * @param files the options by name
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalArgumentException if there is no journal or snapshot
+     */
+    private static void startReplication(Map<String, Path> files) throws IOException {
+        if (journal == null || !files.containsKey("snapshot")) {
+            throw new IllegalArgumentException("Replication needs --journal and --snapshot");
+        }
+        int port = Integer.parseInt(files.get("replication-port").toString());
+        replication = new ReplicationServer(journal, files.get("snapshot"),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        replication.setListener((peer, cause) -> System.out.println("Replication to " + peer + " stopped: " + cause.getMessage()));
+        replication.start();
+        System.out.println("Shipping the journal to replicas on port " + replication.getPort() + ".");
+    }
+
+    /**
+     * Follows a primary and serves its replica over HTTP until Enter is
+     * pressed.
+     *
+     * @param files the options by name
+     * @throws IOException if the replica or the server cannot be started
+     * @throws IllegalArgumentException if the HTTP port is missing
+     */
+    private static void serveReplica(Map<String, Path> files) throws IOException {
+        if (!files.containsKey("port")) {
+            throw new IllegalArgumentException("A replica needs --port");
+        }
+        int primaryPort = Integer.parseInt(files.get("replica-of").toString());
+        Path directory = files.containsKey("replica-dir") ? files.get("replica-dir")
+                : Files.createTempDirectory("library-replica");
+        try (LibraryReplica replica = new LibraryReplica(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), primaryPort), directory);
+                LibraryServer server = new LibraryServer(replica,
+                        new InetSocketAddress(Integer.parseInt(files.get("port").toString())))) {
+            replica.setListener((peer, cause) -> System.out.println("Replica lost " + peer + ": "
+                    + (cause instanceof EOFException ? "connection closed" : cause.getMessage())));
+            replica.start();
+            server.start();
+            System.out.println("Serving a replica of port " + primaryPort + " on port " + server.getPort()
+                    + ". Press Enter to stop.");
+            scanner.nextLine();
+        } catch (NoSuchElementException e) {
+            // standard input closed
+        }
+    }
+
+    /**
+     * Parses the command-line options.
+     *
+     * @param args command-line arguments as option/file pairs
+     * @return the files by option name, without the leading dashes
+     */
+    private static Map<String, Path> parseArguments(String[] args) {
+        Map<String, Path> files = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length || !args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option <file> pairs");
+            }
+            files.put(args[i].substring(2), Paths.get(args[i + 1]));
+        }
+        return files;
+    }
+
+    /**
+     * Imports branches, books and users named on the command line.
+     *
+     * @param files the files by option name
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void importData(Map<String, Path> files) throws IOException {
+        Writer rejections = files.containsKey("rejections")
+                ? Files.newBufferedWriter(files.get("rejections")) : null;
+        try {
+            LibraryImporter importer = new LibraryImporter(library, Runtime.getRuntime().availableProcessors(), 4096, rejections);
+            if (files.containsKey("branches")) {
+                System.out.println(importer.importBranches(files.get("branches")));
+            }
+            if (files.containsKey("books")) {
+                System.out.println(importer.importBooks(files.get("books")));
+            }
+            if (files.containsKey("users")) {
+                System.out.println(importer.importUsers(files.get("users")));
+            }
+        } finally {
+            if (rejections != null) {
+                rejections.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the main loop to display the menu and process user options.
+     */
+    private void run() {
+        int option = 0;
+        while (option != 11) {
+            showMenu();
+            try {
+                option = scanner.nextInt();
+                processOption(option);
+            } catch (InputMismatchException e) {
+                System.out.println("Invalid input.");
+                scanner.next();
+            } catch (Exception e) {
+                System.out.println("An unexpected error occurred: " + e.getMessage());
+
+            }
+        }
+    }
+
+    /**
+     * Displays the options menu.
+     */
+    private void showMenu() {
+        System.out.println("----------------------------------");
+        System.out.println("OPTIONS MENU");
+        System.out.println("1. Add a Branch");
+        System.out.println("2. Add a Book");
+        System.out.println("3. Add an User");
+        System.out.println("4. Lend a Book");
+        System.out.println("5. Return a Book");
+        System.out.println("6. Get Debts");
+        System.out.println("7. View Loans");
+        System.out.println("8. List Branches");
+        System.out.println("9. List Users");
+        System.out.println("10. Search Books");
+        System.out.println("11. Exit");
+        System.out.print("Please, select an option: ");
+    }
+
+    /**
+     * Processes the selected menu option.
+     *
+     * @param option the selected option by the user
+     */
+    private void processOption(int option) {
+        switch (option) {
+            case 1 ->
+                addBranch();
+            case 2 ->
+                addBook();
+            case 3 ->
+                addUsers();
+            case 4 ->
+                lendBook();
+            case 5 ->
+                returnBook();
+            case 6 ->
+                getDebts();
+            case 7 ->
+                viewLoans();
+            case 8 ->
+                listBranches();
+            case 9 ->
+                listUsers();
+            case 10 ->
+                searchBooks();
+            case 11 -> {
+                System.out.println("Exiting the system...");
+                saveSnapshot();
+            }
+            default ->
+                System.out.println("Invalid option, please try again.");
+
+        }
+    }
+
+    /**
+     * Closes the shards and the journal and saves the library to the snapshot
+     * file, if they were given at startup.
+     */
+    private void saveSnapshot() {
+        try {
+            if (shards != null) {
+                shards.close();
+            }
+            if (replication != null) {
+                replication.close();
+            }
+            if (checkpoints != null) {
+                checkpoints.shutdown();
+                checkpoints.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            long sequence = 0;
+            if (journal != null) {
+                journal.close();
+                sequence = journal.getLastSequence();
+            }
+            if (snapshotFile != null) {
+                LibrarySnapshot.write(library, snapshotFile, sequence);
+                // the snapshot and its directory entry are on disk by now
+                if (journal != null) {
+                    journal.deleteSegmentsUpTo(sequence);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not save the library: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds new branches to the library.
+     */
+    private void addBranch() {
+        System.out.print("How many branches would you like to add? ");
+        int branches = scanner.nextInt();
+        for (int i = 1; i <= branches; i++) {
+            System.out.println("Enter details for branch " + i + ":");
+            System.out.print("ID: ");
+            String ID = scanner.next();
+            scanner.nextLine();
+            System.out.print("Name: ");
+            String name = scanner.nextLine();
+
+            Branch branch = new Branch(ID, name);
+            if (!library.addBranch(branch)) {
+                System.out.println("A branch with ID " + ID + " already exists.");
+            }
+        }
+        System.out.println("*****All good!!*****");
+    }
+
+    /**
+     * Lists all branches in the library if any exist.
+     */
+    private void listBranches() {
+        if (!hasBranches()) {
+            return;
+        }
+        System.out.println("*******Getting branches*************");
+        printReport(LibraryReports::writeBranches, false);
+    }
+
+    /**
+     * Lists all users in the library if any exist.
+     */
+    private void listUsers() {
+        if (!hasUsers()) {
+            return;
+        }
+        System.out.println("*******Getting users*************");
+        printReport(LibraryReports::writeUsers, true);
+    }
+
+    /**
+     * Streams a report to the console one page at a time. All the pages are
+     * read from one view of the library, so they stay consistent while the
+     * user takes time to ask for more.
+     *
+     * @param report writes one page of the report and returns the next cursor
+     * @param askForMore true to ask before every page after the first
+     */
+    private void printReport(Report report, boolean askForMore) {
+        Writer console = new OutputStreamWriter(System.out);
+        String cursor = null;
+        try (ReadView view = library.openReadView()) {
+            LibraryReports reports = new LibraryReports(view);
+            do {
+                cursor = report.writePage(reports, console, ReportFormat.TEXT, cursor, PAGE_SIZE);
+                if (cursor != null && askForMore) {
+                    System.out.print("Show more? (Y/N) ");
+                    char selection = scanner.next().charAt(0);
+                    if (selection != 'Y' && selection != 'y') {
+                        return;
+                    }
+                }
+            } while (cursor != null);
+        } catch (IOException e) {
+            System.out.println("The report could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A paginated report of {@link LibraryReports}.
+     */
+    private interface Report {
+
+        /**
+         * Writes one page of the report.
+         *
+         * @param reports the reports of the library
+         * @param out where the page is written
+         * @param format the format of the page
+         * @param cursor the cursor of the page, or null for the first page
+         * @param limit the maximum number of rows in the page
+         * @return the cursor of the next page, or null after the last page
+         * @throws IOException if the page cannot be written
+         */
+        String writePage(LibraryReports reports, Writer out, ReportFormat format, String cursor, int limit)
+                throws IOException;
+    }
+
+    /**
+     * Adds new books to a branch in the library.
+     */
+    private void addBook() {
+        if (!hasBranches()) {
+            return;
+        }
+
+        String branch = getValidBranch();
+
+        System.out.print("How many books would you like to add to this branch? ");
+        int books = scanner.nextInt();
+        for (int i = 1; i <= books; i++) {
+            System.out.print("ID: ");
+            String ID = scanner.next();
+            scanner.nextLine();
+            System.out.print("Book's title: ");
+            String title = scanner.nextLine();
+            System.out.print("Author's name: ");
+            String author = scanner.nextLine();
+
+            Book book = new Book(ID, title, author);
+            if (!library.searchBranchByID(branch).addBook(book)) {
+                System.out.println("A book with ID " + ID + " already exists.");
+            }
+        }
+
+        System.out.println("Do you like to add books in another branch? (Y/N)");
+        char selection = scanner.next().charAt(0);
+        if (selection == 'Y' || selection == 'y') {
+            addBook();
+        }
+        System.out.println("*****All good!!*****");
+    }
+
+    /**
+     * Prompts the user to enter a valid branch ID.
+     *
+     * @return the valid branch ID
+     */
+    private String getValidBranch() {
+        System.out.println("In which branch would you like to add the books?");
+        printReport(LibraryReports::writeBranches, false);
+        System.out.print("BranchID: ");
+        String branchID = scanner.next();
+        scanner.nextLine();
+
+        Branch branch = library.searchBranchByID(branchID);
+        while (branch == null) {
+            System.out.println("Please enter an existing branch id!!");
+            branchID = scanner.next();
+            scanner.nextLine();
+            branch = library.searchBranchByID(branchID);
+        }
+        return branchID;
+    }
+
+    /**
+     * Adds new users to the library.
+     */
+    private void addUsers() {
+        System.out.print("How many users would you like to add?");
+        int users = scanner.nextInt();
+        for (int i = 1; i <= users; i++) {
+            addUser();
+        }
+    }
+
+    /**
+     * Adds a single user to the library.
+     *
+     * @return the ID of the added user
+     */
+    private String addUser() {
+        System.out.print("ID: ");
+        String ID = scanner.next();
+        scanner.nextLine();
+        System.out.print("Name: ");
+        String name = scanner.nextLine();
+
+        User user = new User(ID, name);
+        if (!library.addUser(user)) {
+            System.out.println("A user with ID " + ID + " already exists.");
+            return ID;
+        }
+        System.out.println("*****All good!!*****");
+        return ID;
+    }
+
+    /**
+     * Lends books to a user from a branch.
+     */
+    private void lendBook() {
+        if (!hasBranches()) {
+            return;
+        }
+        String branchID = selectBranch();
+        if (branchID == null) {
+            return;
+        }
+        if (library.getAvailableCount(branchID) == 0) {
+            System.out.println("No books available!");
+            return;
+        }
+        String userID = selectOrAddUser();
+        if (userID == null) {
+            return;
+        }
+        lendBooksToUser(userID, branchID);
+    }
+
+    /**
+     * Checks if there are any branches in the library.
+     *
+     * @return true if there are branches, false otherwise
+     */
+    private boolean hasBranches() {
+        if (library.getBranches().isEmpty()) {
+            System.out.println("There must be at least one branch!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Searches the catalog by words of the title or author and displays the
+     * first page of matches.
+     */
+    private void searchBooks() {
+        scanner.nextLine();
+        System.out.print("Enter words of the title or author: ");
+        String query = scanner.nextLine();
+        System.out.print("Enter branch ID, or * for all branches: ");
+        String branchID = scanner.next();
+        if (branchID.equals("*")) {
+            branchID = null;
+        } else if (library.searchBranchByID(branchID) == null) {
+            System.out.println("Branch not found.");
+            return;
+        }
+        System.out.print("Only available books? (Y/N) ");
+        char selection = scanner.next().charAt(0);
+        boolean availableOnly = selection == 'Y' || selection == 'y';
+        List<Book> books = library.searchBooks(query, branchID, availableOnly, PAGE_SIZE);
+        if (books.isEmpty()) {
+            System.out.println("No books found.");
+        }
+        for (Book book : books) {
+            Branch branch = book.getBranch();
+            System.out.println("ID: " + book.getID() + ", title: " + book.getName() + ", author: " + book.getAuthor()
+                    + ", branch: " + (branch != null ? branch.getID() : "none")
+                    + ", " + (book.isLoaned() ? "loaned" : "available"));
+        }
+    }
+
+    /**
+     * Prompts the user to select a branch by ID.
+     *
+     * @return the selected branch ID, or null if the branch is not found
+     */
+    private String selectBranch() {
+        System.out.print("Enter branch ID: ");
+        String branchID = scanner.next();
+        if (library.searchBranchByID(branchID) == null) {
+            System.out.println("Branch not found.");
+            return null;
+        }
+        return branchID;
+    }
+
+    /**
+     * Prompts the user to select or add a user by ID.
+     *
+     * @return the user ID, or null if the user is not found and not added
+     */
+    private String selectOrAddUser() {
+        System.out.print("Enter the user ID: ");
+        String userID = scanner.next();
+        User user = library.searchUserByID(userID);
+        if (user == null) {
+            System.out.println("The user with this ID does not exist, would you like to add a new user?(Y/N)");
+            char selection = scanner.next().charAt(0);
+            if (selection == 'Y' || selection == 'y') {
+                return addUser();
+            } else {
+                System.out.println("Returning to the options menu...");
+                return null;
+            }
+        }
+        return userID;
+    }
+
+    /**
+     * Lends selected books to a user.
+     *
+     * @param userID the ID of the user borrowing the books
+     * @param branchID the ID of the branch lending the books
+     */
+    private void lendBooksToUser(String userID, String branchID) {
+        System.out.println("Excellent, books are available!\n");
+        System.out.println("Available books: ");
+        int available = library.getAvailableCount(branchID);
+        for (int offset = 0; offset < available; offset += PAGE_SIZE) {
+            for (Book book : library.getAvailableBooks(branchID, offset, PAGE_SIZE)) {
+                System.out.println("ID: " + book.getID() + ", title: " + book.getName() + ", author: " + book.getAuthor());
+            }
+        }
+        System.out.print("How many books would you like to acquire? ");
+        int numberOfBooks = scanner.nextInt();
+        while (numberOfBooks > available) {
+            System.out.println("The number should be according to the availability of books.");
+            numberOfBooks = scanner.nextInt();
+        }
+        List<String> bookIDs = new ArrayList<>();
+        for (int i = 1; i <= numberOfBooks; i++) {
+            System.out.print("Enter the ID of the " + i + " to acquire: ");
+            bookIDs.add(scanner.next());
+        }
+        List<CirculationResult> results = library.lendBooks(userID, bookIDs, branchID);
+        for (int i = 0; i < bookIDs.size(); i++) {
+            System.out.println("Book ID: " + bookIDs.get(i) + ", result: " + results.get(i));
+        }
+        System.out.println("*****All good!!*****");
+
+    }
+
+    /**
+     * Returns a book from a user to a branch.
+     */
+    private void returnBook() {
+        if (!hasBranches()) {
+            return;
+        }
+        String branchID = selectBranch();
+        if (branchID == null) {
+            return;
+        }
+        String userID = selectUser();
+        if (userID == null) {
+            return;
+        }
+        String bookID = selectBook();
+        if (bookID == null) {
+            return;
+        }
+        if (!library.searchBookByID(bookID).isLoaned()) {
+            System.out.println("This book wasn't loaned");
+            return;
+        }
+
+        Date dateOfReturn = returnDate();
+        processReturn(userID, bookID, branchID, dateOfReturn);
+    }
+
+    /**
+     * Prompts the user to select a user by ID.
+     *
+     * @return the selected user ID
+     */
+    private String selectUser() {
+        System.out.print("Enter the user ID: ");
+        String userID = scanner.next();
+        User user = library.searchUserByID(userID);
+        while (user == null) {
+            System.out.print("User not found, please enter a valid ID");
+            userID = scanner.next();
+            user = library.searchUserByID(userID);
+        }
+        return userID;
+    }
+
+    /**
+     * Prompts the user to select a book by ID.
+     *
+     * @return the selected book ID
+     */
+    private String selectBook() {
+        System.out.print("Enter the book ID you want to return: ");
+        String bookID = scanner.next();
+        Book book = library.searchBookByID(bookID);
+        while (book == null) {
+            System.out.println("Book not found, please enter a valid ID");
+            bookID = scanner.next();
+            book = library.searchBookByID(bookID);
+        }
+        return bookID;
+    }
+
+    /**
+     * Prompts the user to enter a valid return date.
+     *
+     * @return the return date
+     */
+    private Date returnDate() {
+        Date dateOfReturn = null;
+        boolean validDate = false;
+        while (!validDate) {
+            System.out.print("Enter the return date (dd/MM/yyyy): ");
+            String dateInput = scanner.next();
+            try {
+                dateOfReturn = dateFormat.parse(dateInput);
+                validDate = true;
+            } catch (ParseException e) {
+                System.out.println("Invalid date format. Please enter the date in dd/MM/yyyy format.");
+            }
+        }
+        return dateOfReturn;
+    }
+
+    /**
+     * Processes the return of a book.
+     *
+     * @param userID the ID of the user returning the book
+     * @param bookID the ID of the book being returned
+     * @param branchID the ID of the branch receiving the book
+     * @param dateOfReturn the date the book is returned
+     */
+    private void processReturn(String userID, String bookID, String branchID, Date dateOfReturn) {
+        boolean success = library.returnBook(userID, bookID, branchID, dateOfReturn);
+        if (success) {
+            System.out.println("Book returned succesfully!!");
+        } else {
+            System.out.println("Error");
+        }
+        long fine = library.searchUserByID(userID).getAccumulatedDebts();
+        if (fine > 0) {
+            System.out.println("You have accumulated a fine of $" + fine);
+        }
+    }
+
+    /**
+     * Checks if there are any users in the library.
+     *
+     * @return true if there are users, false otherwise
+     */
+    private boolean hasUsers() {
+        if (library.getUsers().isEmpty()) {
+            System.out.println("There must be at least one user");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves and displays user debts.
+     */
+    private void getDebts() {
+        if (!hasUsers()) {
+            return;
+        }
+        int option = 0;
+        while (option != 5) {
+            debtsMenu();
+            option = scanner.nextInt();
+            debtsOptions(option);
+        }
+    }
+
+    /**
+     * Displays all user loans.
+     */
+    private void viewLoans() {
+        if (!hasUsers()) {
+            return;
+        }
+        printReport(LibraryReports::writeLoans, true);
+    }
+
+    /**
+     * Displays the debts menu.
+     */
+    private void debtsMenu() {
+        System.out.println("------------------------------");
+        System.out.println("1. Obtain debts from all users");
+        System.out.println("2. Get user debts");
+        System.out.println("3. Top debtors");
+        System.out.println("4. Overdue loans");
+        System.out.println("5. Main menu");
+        System.out.print("Select an option: ");
+    }
+
+    /**
+     * Processes the selected debts menu option.
+     *
+     * @param option the selected option
+     */
+    private void debtsOptions(int option) {
+        switch (option) {
+            case 1 ->
+                getAllDebts();
+            case 2 ->
+                getDebtsByUser();
+            case 3 ->
+                getTopDebtors();
+            case 4 ->
+                getOverdueLoans();
+            case 5 -> {
+                System.out.println("Returning to the main menu...");
+                return;
+            }
+            default ->
+                System.out.println("Invalid option, please try again.");
+        }
+    }
+
+    /**
+     * Retrieves and displays debts for all users as of one point in time.
+     */
+    private void getAllDebts() {
+        try (ReadView view = library.openReadView()) {
+            long total = 0;
+            for (User user : view.getUsers()) {
+                long debt = view.getDebt(user);
+                total += debt;
+                System.out.println("ID: " + user.getID() + ", name: " + user.getName() + ", debt: $" + debt);
+            }
+            System.out.println("Total outstanding: $" + total);
+        }
+    }
+
+    /**
+     * Displays the users with the largest debts.
+     */
+    private void getTopDebtors() {
+        System.out.print("How many debtors would you like to see? ");
+        int n = scanner.nextInt();
+        for (DebtLedger.Entry entry : library.getTopDebtors(n)) {
+            User user = entry.getUser();
+            System.out.println("ID: " + user.getID() + ", name: " + user.getName() + ", debt: $" + entry.getDebt());
+        }
+    }
+
+    /**
+     * Displays the loans that are overdue today, the loans due tomorrow and
+     * the fines accrued by the overdue loans.
+     */
+    private void getOverdueLoans() {
+        DueDateScheduler dueDates = library.getDueDates();
+        long today = DueDateScheduler.today();
+        for (Loan loan : dueDates.getOverdue(today)) {
+            System.out.println("Overdue - User ID: " + loan.getUser().getID()
+                    + ", Book ID: " + loan.getBook().getID()
+                    + ", Borrowed from: " + loan.getBranch().getName()
+                    + ", Borrowed on: " + loan.getDateOfLoan());
+        }
+        for (Loan loan : dueDates.getDueOn(today + 1)) {
+            System.out.println("Due tomorrow - User ID: " + loan.getUser().getID()
+                    + ", Book ID: " + loan.getBook().getID()
+                    + ", Borrowed from: " + loan.getBranch().getName());
+        }
+        System.out.println("Accrued fines not yet billed: $" + dueDates.getAccruedFines(today));
+    }
+
+    /**
+     * Retrieves and displays debts for a specific user.
+     */
+    private void getDebtsByUser() {
+        System.out.println("Please, provide the userID");
+        String userID = scanner.next();
+        User user = library.searchUserByID(userID);
+        while (user == null) {
+            System.out.println("Please, enter a valid ID");
+            userID = scanner.next();
+            user = library.searchUserByID(userID);
+        }
+        long debt = library.calculatePenaltyByUser(userID);
+        System.out.println("ID: " + user.getID() + ", name: " + user.getName() + ", debt $" + debt);
+    }
+
+}
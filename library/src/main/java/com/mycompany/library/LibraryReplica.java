@@ -0,0 +1,370 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A read-only copy of a library kept up to date from a
+ * {@link ReplicationServer} on the primary.
+ * <p>
+ * A background thread connects to the primary, loads its snapshot the first
+ * time, and then applies the primary's journal records to its own
+ * {@link Library} in order, exactly as a replay would. If the connection
+ * drops it reconnects and continues after the last record applied; if the
+ * primary no longer has those records it sends a new snapshot, and the copy
+ * is replaced. Lost connections are reported to the replica's
+ * {@link ReplicationListener}. Queries read the copy directly and never wait for the primary,
+ * so they can be slightly behind: {@link #getLag()} and
+ * {@link #getLagMillis()} tell by how much. The primary and its replicas are
+ * expected to share a clock, as on one host.
+ */
+public class LibraryReplica implements Closeable {
+
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+
+    private final InetSocketAddress primary;
+    private final Path directory;
+    private final Thread thread;
+    private volatile Library library;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private final ArrayDeque<long[]> heartbeats;
+    private long disconnectedSince;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private volatile ReplicationListener listener;
+
+    /**
+     * Constructs a replica of a primary. The replica is empty and does not
+     * connect until it is started.
+     *
+     * @param primary the address of the primary's replication server
+     * @param directory the directory where snapshots from the primary are
+     * received
+     * @throws IOException if the directory cannot be created
+     */
+    public LibraryReplica(InetSocketAddress primary, Path directory) throws IOException {
+        this.primary = primary;
+        this.directory = Files.createDirectories(directory);
+        this.library = new Library();
+        this.appliedSequence = -1;
+        this.heartbeats = new ArrayDeque<>();
+        this.disconnectedSince = System.currentTimeMillis();
+        this.thread = new Thread(this::run, "replica-of-" + primary.getPort());
+        this.thread.setDaemon(true);
+        this.listener = (peer, cause) -> {
+        };
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Starts following the primary.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Sets the listener told when the connection to the primary is lost. By
+     * default losses are ignored; the replica reconnects either way.
+     *
+     * @param listener the listener
+     */
+    public void setListener(ReplicationListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Gets the sequence of the last primary record applied.
+     *
+     * @return the applied sequence, or -1 before the first snapshot
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Gets the number of records on the primary's disk that the replica has
+     * not applied yet, as of the primary's last heartbeat.
+     *
+     * @return the lag in records
+     */
+    public long getLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * Gets how far behind the primary the replica's copy is in time: how long
+     * ago the primary had the oldest record the replica has not applied, or
+     * how long the replica has been disconnected, whichever is longer.
+     *
+     * @return the lag in milliseconds, 0 when the replica is up to date
+     */
+    public synchronized long getLagMillis() {
+        long now = System.currentTimeMillis();
+        long lag = heartbeats.isEmpty() ? 0 : now - heartbeats.peekFirst()[1];
+        return connected ? Math.max(lag, 0) : Math.max(lag, now - disconnectedSince);
+    }
+
+    /**
+     * Tells whether the replica is connected to the primary.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Waits until the replica has applied a record of the primary, for
+     * example to read a change just made on the primary.
+     *
+     * @param sequence the sequence to wait for
+     * @param timeoutMillis the longest time to wait
+     * @return true if the record was applied, false if the time ran out
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (appliedSequence < sequence && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return appliedSequence >= sequence;
+    }
+
+    /**
+     * Searches for a book by its ID across all branches.
+     *
+     * @param bookID the ID of the book
+     * @return the book, or null if not found
+     */
+    public Book searchBookByID(String bookID) {
+        return library.searchBookByID(bookID);
+    }
+
+    /**
+     * Searches for books by words of their title or author.
+     *
+     * @param query the words to look for
+     * @param branchID the ID of the branch to search in, or null for every
+     * branch
+     * @param availableOnly true to skip the books that are loaned
+     * @param limit the maximum number of books to return
+     * @return the matching books
+     */
+    public List<Book> searchBooks(String query, String branchID, boolean availableOnly, int limit) {
+        return library.searchBooks(query, branchID, availableOnly, limit);
+    }
+
+    /**
+     * Gets a page of the available books of a branch.
+     *
+     * @param branchID the ID of the branch
+     * @param offset the position of the first available book to return
+     * @param limit the maximum number of books to return
+     * @return the available books, read-only, or an empty list if the branch
+     * is not found
+     */
+    public List<Book> getAvailableBooks(String branchID, int offset, int limit) {
+        return library.getAvailableBooks(branchID, offset, limit);
+    }
+
+    /**
+     * Calculates the penalty accumulated by a user.
+     *
+     * @param userID the ID of the user
+     * @return the accumulated penalty, or 0 if the user is not found
+     */
+    public long calculatePenaltyByUser(String userID) {
+        return library.calculatePenaltyByUser(userID);
+    }
+
+    /**
+     * Gets the users with the largest debts, largest first.
+     *
+     * @param n the maximum number of debtors to return
+     * @return up to n debtors with their debts, read-only
+     */
+    public List<DebtLedger.Entry> getTopDebtors(int n) {
+        return library.getTopDebtors(n);
+    }
+
+    /**
+     * Gets the current copy of the library. It is replaced when the primary
+     * sends a new snapshot, and must not be changed.
+     *
+     * @return the copy
+     */
+    Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Stops following the primary.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the replication thread: follows the primary, reconnecting with
+     * a growing delay after failures.
+     */
+    private void run() {
+        long retry = MIN_RETRY_MILLIS;
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primary, CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                synchronized (this) {
+                    connected = true;
+                }
+                retry = MIN_RETRY_MILLIS;
+                follow(connection);
+            } catch (IOException e) {
+                if (!closed && connected) {
+                    listener.onConnectionLost(primary, e);
+                }
+            } finally {
+                synchronized (this) {
+                    if (connected) {
+                        connected = false;
+                        disconnectedSince = System.currentTimeMillis();
+                    }
+                }
+            }
+            if (!closed) {
+                try {
+                    Thread.sleep(retry);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                retry = Math.min(retry * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Applies what the primary sends until the connection ends.
+     *
+     * @param connection the connection to the primary
+     * @throws IOException if the connection fails or a record cannot be
+     * applied
+     */
+    private void follow(Socket connection) throws IOException {
+        synchronized (this) {
+            // the primary may have restarted with another journal
+            primarySequence = 0;
+            heartbeats.clear();
+        }
+        DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+        out.writeLong(appliedSequence);
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+        byte[] body = new byte[256];
+        while (!closed) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case ReplicationServer.SNAPSHOT ->
+                    loadSnapshot(in);
+                case ReplicationServer.BATCH -> {
+                    int count = in.readInt();
+                    long applied = appliedSequence;
+                    for (int i = 0; i < count; i++) {
+                        int length = in.readInt();
+                        int crc = in.readInt();
+                        if (length < 0 || length > TransactionJournal.MAX_RECORD_BYTES) {
+                            throw new IOException("Corrupt record after sequence " + applied);
+                        }
+                        if (body.length < length) {
+                            body = new byte[Math.max(length, body.length * 2)];
+                        }
+                        in.readFully(body, 0, length);
+                        applied = Math.max(applied, TransactionJournal.applyRecord(library, crc, body, length, applied));
+                    }
+                    advance(applied);
+                }
+                case ReplicationServer.HEARTBEAT ->
+                    heartbeat(in.readLong(), in.readLong());
+                default ->
+                    throw new IOException("Unknown replication message " + tag);
+            }
+        }
+    }
+
+    /**
+     * Receives a snapshot into the directory and replaces the copy with it.
+     *
+     * @param in the primary's stream, positioned after the tag
+     * @throws IOException if the snapshot cannot be received or loaded
+     */
+    private void loadSnapshot(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long size = in.readLong();
+        Path file = directory.resolve("replica.snap");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            byte[] buffer = new byte[1 << 16];
+            long remaining = size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        library = LibrarySnapshot.load(file);
+        advance(sequence);
+    }
+
+    /**
+     * Records the records applied and wakes up the readers waiting for them.
+     *
+     * @param sequence the last sequence applied
+     */
+    private synchronized void advance(long sequence) {
+        appliedSequence = sequence;
+        while (!heartbeats.isEmpty() && heartbeats.peekFirst()[0] <= sequence) {
+            heartbeats.pollFirst();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Records the primary's durable sequence. While the replica has not
+     * applied it, the heartbeat dates the oldest record it is missing.
+     *
+     * @param sequence the last sequence on the primary's disk
+     * @param time the primary's time when it sent the heartbeat
+     */
+    private synchronized void heartbeat(long sequence, long time) {
+        primarySequence = Math.max(primarySequence, sequence);
+        if (sequence > appliedSequence && (heartbeats.isEmpty() || heartbeats.peekLast()[0] < sequence)) {
+            heartbeats.addLast(new long[]{sequence, time});
+        }
+    }
+}
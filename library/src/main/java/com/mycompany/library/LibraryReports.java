@@ -0,0 +1,128 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Streams the branches, users and loans of a library as paginated reports.
+ * <p>
+ * Each call writes one page as a complete document in the requested format
+ * and returns a cursor for the next page, or null after the last page. Pages
+ * follow the order of the element handles, and only the rows of the current
+ * page are ever in memory. Every page is read through the same
+ * {@link ReadView}, so all the pages of a report show one point in time
+ * while circulation goes on.
+ */
+public class LibraryReports {
+
+    private final ReadView view;
+
+    /**
+     * Constructs the reports of a library as seen by a view.
+     *
+     * @param view the view of the library to report on
+     */
+    public LibraryReports(ReadView view) {
+        this.view = view;
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Writes a page of the branches with their number of books and of
+     * available books.
+     *
+     * @param out where the page is written
+     * @param format the format of the page
+     * @param cursor the cursor returned by the previous page, or null for the
+     * first page
+     * @param limit the maximum number of rows in the page
+     * @return the cursor of the next page, or null if this was the last one
+     * @throws IOException if the page cannot be written
+     */
+    public String writeBranches(Writer out, ReportFormat format, String cursor, int limit) throws IOException {
+        ReportWriter report = new ReportWriter(out, format, "ID", "name", "books", "available");
+        Iterator<Branch> branches = view.iterateBranches(parseCursor(cursor)[0]);
+        while (report.getRowCount() < limit && branches.hasNext()) {
+            Branch branch = branches.next();
+            report.writeRow(branch.getID(), branch.getName(), view.getBookCount(branch), view.getAvailableCount(branch));
+        }
+        report.finish();
+        return branches.hasNext() ? String.valueOf(branches.next().getHandle()) : null;
+    }
+
+    /**
+     * Writes a page of the users with their debt and number of open loans.
+     *
+     * @param out where the page is written
+     * @param format the format of the page
+     * @param cursor the cursor returned by the previous page, or null for the
+     * first page
+     * @param limit the maximum number of rows in the page
+     * @return the cursor of the next page, or null if this was the last one
+     * @throws IOException if the page cannot be written
+     */
+    public String writeUsers(Writer out, ReportFormat format, String cursor, int limit) throws IOException {
+        ReportWriter report = new ReportWriter(out, format, "ID", "name", "debt", "openLoans");
+        Iterator<User> users = view.iterateUsers(parseCursor(cursor)[0]);
+        while (report.getRowCount() < limit && users.hasNext()) {
+            User user = users.next();
+            report.writeRow(user.getID(), user.getName(), view.getDebt(user), view.getActiveLoanCount(user));
+        }
+        report.finish();
+        return users.hasNext() ? String.valueOf(users.next().getHandle()) : null;
+    }
+
+    /**
+     * Writes a page of the loans of every user, user by user.
+     *
+     * @param out where the page is written
+     * @param format the format of the page
+     * @param cursor the cursor returned by the previous page, or null for the
+     * first page
+     * @param limit the maximum number of rows in the page
+     * @return the cursor of the next page, or null if this was the last one
+     * @throws IOException if the page cannot be written
+     */
+    public String writeLoans(Writer out, ReportFormat format, String cursor, int limit) throws IOException {
+        ReportWriter report = new ReportWriter(out, format,
+                "user", "name", "book", "title", "branch", "borrowedOn", "returnedOn", "penalty");
+        int[] position = parseCursor(cursor);
+        Iterator<User> users = view.iterateUsers(position[0]);
+        int index = position[1];
+        while (users.hasNext()) {
+            User user = users.next();
+            List<Loan> loans = view.getLoans(user);
+            for (; index < loans.size(); index++) {
+                if (report.getRowCount() == limit) {
+                    report.finish();
+                    return user.getHandle() + ":" + index;
+                }
+                Loan loan = loans.get(index);
+                report.writeRow(user.getID(), user.getName(), loan.getBook().getID(), loan.getBook().getName(),
+                        loan.getBranch().getName(), loan.getDateOfLoan(), view.getDateOfReturn(loan),
+                        view.calculatePenalty(loan));
+            }
+            index = 0;
+        }
+        report.finish();
+        return null;
+    }
+
+    /**
+     * Parses a cursor of the form {@code handle} or {@code handle:index}.
+     *
+     * @param cursor the cursor, or null for the start
+     * @return the handle and the index
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    private static int[] parseCursor(String cursor) {
+        if (cursor == null) {
+            return new int[]{0, 0};
+        }
+        int colon = cursor.indexOf(':');
+        if (colon < 0) {
+            return new int[]{Integer.parseInt(cursor), 0};
+        }
+        return new int[]{Integer.parseInt(cursor.substring(0, colon)), Integer.parseInt(cursor.substring(colon + 1))};
+    }
+}
@@ -0,0 +1,470 @@
+package com.mycompany.library;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+import java.util.logging.*;
+
+/**
+ * Serves a library over HTTP with JSON responses, so many desks and kiosks
+ * can share one library at the same time.
+ * <p>
+ * Endpoints, with parameters in the query string or, for POST, in a form
+ * body:
+ * <ul>
+ * <li>{@code POST /lend?user=&book=&branch=}</li>
+ * <li>{@code POST /return?user=&book=&branch=[&date=millis]}</li>
+ * <li>{@code GET /search?q=[&branch=][&available=true][&limit=]}</li>
+ * <li>{@code GET /available?branch=[&offset=][&limit=]}</li>
+ * <li>{@code GET /debts[?user=][&top=]}</li>
+ * <li>{@code GET /loans?user=[&offset=][&limit=]}</li>
+ * <li>{@code GET /replication}, on a replica only</li>
+ * </ul>
+ * A server for a {@link LibraryReplica} answers the read endpoints from the
+ * replica's copy, refuses lends and returns with 403, and reports the
+ * replica's lag on {@code /replication}.
+ * Requests run on a virtual thread each when the JVM has them (Java 21 and
+ * later), and on a pool of platform threads otherwise. Every endpoint calls
+ * the thread-safe public methods of {@link Library}. The JDK server writes
+ * headers and body separately, so applications should start the JVM with
+ * {@code sun.net.httpserver.nodelay=true}, as {@link LibraryManagement} does;
+ * otherwise each response waits for the client's delayed ACK.
+ */
+public class LibraryServer implements Closeable {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final Logger LOGGER = Logger.getLogger(LibraryServer.class.getName());
+
+    private final Supplier<Library> library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a server for a library. The server does not accept requests
+     * until it is started.
+     *
+     * @param library the library to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public LibraryServer(Library library, InetSocketAddress address) throws IOException {
+        this(() -> library, address);
+        server.createContext("/lend", exchange -> handle(exchange, "POST", this::lend));
+        server.createContext("/return", exchange -> handle(exchange, "POST", this::giveBack));
+    }
+
+    /**
+     * Constructs a read-only server for a replica. The server does not accept
+     * requests until it is started.
+     *
+     * @param replica the replica to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public LibraryServer(LibraryReplica replica, InetSocketAddress address) throws IOException {
+        this(replica::getLibrary, address);
+        Endpoint readOnly = (params, json) -> error(json, 403, "Read-only replica");
+        server.createContext("/lend", exchange -> handle(exchange, "POST", readOnly));
+        server.createContext("/return", exchange -> handle(exchange, "POST", readOnly));
+        server.createContext("/replication", exchange -> handle(exchange, "GET", (params, json) -> {
+            json.append("{\"connected\":").append(replica.isConnected())
+                    .append(",\"sequence\":").append(replica.getAppliedSequence())
+                    .append(",\"lag\":").append(replica.getLag())
+                    .append(",\"lagMillis\":").append(replica.getLagMillis()).append('}');
+            return 200;
+        }));
+    }
+
+    /**
+     * Constructs a server with the read endpoints.
+     *
+     * @param library gets the library to serve
+     * @param address the address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    private LibraryServer(Supplier<Library> library, InetSocketAddress address) throws IOException {
+        this.library = library;
+        this.server = HttpServer.create(address, 1024);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/search", exchange -> handle(exchange, "GET", this::search));
+        server.createContext("/available", exchange -> handle(exchange, "GET", this::available));
+        server.createContext("/debts", exchange -> handle(exchange, "GET", this::debts));
+        server.createContext("/loans", exchange -> handle(exchange, "GET", this::loans));
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, lets the requests in progress finish for up
+     * to a second and stops the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Creates the executor that runs the requests: one virtual thread per
+     * request if the JVM supports them, otherwise a fixed pool of daemon
+     * threads large enough for requests blocked on the journal's fsync.
+     *
+     * @return the request executor
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(64, Runtime.getRuntime().availableProcessors() * 16), r -> {
+                Thread thread = new Thread(r, "http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Lends a book.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int lend(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        CirculationResult result = library.lendBook(required(params, "user"), required(params, "book"), required(params, "branch"));
+        json.append("{\"result\":");
+        Json.appendString(json, result.name());
+        json.append('}');
+        return result.isSuccess() ? 200 : 409;
+    }
+
+    /**
+     * Returns a book.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int giveBack(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        String date = params.get("date");
+        Date dateOfReturn = date != null ? new Date(Long.parseLong(date)) : new Date();
+        CirculationResult result = library.returnBooks(required(params, "user"), List.of(required(params, "book")),
+                required(params, "branch"), dateOfReturn).get(0);
+        json.append("{\"result\":");
+        Json.appendString(json, result.name());
+        json.append('}');
+        return result.isSuccess() ? 200 : 409;
+    }
+
+    /**
+     * Searches the catalog.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int search(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        List<Book> books = library.searchBooks(required(params, "q"), params.get("branch"),
+                Boolean.parseBoolean(params.get("available")), intParam(params, "limit", DEFAULT_LIMIT));
+        json.append("{\"books\":");
+        appendBooks(json, books);
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * Lists a page of the available books of a branch.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int available(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        Branch branch = library.searchBranchByID(required(params, "branch"));
+        if (branch == null) {
+            return error(json, 404, "Unknown branch");
+        }
+        List<Book> books = library.getAvailableBooks(branch.getID(), intParam(params, "offset", 0),
+                intParam(params, "limit", DEFAULT_LIMIT));
+        json.append("{\"count\":").append(branch.getAvailableCount()).append(",\"books\":");
+        appendBooks(json, books);
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * Gets the debt of a user, or the total outstanding and the top debtors.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int debts(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        DebtLedger ledger = library.getDebtLedger();
+        String userID = params.get("user");
+        if (userID != null) {
+            User user = library.searchUserByID(userID);
+            if (user == null) {
+                return error(json, 404, "Unknown user");
+            }
+            appendDebtor(json, user, user.getAccumulatedDebts());
+            return 200;
+        }
+        json.append("{\"total\":").append(ledger.getTotalOutstanding())
+                .append(",\"debtors\":").append(ledger.getDebtorCount())
+                .append(",\"top\":[");
+        List<DebtLedger.Entry> top = library.getTopDebtors(intParam(params, "top", 10));
+        for (int i = 0; i < top.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendDebtor(json, top.get(i).getUser(), top.get(i).getDebt());
+        }
+        json.append("]}");
+        return 200;
+    }
+
+    /**
+     * Lists a page of the loans of a user.
+     *
+     * @param params the request parameters
+     * @param json the response body
+     * @return the HTTP status
+     */
+    private int loans(Map<String, String> params, StringBuilder json) {
+        Library library = this.library.get();
+        User user = library.searchUserByID(required(params, "user"));
+        if (user == null) {
+            return error(json, 404, "Unknown user");
+        }
+        int count = user.getLoanCount();
+        int from = Math.min(Math.max(intParam(params, "offset", 0), 0), count);
+        int to = (int) Math.min((long) from + Math.max(intParam(params, "limit", DEFAULT_LIMIT), 0), count);
+        json.append("{\"count\":").append(count).append(",\"loans\":[");
+        for (int i = from; i < to; i++) {
+            Loan loan = user.getLoanAt(i);
+            if (loan == null) {
+                break;
+            }
+            if (i > from) {
+                json.append(',');
+            }
+            json.append("{\"book\":");
+            Json.appendString(json, loan.getBook().getID());
+            json.append(",\"title\":");
+            Json.appendString(json, loan.getBook().getName());
+            json.append(",\"branch\":");
+            Json.appendString(json, loan.getBranch().getID());
+            json.append(",\"dateOfLoan\":").append(loan.getDateOfLoan().getTime());
+            Date returned = loan.getDateOfReturn();
+            json.append(",\"dateOfReturn\":").append(returned != null ? String.valueOf(returned.getTime()) : "null");
+            json.append(",\"penalty\":").append(loan.calculatePenalty()).append('}');
+        }
+        json.append("]}");
+        return 200;
+    }
+
+    /**
+     * Runs an endpoint and sends its JSON response. Missing or malformed
+     * parameters are answered with 400, other failures with a generic 500
+     * whose cause is logged.
+     *
+     * @param exchange the HTTP exchange
+     * @param method the HTTP method the endpoint accepts
+     * @param endpoint the endpoint
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        StringBuilder json = new StringBuilder(256);
+        int status;
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                status = error(json, 405, "Use " + method);
+            } else {
+                status = endpoint.handle(parameters(exchange), json);
+            }
+        } catch (IllegalArgumentException e) {
+            json.setLength(0);
+            status = error(json, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            // the cause stays in the server's log; clients only learn that the request failed
+            LOGGER.log(Level.SEVERE, "Request " + exchange.getRequestURI() + " failed", e);
+            json.setLength(0);
+            status = error(json, 500, "Internal error");
+        }
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Reads the parameters of the query string and of a form body.
+     *
+     * @param exchange the HTTP exchange
+     * @return the parameters by name
+     * @throws IOException if the body cannot be read
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                parseForm(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parses URL-encoded name=value pairs.
+     *
+     * @param form the encoded pairs, or null
+     * @param params receives the decoded pairs
+     */
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Gets a parameter that must be present.
+     *
+     * @param params the request parameters
+     * @param name the name of the parameter
+     * @return the value
+     * @throws IllegalArgumentException if the parameter is missing
+     */
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Gets an optional int parameter.
+     *
+     * @param params the request parameters
+     * @param name the name of the parameter
+     * @param defaultValue the value when the parameter is missing
+     * @return the value
+     * @throws IllegalArgumentException if the parameter is not a number
+     */
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * Writes an error body.
+     *
+     * @param json the response body
+     * @param status the HTTP status
+     * @param message the error message
+     * @return the status
+     */
+    private static int error(StringBuilder json, int status, String message) {
+        json.append("{\"error\":");
+        Json.appendString(json, message);
+        json.append('}');
+        return status;
+    }
+
+    /**
+     * Writes a JSON array of books.
+     *
+     * @param json the response body
+     * @param books the books
+     */
+    private static void appendBooks(StringBuilder json, List<Book> books) {
+        json.append('[');
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            Branch branch = book.getBranch();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":");
+            Json.appendString(json, book.getID());
+            json.append(",\"title\":");
+            Json.appendString(json, book.getName());
+            json.append(",\"author\":");
+            Json.appendString(json, book.getAuthor());
+            json.append(",\"branch\":");
+            Json.appendString(json, branch != null ? branch.getID() : null);
+            json.append(",\"available\":").append(!book.isLoaned()).append('}');
+        }
+        json.append(']');
+    }
+
+    /**
+     * Writes a JSON object with a user and a debt.
+     *
+     * @param json the response body
+     * @param user the user
+     * @param debt the user's debt
+     */
+    private static void appendDebtor(StringBuilder json, User user, long debt) {
+        json.append("{\"user\":");
+        Json.appendString(json, user.getID());
+        json.append(",\"name\":");
+        Json.appendString(json, user.getName());
+        json.append(",\"debt\":").append(debt).append('}');
+    }
+
+    /**
+     * A request handler that writes a JSON body and returns the HTTP status.
+     */
+    private interface Endpoint {
+
+        /**
+         * Handles a request.
+         *
+         * @param params the request parameters
+         * @param json the response body
+         * @return the HTTP status
+         */
+        int handle(Map<String, String> params, StringBuilder json);
+    }
+}
@@ -0,0 +1,476 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes and loads a compact binary snapshot of a whole library: branches and
+ * their book collections, users with their accumulated debts, and every loan
+ * with its dates.
+ * <p>
+ * Layout (all integers are unsigned LEB128 varints unless noted):
+ * <pre>
+ * int magic 'LIBS', int version          (fixed 4-byte big-endian)
+ * long journal sequence                  (fixed 8-byte, version 2 and later)
+ * branches: count, then ID, name
+ * books:    count, then ID, name, author, branch index, loaned flag (1 byte)
+ * users:    count, then ID, name, debts, loan count, then per loan
+ *           book ID, branch index, loan time, return time + 1 (0 = open)
+ * </pre>
+ * Strings are deduplicated: the first occurrence is written as {@code 0}
+ * followed by its UTF-8 length and bytes, later occurrences as
+ * {@code index + 1} into the strings seen so far. Every ID is therefore
+ * stored once and resolves to a single object on load. The journal sequence
+ * is the last {@link TransactionJournal} record contained in the snapshot;
+ * records after it are replayed on top when the library is restored.
+ * <p>
+ * Snapshots are written to a temporary file in the same directory, forced to
+ * disk and atomically moved into place, and the directory is then forced too,
+ * so a crash during a checkpoint never leaves a partial snapshot behind and a
+ * finished one survives the journal segments it replaces. They are loaded
+ * through memory-mapped windows of the file.
+ * <p>
+ * The loans, debts and loan flags of a snapshot are read through a
+ * {@link ReadView}, so they are one consistent cut of the library even while
+ * circulation goes on: a book is written as loaned exactly when the snapshot
+ * has an open loan for it.
+ */
+public class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4C494253;
+    private static final int VERSION = 2;
+    private static final long MAP_WINDOW = 1L << 28;
+
+    /**
+     * Prevents instantiation; all operations are static.
+     */
+    private LibrarySnapshot() {
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Writes a snapshot of a library. Circulation may continue while the
+     * snapshot is written; the loans and debts are those of the moment the
+     * snapshot starts. Books and branches added meanwhile may be included,
+     * and a book is written at the branch holding it when it is visited.
+     *
+     * @param library the library to save
+     * @param file the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Library library, Path file) throws IOException {
+        write(library, file, 0);
+    }
+
+    /**
+     * Writes a snapshot of a library that contains every journal record up to
+     * a given sequence. Returns once the snapshot and its directory entry are
+     * on disk, so the journal segments up to the sequence can be deleted.
+     *
+     * @param library the library to save
+     * @param file the snapshot file
+     * @param sequence the last journal record contained in the library
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(Library library, Path file, long sequence) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path directory = absolute.getParent();
+        Path temp = Files.createTempFile(directory, absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                writeLibrary(out, library, sequence);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+            parent.force(true);
+        } catch (IOException e) {
+            // not every platform can sync a directory; the snapshot itself is synced
+        }
+    }
+
+    /**
+     * Writes the contents of a snapshot.
+     *
+     * @param out the stream to write to
+     * @param library the library to save
+     * @param sequence the last journal record contained in the library
+     * @throws IOException if the snapshot cannot be written
+     */
+    private static void writeLibrary(DataOutputStream out, Library library, long sequence) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sequence);
+        try (ReadView view = library.openReadView()) {
+            List<User> users = new ArrayList<>();
+            Map<User, List<Loan>> loansByUser = new HashMap<>();
+            Set<Book> onLoan = new HashSet<>();
+            for (User user : view.getUsers()) {
+                List<Loan> loans = view.getLoans(user);
+                users.add(user);
+                loansByUser.put(user, loans);
+                for (Loan loan : loans) {
+                    if (view.getDateOfReturn(loan) == null) {
+                        onLoan.add(loan.getBook());
+                    }
+                }
+            }
+            // each book once, at the branch holding it now, so none is lost to a move
+            Map<Branch, Integer> branchIndexes = new LinkedHashMap<>();
+            for (Branch branch : library.getBranches()) {
+                branchIndexes.put(branch, branchIndexes.size());
+            }
+            List<Book> books = new ArrayList<>();
+            List<Integer> bookBranches = new ArrayList<>();
+            Iterator<Book> it = library.iterateBooks(0);
+            while (it.hasNext()) {
+                Book book = it.next();
+                Branch branch = book.getBranch();
+                if (branch != null) {
+                    books.add(book);
+                    bookBranches.add(branchIndexes.computeIfAbsent(branch, b -> branchIndexes.size()));
+                }
+            }
+            Map<String, Integer> strings = new HashMap<>();
+            writeVarLong(out, branchIndexes.size());
+            for (Branch branch : branchIndexes.keySet()) {
+                writeString(out, strings, branch.getID());
+                writeString(out, strings, branch.getName());
+            }
+            writeVarLong(out, books.size());
+            for (int i = 0; i < books.size(); i++) {
+                Book book = books.get(i);
+                writeString(out, strings, book.getID());
+                writeString(out, strings, book.getName());
+                writeString(out, strings, book.getAuthor());
+                writeVarLong(out, bookBranches.get(i));
+                // a copy set aside for a hold has no loan, so it is loaded back on the shelf
+                out.writeByte(onLoan.contains(book) ? 1 : 0);
+            }
+            writeVarLong(out, users.size());
+            for (User user : users) {
+                writeString(out, strings, user.getID());
+                writeString(out, strings, user.getName());
+                writeVarLong(out, view.getDebt(user));
+                List<Loan> loans = loansByUser.get(user);
+                writeVarLong(out, loans.size());
+                for (Loan loan : loans) {
+                    Date returned = view.getDateOfReturn(loan);
+                    writeString(out, strings, loan.getBook().getID());
+                    Integer branchIndex = branchIndexes.get(loan.getBranch());
+                    writeVarLong(out, branchIndex != null ? branchIndex : 0);
+                    writeVarLong(out, loan.getDateOfLoan().getTime());
+                    writeVarLong(out, returned != null ? returned.getTime() + 1 : 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a library from a snapshot. Books whose ID was already loaded and
+     * loans of unknown books are skipped.
+     *
+     * @param file the snapshot file
+     * @return the restored library
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static Library load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            readHeader(in, file);
+            Library library = new Library();
+            List<String> strings = new ArrayList<>();
+            Branch[] branches = new Branch[(int) in.readVarLong()];
+            for (int i = 0; i < branches.length; i++) {
+                branches[i] = new Branch(in.readString(strings), in.readString(strings));
+                library.addBranch(branches[i]);
+            }
+            long bookCount = in.readVarLong();
+            for (long i = 0; i < bookCount; i++) {
+                Book book = new Book(in.readString(strings), in.readString(strings), in.readString(strings));
+                Branch branch = branches[(int) in.readVarLong()];
+                book.setIsLoaned(in.readByte() != 0);
+                branch.addBook(book);
+            }
+            long userCount = in.readVarLong();
+            for (long i = 0; i < userCount; i++) {
+                User user = new User(in.readString(strings), in.readString(strings));
+                user.addDebts(in.readVarLong());
+                long loanCount = in.readVarLong();
+                for (long j = 0; j < loanCount; j++) {
+                    Book book = library.searchBookByID(in.readString(strings));
+                    Branch branch = branches[(int) in.readVarLong()];
+                    Date dateOfLoan = new Date(in.readVarLong());
+                    long returned = in.readVarLong();
+                    if (book == null) {
+                        continue;
+                    }
+                    Loan loan = new Loan(user, book, branch, dateOfLoan);
+                    if (returned != 0) {
+                        loan.setDateOfReturn(new Date(returned - 1));
+                    } else {
+                        book.setCurrentLoan(loan);
+                    }
+                    user.addLoan(loan);
+                }
+                library.addUser(user);
+            }
+            return library;
+        }
+    }
+
+    /**
+     * Reads the last journal sequence contained in a snapshot.
+     *
+     * @param file the snapshot file
+     * @return the journal sequence, 0 for snapshots written without a journal
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static long readSequence(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readSequence(channel, file);
+        }
+    }
+
+    /**
+     * Reads the last journal sequence contained in an open snapshot, which
+     * stays the same even if the file is replaced by a newer checkpoint.
+     *
+     * @param channel the open snapshot
+     * @param file the snapshot file, for error messages
+     * @return the journal sequence, 0 for snapshots written without a journal
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static long readSequence(FileChannel channel, Path file) throws IOException {
+        return readHeader(new MappedInput(channel), file);
+    }
+
+    /**
+     * Reads and checks the header of a snapshot.
+     *
+     * @param in the snapshot input, positioned at the start
+     * @param file the snapshot file, for error messages
+     * @return the journal sequence of the snapshot
+     * @throws IOException if the file is not a supported snapshot
+     */
+    private static long readHeader(MappedInput in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a library snapshot");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + file);
+        }
+        return version >= 2 ? in.readLong() : 0;
+    }
+
+    /**
+     * Writes a snapshot of a library at a fixed rate on a background daemon
+     * thread. If the library has a journal, the journal is compacted into the
+     * snapshot instead of reading the live library. Failed checkpoints are
+     * reported to the listener and retried at the next period.
+     *
+     * @param library the library to save
+     * @param file the snapshot file
+     * @param period the time between checkpoints
+     * @param unit the unit of the period
+     * @param listener told when a checkpoint fails
+     * @return the executor running the checkpoints; shut it down to stop them
+     */
+    public static ScheduledExecutorService scheduleCheckpoints(Library library, Path file, long period, TimeUnit unit,
+            CheckpointListener listener) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "library-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                TransactionJournal journal = library.getJournal();
+                if (journal != null) {
+                    journal.compact(file);
+                } else {
+                    write(library, file);
+                }
+            } catch (IOException e) {
+                listener.onCheckpointFailed(file, e);
+            }
+        }, period, period, unit);
+        return executor;
+    }
+
+    /**
+     * Writes a string, or a reference to it if it was written before.
+     *
+     * @param out the output stream
+     * @param strings the strings written so far and their indexes
+     * @param value the string to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarLong(out, index + 1L);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, 0);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a non-negative number as an unsigned LEB128 varint.
+     *
+     * @param out the output stream
+     * @param value the number to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a file through a sliding memory-mapped window, so snapshots
+     * larger than 2 GB can be loaded.
+     */
+    private static class MappedInput {
+
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        /**
+         * Maps the beginning of a file.
+         *
+         * @param channel the channel of the file
+         * @throws IOException if the file cannot be mapped
+         */
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        /**
+         * Maps the window that starts at a file position.
+         *
+         * @param position the file position
+         * @throws IOException if the file cannot be mapped
+         */
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+        }
+
+        /**
+         * Makes sure the next bytes are inside the mapped window.
+         *
+         * @param bytes the number of bytes about to be read
+         * @throws IOException if the file ends before
+         */
+        private void require(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            long position = windowStart + window.position();
+            if (size - position < bytes) {
+                throw new EOFException("Snapshot is truncated");
+            }
+            map(position);
+        }
+
+        /**
+         * Reads a single byte.
+         *
+         * @return the byte
+         * @throws IOException if the file ends
+         */
+        byte readByte() throws IOException {
+            require(1);
+            return window.get();
+        }
+
+        /**
+         * Reads a 4-byte big-endian integer.
+         *
+         * @return the integer
+         * @throws IOException if the file ends
+         */
+        int readInt() throws IOException {
+            require(4);
+            return window.getInt();
+        }
+
+        /**
+         * Reads an 8-byte big-endian integer.
+         *
+         * @return the integer
+         * @throws IOException if the file ends
+         */
+        long readLong() throws IOException {
+            require(8);
+            return window.getLong();
+        }
+
+        /**
+         * Reads an unsigned LEB128 varint.
+         *
+         * @return the number
+         * @throws IOException if the file ends or the number is malformed
+         */
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed number in snapshot");
+        }
+
+        /**
+         * Reads a string or a reference to a string read before.
+         *
+         * @param strings the strings read so far
+         * @return the string
+         * @throws IOException if the file ends or the reference is invalid
+         */
+        String readString(List<String> strings) throws IOException {
+            long reference = readVarLong();
+            if (reference > 0) {
+                if (reference > strings.size()) {
+                    throw new IOException("Invalid string reference in snapshot");
+                }
+                return strings.get((int) (reference - 1));
+            }
+            int length = (int) readVarLong();
+            require(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+    }
+}
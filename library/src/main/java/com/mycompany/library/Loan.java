@@ -0,0 +1,230 @@
+package com.mycompany.library;
+import java.util.*;
+
+/**
+ * Represents a loan of a book from a branch to a user.
+ */
+public class Loan {
+
+    private static final int MILISECONDSBYDAY = 86400000;
+    static final int PENALTY = 10;
+    static final int LOAN_PERIOD_DAYS = 15;
+
+    private volatile Date dateOfReturn;
+    private volatile boolean overdue;
+    private volatile long returnVersion;
+    private long loanVersion;
+    private long billedPenalty = -1;
+    private Date dateOfLoan;
+    private User user;
+    private Book book;
+    private Branch branch;
+
+    /**
+     * Constructs a new Loan instance.
+     *
+     * @param user the user who borrows the book
+     * @param book the book being borrowed
+     * @param branch the branch from which the book is borrowed
+     */
+    public Loan(User user, Book book, Branch branch) {
+        this.user = user;
+        this.book = book;
+        this.branch = branch;
+        this.dateOfLoan = new Date();
+    }
+
+    /**
+     * Constructs a Loan that started on a given date, used when restoring
+     * loans from persistent storage.
+     *
+     * @param user the user who borrows the book
+     * @param book the book being borrowed
+     * @param branch the branch from which the book is borrowed
+     * @param dateOfLoan the date the book was borrowed
+     */
+    Loan(User user, Book book, Branch branch, Date dateOfLoan) {
+        this.user = user;
+        this.book = book;
+        this.branch = branch;
+        this.dateOfLoan = dateOfLoan;
+    }
+
+    /**
+     * Gets the return date of the loan.
+     *
+     * @return the return date of the loan
+     */
+    public Date getDateOfReturn() {
+        return dateOfReturn;
+    }
+
+    /**
+     * Sets the return date of the loan.
+     *
+     * @param dateOfReturn the return date to set
+     */
+    public void setDateOfReturn(Date dateOfReturn) {
+        this.dateOfReturn = dateOfReturn;
+    }
+
+    /**
+     * Closes the loan as part of a versioned change. The version is written
+     * before the date, so a reader that sees the date also sees the version.
+     *
+     * @param dateOfReturn the return date
+     * @param version the version of the return
+     */
+    void close(Date dateOfReturn, long version) {
+        this.returnVersion = version;
+        this.dateOfReturn = dateOfReturn;
+    }
+
+    /**
+     * Gets the version at which the loan was returned.
+     *
+     * @return the version, or 0 if it was returned outside a versioned change
+     */
+    long getReturnVersion() {
+        return returnVersion;
+    }
+
+    /**
+     * Gets the version at which the loan was made.
+     *
+     * @return the version, or 0 if the loan was restored
+     */
+    long getLoanVersion() {
+        return loanVersion;
+    }
+
+    /**
+     * Sets the version at which the loan was made. Must be called before the
+     * loan is published.
+     *
+     * @param loanVersion the version of the lend
+     */
+    void setLoanVersion(long loanVersion) {
+        this.loanVersion = loanVersion;
+    }
+
+    /**
+     * Gets the loan date.
+     *
+     * @return the loan date
+     */
+    public Date getDateOfLoan() {
+        return dateOfLoan;
+    }
+
+    /**
+     * Gets the user who borrowed the book.
+     *
+     * @return the user who borrowed the book
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the book being borrowed.
+     *
+     * @return the book being borrowed
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Gets the branch from which the book is borrowed.
+     *
+     * @return the branch from which the book is borrowed
+     */
+    public Branch getBranch() {
+        return branch;
+    }
+
+    /**
+     * Checks whether the overdue sweep has flagged the loan.
+     *
+     * @return true if the loan was still open after its due day
+     */
+    public boolean isOverdue() {
+        return overdue;
+    }
+
+    /**
+     * Sets whether the loan is flagged as overdue.
+     *
+     * @param overdue the flag to set
+     */
+    void setOverdue(boolean overdue) {
+        this.overdue = overdue;
+    }
+
+    /**
+     * Sets the penalty billed when the loan was returned, for a loan rebuilt
+     * from the {@link LoanHistory}, whose dates are only kept to the day.
+     *
+     * @param billedPenalty the penalty billed for the return
+     */
+    void setBilledPenalty(long billedPenalty) {
+        this.billedPenalty = billedPenalty;
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Calculate the penalty for late return of the book.
+     *
+     * @return The amount of the penalty. Returns 0 if the book has not been
+     * returned or if the return is within the allowed period.
+     */
+    public long calculatePenalty() {
+        if (dateOfReturn == null) {
+            return 0;
+        }
+        if (billedPenalty >= 0) {
+            return billedPenalty;
+        }
+        return calculatePenalty(dateOfLoan.getTime(), dateOfReturn.getTime());
+    }
+
+    /**
+     * Gets the day of a time, counted in whole days since the epoch.
+     *
+     * @param time the time, in milliseconds since the epoch
+     * @return the epoch day
+     */
+    static int toEpochDay(long time) {
+        return Math.toIntExact(Math.floorDiv(time, MILISECONDSBYDAY));
+    }
+
+    /**
+     * Gets the start of an epoch day.
+     *
+     * @param day the number of days since the epoch
+     * @return the date at the start of the day
+     */
+    static Date fromEpochDay(int day) {
+        return new Date((long) day * MILISECONDSBYDAY);
+    }
+
+    /**
+     * Calculates the penalty of a loan from the times it was lent and
+     * returned. Only whole days past the loan period are charged.
+     *
+     * @param loanTime the time the book was lent, in milliseconds since the
+     * epoch
+     * @param returnTime the time the book was returned, in milliseconds since
+     * the epoch
+     * @return the penalty, or 0 if the book was returned in time
+     */
+    static long calculatePenalty(long loanTime, long returnTime) {
+        long daysElapsed = (returnTime - loanTime) / MILISECONDSBYDAY;
+
+        if (daysElapsed > LOAN_PERIOD_DAYS) {
+            return (daysElapsed - LOAN_PERIOD_DAYS) * PENALTY;
+        }
+        return 0;
+    }
+}
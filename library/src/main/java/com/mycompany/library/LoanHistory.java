@@ -0,0 +1,158 @@
+package com.mycompany.library;
+
+import java.util.*;
+
+/**
+ * Stores returned loans column by column instead of as objects.
+ * <p>
+ * Each loan is a row of six ints: the handles of the user, book and branch
+ * IDs, which the library resolves, the days the book was lent and returned,
+ * counted since the epoch, and the penalty billed for the return, so the
+ * penalty of an archived loan stays the one billed even though its times are
+ * only kept to the day. The columns are growable arrays, so an archived loan
+ * costs 24 bytes instead of a {@link Loan} with two {@link Date} instances,
+ * and a scan over the fines reads one contiguous array. {@link Loan} views
+ * are built on demand.
+ * <p>
+ * Rows keep no versions, so a returned loan waits as an object until every
+ * {@link ReadView} that could still see it open is closed, and is archived
+ * by a later return once the clock's horizon passes its return version.
+ */
+public class LoanHistory {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Library library;
+    private final Deque<Loan> pending;
+    private int[] userColumn;
+    private int[] bookColumn;
+    private int[] branchColumn;
+    private int[] loanDayColumn;
+    private int[] returnDayColumn;
+    private int[] penaltyColumn;
+    private int size;
+
+    /**
+     * Constructs an empty history.
+     *
+     * @param library the library whose users, books and branches the loans
+     * refer to
+     */
+    LoanHistory(Library library) {
+        this.library = library;
+        this.pending = new ArrayDeque<>();
+        this.userColumn = new int[INITIAL_CAPACITY];
+        this.bookColumn = new int[INITIAL_CAPACITY];
+        this.branchColumn = new int[INITIAL_CAPACITY];
+        this.loanDayColumn = new int[INITIAL_CAPACITY];
+        this.returnDayColumn = new int[INITIAL_CAPACITY];
+        this.penaltyColumn = new int[INITIAL_CAPACITY];
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Appends a returned loan to the history.
+     *
+     * @param loan the loan, which must have a return date
+     * @return the row of the loan
+     */
+    public synchronized int append(Loan loan) {
+        if (size == userColumn.length) {
+            int capacity = size + (size >> 1);
+            userColumn = Arrays.copyOf(userColumn, capacity);
+            bookColumn = Arrays.copyOf(bookColumn, capacity);
+            branchColumn = Arrays.copyOf(branchColumn, capacity);
+            loanDayColumn = Arrays.copyOf(loanDayColumn, capacity);
+            returnDayColumn = Arrays.copyOf(returnDayColumn, capacity);
+            penaltyColumn = Arrays.copyOf(penaltyColumn, capacity);
+        }
+        userColumn[size] = loan.getUser().getHandle();
+        bookColumn[size] = loan.getBook().getHandle();
+        branchColumn[size] = loan.getBranch().getHandle();
+        loanDayColumn[size] = Loan.toEpochDay(loan.getDateOfLoan().getTime());
+        returnDayColumn[size] = Loan.toEpochDay(loan.getDateOfReturn().getTime());
+        penaltyColumn[size] = Math.toIntExact(loan.calculatePenalty());
+        return size++;
+    }
+
+    /**
+     * Queues a returned loan to be moved into the history, and moves the
+     * queued loans that every read view already sees as returned. The loan
+     * itself usually waits for a later return, since its version is only
+     * committed after this call.
+     *
+     * @param returned the returned loan
+     */
+    void archive(Loan returned) {
+        synchronized (pending) {
+            pending.add(returned);
+            long horizon = library.getClock().horizon();
+            Loan next;
+            while ((next = pending.peek()) != null && next.getReturnVersion() <= horizon) {
+                pending.poll();
+                next.getUser().moveToHistory(next);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of loans in the history.
+     *
+     * @return the number of rows
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Builds a view of an archived loan.
+     *
+     * @param row the row of the loan
+     * @return a loan with the archived user, book, branch and penalty, lent
+     * and returned at the start of the archived days
+     */
+    public synchronized Loan get(int row) {
+        checkRow(row);
+        Loan loan = new Loan(library.getUser(userColumn[row]), library.getBook(bookColumn[row]),
+                library.getBranch(branchColumn[row]), Loan.fromEpochDay(loanDayColumn[row]));
+        loan.setDateOfReturn(Loan.fromEpochDay(returnDayColumn[row]));
+        loan.setBilledPenalty(penaltyColumn[row]);
+        return loan;
+    }
+
+    /**
+     * Gets the penalty billed for an archived loan without building a view.
+     *
+     * @param row the row of the loan
+     * @return the penalty for returning the book late, or 0
+     */
+    public synchronized long calculatePenalty(int row) {
+        checkRow(row);
+        return penaltyColumn[row];
+    }
+
+    /**
+     * Sums the penalties of every archived loan in one pass over the penalty
+     * column.
+     *
+     * @return the total of the penalties
+     */
+    public synchronized long getTotalPenalties() {
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            total += penaltyColumn[row];
+        }
+        return total;
+    }
+
+    /**
+     * Checks that a row is in the history.
+     *
+     * @param row the row
+     */
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+    }
+}
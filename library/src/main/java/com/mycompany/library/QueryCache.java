@@ -0,0 +1,265 @@
+package com.mycompany.library;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+import javax.management.*;
+
+/**
+ * Caches the results of read queries that are asked far more often than
+ * their data changes, such as pages of available books.
+ * <p>
+ * Every result is stored with the generation of the data it was computed
+ * from: a counter that the data's owner, such as a branch, increments after
+ * each change. Callers read the generation before running the query, so a
+ * result computed while a change was in progress is stored under the old
+ * generation and never served once the change completes. Invalidation is
+ * therefore exact and needs no expiry times: a lend bumps the branch's
+ * generation, and the next query of that branch runs again.
+ * <p>
+ * The cache is split into segments by key, each a least-recently-used map
+ * under its own lock, and is bounded by weight: one per result plus one per
+ * element of the result. Results are returned as read-only lists.
+ */
+public final class QueryCache implements QueryCacheMXBean {
+
+    /**
+     * The name the cache is registered under.
+     */
+    public static final String OBJECT_NAME = "com.mycompany.library:type=QueryCache";
+
+    private static final int SEGMENTS = 16;
+
+    private final long maxWeight;
+    private final Segment[] segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder invalidations;
+    private final LongAdder evictions;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxWeight the largest total weight to hold; 0 disables the cache
+     */
+    public QueryCache(long maxWeight) {
+        this.maxWeight = Math.max(maxWeight, 0);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(this.maxWeight / SEGMENTS);
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.invalidations = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the result of a query, running it only if there is no result
+     * cached for the current generation of its data.
+     *
+     * @param <T> the type of the elements of the result
+     * @param key identifies the query and its parameters
+     * @param generation the generation of the data, read before this call
+     * @param query runs the query
+     * @return the result, read-only
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(List<Object> key, long generation, Supplier<List<T>> query) {
+        Segment segment = segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+        Entry entry = segment.find(key, generation);
+        if (entry != null) {
+            hits.increment();
+            return (List<T>) entry.value;
+        }
+        misses.increment();
+        List<T> value = Collections.unmodifiableList(query.get());
+        segment.store(key, new Entry(generation, value));
+        return value;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0;
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Registers the cache with the platform MBean server under
+     * {@link #OBJECT_NAME}, replacing the cache of another library registered
+     * before.
+     *
+     * @throws JMException if the cache cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+
+        private final long generation;
+        private final List<?> value;
+        private final long weight;
+
+        /**
+         * Constructs an entry.
+         *
+         * @param generation the generation of the data the result came from
+         * @param value the result
+         */
+        Entry(long generation, List<?> value) {
+            this.generation = generation;
+            this.value = value;
+            this.weight = value.size() + 1L;
+        }
+    }
+
+    /**
+     * A least-recently-used part of the cache.
+     */
+    private final class Segment {
+
+        private final LinkedHashMap<List<Object>, Entry> entries;
+        private final long maxWeight;
+        private long weight;
+
+        /**
+         * Constructs an empty segment.
+         *
+         * @param maxWeight the largest weight the segment holds
+         */
+        Segment(long maxWeight) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Finds the result of a query for a generation, dropping a result of
+         * another generation.
+         *
+         * @param key the query
+         * @param generation the current generation of its data
+         * @return the entry, or null if there is none for the generation
+         */
+        synchronized Entry find(List<Object> key, long generation) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.generation == generation) {
+                return entry;
+            }
+            entries.remove(key);
+            weight -= entry.weight;
+            invalidations.increment();
+            return null;
+        }
+
+        /**
+         * Stores a result, evicting the least recently used ones to make
+         * room. Results heavier than the segment, or older than the one
+         * already stored, are not stored.
+         *
+         * @param key the query
+         * @param entry the result
+         */
+        synchronized void store(List<Object> key, Entry entry) {
+            Entry current = entries.get(key);
+            if (entry.weight > maxWeight || (current != null && current.generation > entry.generation)) {
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            weight += entry.weight - (previous != null ? previous.weight : 0);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        /**
+         * Gets the weight of the segment.
+         *
+         * @return the weight
+         */
+        synchronized long weight() {
+            return weight;
+        }
+
+        /**
+         * Gets the number of results in the segment.
+         *
+         * @return the number of results
+         */
+        synchronized int size() {
+            return entries.size();
+        }
+
+        /**
+         * Drops every result of the segment.
+         */
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+}
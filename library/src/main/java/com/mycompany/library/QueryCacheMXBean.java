@@ -0,0 +1,73 @@
+package com.mycompany.library;
+
+/**
+ * Management interface of {@link QueryCache}, as seen from JConsole or any
+ * other JMX client.
+ */
+public interface QueryCacheMXBean {
+
+    /**
+     * Gets the number of queries answered from the cache.
+     *
+     * @return the hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of queries that had to run, including those whose
+     * cached result was out of date.
+     *
+     * @return the misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the share of the queries answered from the cache.
+     *
+     * @return the hit ratio, from 0 to 1
+     */
+    double getHitRatio();
+
+    /**
+     * Gets the number of cached results dropped because the data they were
+     * computed from changed.
+     *
+     * @return the invalidations
+     */
+    long getInvalidations();
+
+    /**
+     * Gets the number of cached results dropped to stay within the size
+     * limit.
+     *
+     * @return the evictions
+     */
+    long getEvictions();
+
+    /**
+     * Gets the number of cached results.
+     *
+     * @return the entries
+     */
+    int getSize();
+
+    /**
+     * Gets the total weight of the cached results: one per result plus one
+     * per element they hold.
+     *
+     * @return the weight
+     */
+    long getWeight();
+
+    /**
+     * Gets the largest total weight the cache holds.
+     *
+     * @return the weight limit
+     */
+    long getMaxWeight();
+
+    /**
+     * Drops every cached result.
+     */
+    void clear();
+}
@@ -0,0 +1,252 @@
+package com.mycompany.library;
+
+import java.util.*;
+
+/**
+ * A read-only view of a library as of one point in time, for reports that
+ * must not mix states while lends and returns go on.
+ * <p>
+ * Opening a view pins the current version of the library's
+ * {@link VersionClock}; it copies nothing. Users and branches remember the
+ * version they joined at, loans the versions they were made and returned at,
+ * and the counts and debts keep their recent changes by version, so the view
+ * reads each value as it was at its version without blocking the writers. A
+ * view must be closed, since the history it needs is kept until then.
+ */
+public final class ReadView implements AutoCloseable {
+
+    // by day, since the loan history keeps only the day; loans rebuilt from it have version 0
+    private static final Comparator<Loan> LOAN_ORDER = Comparator
+            .comparingInt((Loan loan) -> Loan.toEpochDay(loan.getDateOfLoan().getTime()))
+            .thenComparingInt(loan -> loan.getBook().getHandle())
+            .thenComparingLong(Loan::getLoanVersion);
+
+    private final Library library;
+    private final VersionClock.Pin pin;
+    private final long version;
+    private volatile boolean closed;
+
+    /**
+     * Opens a view of a library at the current version.
+     *
+     * @param library the library to read
+     */
+    ReadView(Library library) {
+        this.library = library;
+        this.pin = library.getClock().pin();
+        this.version = pin.getVersion();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the version the view reads at.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the users that were in the library at the view's version, in
+     * handle order.
+     *
+     * @return the users
+     */
+    public Iterable<User> getUsers() {
+        return () -> iterateUsers(0);
+    }
+
+    /**
+     * Gets the branches that were in the library at the view's version, in
+     * handle order.
+     *
+     * @return the branches
+     */
+    public Iterable<Branch> getBranches() {
+        return () -> iterateBranches(0);
+    }
+
+    /**
+     * Iterates over the users seen by the view in handle order, starting at a
+     * handle.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the users from that handle on
+     */
+    Iterator<User> iterateUsers(int fromHandle) {
+        checkOpen();
+        return visible(library.iterateUsers(fromHandle));
+    }
+
+    /**
+     * Iterates over the branches seen by the view in handle order, starting
+     * at a handle.
+     *
+     * @param fromHandle the first handle to visit
+     * @return the branches from that handle on
+     */
+    Iterator<Branch> iterateBranches(int fromHandle) {
+        checkOpen();
+        return visible(library.iterateBranches(fromHandle));
+    }
+
+    /**
+     * Gets a user's accumulated debts at the view's version.
+     *
+     * @param user the user
+     * @return the user's debts
+     */
+    public long getDebt(User user) {
+        checkOpen();
+        return user.getAccumulatedDebts(version);
+    }
+
+    /**
+     * Sums the debts of the users seen by the view.
+     *
+     * @return the total outstanding fines
+     */
+    public long getTotalOutstanding() {
+        long total = 0;
+        for (User user : getUsers()) {
+            total += user.getAccumulatedDebts(version);
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of books a user held at the view's version.
+     *
+     * @param user the user
+     * @return the number of open loans
+     */
+    public int getActiveLoanCount(User user) {
+        checkOpen();
+        return user.getActiveLoanCount(version);
+    }
+
+    /**
+     * Gets the number of books in a branch's collection at the view's
+     * version.
+     *
+     * @param branch the branch
+     * @return the number of books
+     */
+    public int getBookCount(Branch branch) {
+        checkOpen();
+        return branch.getBookCount(version);
+    }
+
+    /**
+     * Gets the number of books of a branch that were not loaned at the view's
+     * version.
+     *
+     * @param branch the branch
+     * @return the number of available books
+     */
+    public int getAvailableCount(Branch branch) {
+        checkOpen();
+        return branch.getAvailableCount(version);
+    }
+
+    /**
+     * Gets the loans a user had made by the view's version, oldest first. The
+     * order does not change while the view is open, so positions in the list
+     * can be used to page through it.
+     *
+     * @param user the user
+     * @return the user's loans
+     */
+    public List<Loan> getLoans(User user) {
+        checkOpen();
+        List<Loan> loans = user.getLoan();
+        loans.removeIf(loan -> loan.getLoanVersion() > version);
+        loans.sort(LOAN_ORDER);
+        return loans;
+    }
+
+    /**
+     * Gets the return date of a loan as the view sees it.
+     *
+     * @param loan the loan
+     * @return the return date, or null if the loan was still open at the
+     * view's version
+     */
+    public Date getDateOfReturn(Loan loan) {
+        Date dateOfReturn = loan.getDateOfReturn();
+        return dateOfReturn != null && loan.getReturnVersion() <= version ? dateOfReturn : null;
+    }
+
+    /**
+     * Calculates the penalty of a loan as the view sees it.
+     *
+     * @param loan the loan
+     * @return the penalty, or 0 if the loan was still open at the view's
+     * version or was returned in time
+     */
+    public long calculatePenalty(Loan loan) {
+        return getDateOfReturn(loan) != null ? loan.calculatePenalty() : 0;
+    }
+
+    /**
+     * Closes the view, releasing the history kept for it. Closing a view
+     * twice has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            library.getClock().unpin(pin);
+        }
+    }
+
+    /**
+     * Checks that the view is still open.
+     *
+     * @throws IllegalStateException if the view was closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The view is closed");
+        }
+    }
+
+    /**
+     * Filters the elements that joined the library after the view's version.
+     *
+     * @param <T> the type of the elements
+     * @param elements the elements in handle order
+     * @return the elements the view sees
+     */
+    private <T extends Element> Iterator<T> visible(Iterator<T> elements) {
+        return new Iterator<T>() {
+            private T next = advance();
+
+            private T advance() {
+                while (elements.hasNext()) {
+                    T element = elements.next();
+                    if (element.getVersion() <= version) {
+                        return element;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T element = next;
+                next = advance();
+                return element;
+            }
+        };
+    }
+}
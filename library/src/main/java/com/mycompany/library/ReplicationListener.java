@@ -0,0 +1,24 @@
+package com.mycompany.library;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * Is told when a replication connection between a {@link ReplicationServer}
+ * and a {@link LibraryReplica} fails. Both sides recover on their own: the
+ * server keeps accepting followers and the replica reconnects, so the
+ * listener is only there to report the failure.
+ */
+@FunctionalInterface
+public interface ReplicationListener {
+
+    /**
+     * Handles a failed connection. The call runs on the replication thread
+     * of the connection, so it must not block.
+     *
+     * @param peer the address of the other side, or the server's own address
+     * if accepting followers failed
+     * @param cause the failure
+     */
+    void onConnectionLost(SocketAddress peer, IOException cause);
+}
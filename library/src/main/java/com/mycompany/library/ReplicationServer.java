@@ -0,0 +1,257 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Ships the journal of a primary library to {@link LibraryReplica} followers
+ * over TCP, so reads can be served by other processes.
+ * <p>
+ * A follower connects and sends the last sequence it has applied, or -1 if
+ * it has nothing. If the journal still holds the records after it, they are
+ * streamed from there; otherwise the primary's latest checkpoint is sent as
+ * it is, or an empty library if nothing was checkpointed yet, followed by the
+ * records after it. Connecting never compacts the journal. Only records
+ * already on disk are shipped, so a follower never applies a change the
+ * primary could lose in a crash. Failed connections are reported to the
+ * server's {@link ReplicationListener}.
+ * <p>
+ * Messages are a tag byte followed by:
+ * <pre>
+ * 'S' long sequence, long size, snapshot bytes
+ * 'B' int count, then per record int length, int CRC-32, body (as framed in
+ *     the journal)
+ * 'H' long durable sequence, long time of the primary (after every batch,
+ *     and when idle)
+ * </pre>
+ */
+public class ReplicationServer implements Closeable {
+
+    static final byte SNAPSHOT = 'S';
+    static final byte BATCH = 'B';
+    static final byte HEARTBEAT = 'H';
+
+    private static final int BATCH_SIZE = 512;
+    private static final long HEARTBEAT_MILLIS = 100;
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private final TransactionJournal journal;
+    private final Path snapshot;
+    private final ServerSocket server;
+    private final Map<Socket, Thread> followers;
+    private final Thread acceptor;
+    private volatile ReplicationListener listener;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a server for a journaled library. The server does not accept
+     * followers until it is started.
+     *
+     * @param journal the journal of the primary library
+     * @param snapshot the snapshot file the journal is checkpointed into
+     * @param address the address to listen on; port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public ReplicationServer(TransactionJournal journal, Path snapshot, InetSocketAddress address) throws IOException {
+        this.journal = journal;
+        this.snapshot = snapshot;
+        this.server = new ServerSocket();
+        this.server.bind(address);
+        this.followers = new HashMap<>();
+        this.listener = (peer, cause) -> {
+        };
+        this.acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        this.acceptor.setDaemon(true);
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Starts accepting followers.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Gets the number of followers connected.
+     *
+     * @return the followers
+     */
+    public int getFollowerCount() {
+        synchronized (followers) {
+            return followers.size();
+        }
+    }
+
+    /**
+     * Sets the listener told about failed connections. By default failures
+     * are ignored.
+     *
+     * @param listener the listener
+     */
+    public void setListener(ReplicationListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * Stops accepting followers, disconnects the connected ones and waits
+     * for the acceptor and the followers' threads to finish.
+     *
+     * @throws IOException if the server socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        List<Thread> threads = new ArrayList<>();
+        synchronized (followers) {
+            for (Map.Entry<Socket, Thread> follower : followers.entrySet()) {
+                follower.getKey().close();
+                threads.add(follower.getValue());
+            }
+        }
+        try {
+            if (acceptor.isAlive()) {
+                acceptor.join();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the acceptor thread: starts a daemon thread per follower.
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread(() -> serve(socket), "replication-" + socket.getPort());
+                thread.setDaemon(true);
+                synchronized (followers) {
+                    if (closed) {
+                        socket.close();
+                        return;
+                    }
+                    followers.put(socket, thread);
+                }
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    listener.onConnectionLost(server.getLocalSocketAddress(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the journal to one follower until it disconnects.
+     *
+     * @param socket the follower's connection
+     */
+    private void serve(Socket socket) {
+        try (socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            long after = in.readLong();
+            TransactionJournal.Tail tail = journal.openTail(after);
+            for (int attempt = 0; tail == null; attempt++) {
+                if (attempt == SNAPSHOT_ATTEMPTS) {
+                    throw new IOException("Journal does not continue the snapshot at " + after);
+                }
+                // a checkpoint may have dropped the records after the snapshot sent; send the new one
+                after = sendSnapshot(out);
+                tail = journal.openTail(after);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+            DataOutputStream batch = new DataOutputStream(bytes);
+            try (TransactionJournal.Tail records = tail) {
+                while (!closed) {
+                    bytes.reset();
+                    int count = records.read(batch, BATCH_SIZE, HEARTBEAT_MILLIS);
+                    if (count > 0) {
+                        out.writeByte(BATCH);
+                        out.writeInt(count);
+                        bytes.writeTo(out);
+                    }
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(Math.max(records.getLastSequence(), journal.getDurableSequence()));
+                    out.writeLong(System.currentTimeMillis());
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                listener.onConnectionLost(socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            synchronized (followers) {
+                followers.remove(socket);
+            }
+        }
+    }
+
+    /**
+     * Sends the latest checkpoint, or an empty library if nothing was
+     * checkpointed yet.
+     *
+     * @param out the follower's stream
+     * @return the last sequence contained in the snapshot sent
+     * @throws IOException if the snapshot cannot be read or sent
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        try {
+            return sendSnapshot(out, snapshot);
+        } catch (NoSuchFileException e) {
+            // the journal still starts at the first record
+            Path empty = Files.createTempFile("replication", ".snap");
+            try {
+                LibrarySnapshot.write(new Library(), empty, 0);
+                return sendSnapshot(out, empty);
+            } finally {
+                Files.deleteIfExists(empty);
+            }
+        }
+    }
+
+    /**
+     * Sends a snapshot file.
+     *
+     * @param out the follower's stream
+     * @param file the snapshot file
+     * @return the last sequence contained in the snapshot sent
+     * @throws IOException if the snapshot cannot be read or sent
+     */
+    private static long sendSnapshot(DataOutputStream out, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // read from the open file: a checkpoint may replace the path meanwhile
+            long sequence = LibrarySnapshot.readSequence(channel, file);
+            long size = channel.size();
+            out.writeByte(SNAPSHOT);
+            out.writeLong(sequence);
+            out.writeLong(size);
+            long sent = 0;
+            WritableByteChannel target = Channels.newChannel(out);
+            while (sent < size) {
+                sent += channel.transferTo(sent, size - sent, target);
+            }
+            return sequence;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.mycompany.library;
+
+/**
+ * Output format of a report.
+ */
+public enum ReportFormat {
+
+    /**
+     * Comma-separated values with a header row.
+     */
+    CSV,
+    /**
+     * A JSON array with one object per row.
+     */
+    JSON,
+    /**
+     * One line per row of "column: value" pairs, for the console.
+     */
+    TEXT
+}
@@ -0,0 +1,215 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Writes the rows of a report straight to a buffered {@link Writer}, so a
+ * report of any length needs memory for one row only.
+ * <p>
+ * Values can be strings, numbers, booleans, dates or null. Dates are written
+ * in ISO-8601. {@link #finish()} ends the document, for example the closing
+ * bracket of a JSON array, and flushes it.
+ */
+public class ReportWriter implements Closeable {
+
+    private final Writer out;
+    private final ReportFormat format;
+    private final String[] columns;
+    private final StringBuilder row;
+    private char[] chars;
+    private int rows;
+    private boolean finished;
+
+    /**
+     * Constructs a report writer and writes the start of the document.
+     *
+     * @param out where the report is written; it is buffered if it is not
+     * already
+     * @param format the format of the report
+     * @param columns the names of the columns
+     * @throws IOException if the start of the document cannot be written
+     */
+    public ReportWriter(Writer out, ReportFormat format, String... columns) throws IOException {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        this.format = format;
+        this.columns = columns.clone();
+        this.row = new StringBuilder(256);
+        this.chars = new char[256];
+        if (format == ReportFormat.CSV) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    row.append(',');
+                }
+                appendCsv(columns[i]);
+            }
+            row.append('\n');
+            flushRow();
+        } else if (format == ReportFormat.JSON) {
+            this.out.write('[');
+        }
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Writes a row.
+     *
+     * @param values one value per column
+     * @throws IOException if the row cannot be written
+     * @throws IllegalArgumentException if the number of values does not match
+     * the columns
+     */
+    public void writeRow(Object... values) throws IOException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        switch (format) {
+            case CSV -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        row.append(',');
+                    }
+                    appendCsv(text(values[i]));
+                }
+                row.append('\n');
+            }
+            case JSON -> {
+                row.append(rows > 0 ? ",\n{" : "\n{");
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        row.append(',');
+                    }
+                    Json.appendString(row, columns[i]);
+                    row.append(':');
+                    appendJson(values[i]);
+                }
+                row.append('}');
+            }
+            case TEXT -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        row.append(", ");
+                    }
+                    row.append(columns[i]).append(": ").append(values[i] != null ? text(values[i]) : "-");
+                }
+                row.append('\n');
+            }
+        }
+        rows++;
+        flushRow();
+    }
+
+    /**
+     * Gets the number of rows written so far.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Writes the end of the document and flushes it, leaving the underlying
+     * writer open.
+     *
+     * @throws IOException if the end of the document cannot be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (format == ReportFormat.JSON) {
+            out.write(rows > 0 ? "\n]\n" : "]\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes the document and closes the underlying writer.
+     *
+     * @throws IOException if the document cannot be finished or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the row buffer to the output and clears it.
+     *
+     * @throws IOException if the row cannot be written
+     */
+    private void flushRow() throws IOException {
+        if (chars.length < row.length()) {
+            chars = new char[Math.max(row.length(), chars.length * 2)];
+        }
+        row.getChars(0, row.length(), chars, 0);
+        out.write(chars, 0, row.length());
+        row.setLength(0);
+    }
+
+    /**
+     * Appends a CSV field, quoting it if it contains a separator, a quote or
+     * a line break.
+     *
+     * @param value the field, or null for an empty field
+     */
+    private void appendCsv(String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(value);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Appends a value as JSON: numbers and booleans bare, everything else as
+     * a string.
+     *
+     * @param value the value
+     */
+    private void appendJson(Object value) {
+        if (value instanceof Number || value instanceof Boolean) {
+            row.append(value);
+        } else {
+            Json.appendString(row, text(value));
+        }
+    }
+
+    /**
+     * Converts a value to text.
+     *
+     * @param value the value
+     * @return the text, or null if the value is null
+     */
+    private static String text(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toInstant().toString();
+        }
+        return value.toString();
+    }
+}
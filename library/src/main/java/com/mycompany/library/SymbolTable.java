@@ -0,0 +1,138 @@
+package com.mycompany.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Assigns dense int handles to string IDs. The first ID interned gets handle
+ * 0, the next one 1, and so on; an ID keeps its handle for the life of the
+ * table. Internal indexes are keyed by these handles, so string IDs are only
+ * hashed once, at the edge of the API.
+ * <p>
+ * The table is an open-addressing hash table of IDs and handles. Interning is
+ * serialized; lookups are lock-free and never box.
+ */
+public final class SymbolTable {
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(String[].class);
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile Table table;
+    private int size;
+
+    /**
+     * Constructs an empty symbol table.
+     */
+    public SymbolTable() {
+        this.table = new Table(INITIAL_CAPACITY);
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the handle of an ID, assigning the next free handle if the ID has
+     * none yet.
+     *
+     * @param id the ID
+     * @return the handle of the ID, or -1 if the ID is null
+     */
+    public synchronized int intern(String id) {
+        int handle = lookup(id);
+        if (handle >= 0 || id == null) {
+            return handle;
+        }
+        Table current = table;
+        if ((size + 1) * 2 > current.keys.length) {
+            Table resized = new Table(current.keys.length * 2);
+            for (int i = 0; i < current.keys.length; i++) {
+                if (current.keys[i] != null) {
+                    resized.insert(current.keys[i], current.handles[i]);
+                }
+            }
+            table = resized;
+            current = resized;
+        }
+        current.insert(id, size);
+        return size++;
+    }
+
+    /**
+     * Gets the handle of an ID without assigning one.
+     *
+     * @param id the ID
+     * @return the handle of the ID, or -1 if the ID is null or was never
+     * interned
+     */
+    public int lookup(String id) {
+        if (id == null) {
+            return -1;
+        }
+        Table current = table;
+        int mask = current.keys.length - 1;
+        for (int i = slot(id, mask); ; i = (i + 1) & mask) {
+            String key = (String) KEYS.getAcquire(current.keys, i);
+            if (key == null) {
+                return -1;
+            }
+            if (key.equals(id)) {
+                return current.handles[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the number of IDs interned so far, which is also the next handle.
+     *
+     * @return the number of handles
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the first slot to probe for an ID.
+     *
+     * @param id the ID
+     * @param mask the table length minus one
+     * @return the slot
+     */
+    private static int slot(String id, int mask) {
+        int hash = id.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * The IDs and handles, in two parallel arrays. A handle is written before
+     * its ID is published, so a reader that sees the ID also sees the handle.
+     */
+    private static final class Table {
+
+        final String[] keys;
+        final int[] handles;
+
+        /**
+         * Constructs an empty table.
+         *
+         * @param capacity the number of slots, a power of two
+         */
+        Table(int capacity) {
+            this.keys = new String[capacity];
+            this.handles = new int[capacity];
+        }
+
+        /**
+         * Inserts an ID that is not in the table.
+         *
+         * @param id the ID
+         * @param handle the handle of the ID
+         */
+        void insert(String id, int handle) {
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            handles[i] = handle;
+            KEYS.setRelease(keys, i, id);
+        }
+    }
+}
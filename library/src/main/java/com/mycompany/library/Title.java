@@ -0,0 +1,306 @@
+package com.mycompany.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * A title of the catalog, shared by all of its copies. The name and author
+ * are stored once per title instead of once per {@link Book}, and the loan
+ * state of every copy is one bit of the title's bitset, which copies claim
+ * with compare-and-set.
+ * <p>
+ * Each library has one title per name and author, so two titles are equal
+ * if their name and author are. A book that is not in a library yet has a
+ * title of its own, and moves to its library's shared title when the library
+ * indexes it. Besides the loan bits, a title keeps a bitset of the branches
+ * that have an available copy of it, so finding them is a scan of a few
+ * words; how many copies a branch has available is counted by the branch.
+ */
+public final class Title {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final String name;
+    private final String author;
+    private final Library library;
+    private volatile long[][] segments;
+    private volatile int copyCount;
+    private long[] availableBranches;
+
+    /**
+     * Constructs a title without copies.
+     *
+     * @param name the name of the title
+     * @param author the author of the title
+     * @param library the library sharing the title, or null for the title of
+     * a book that is not in a library
+     */
+    Title(String name, String author, Library library) {
+        this.name = name;
+        this.author = author;
+        this.library = library;
+        this.segments = new long[1][];
+        this.availableBranches = new long[1];
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Gets the name of the title.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the author of the title.
+     *
+     * @return the author
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Gets the library sharing the title.
+     *
+     * @return the library, or null if the title belongs to a single book
+     * outside any library
+     */
+    Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Gets the number of copies of the title.
+     *
+     * @return the number of copies
+     */
+    public int getCopyCount() {
+        return copyCount;
+    }
+
+    /**
+     * Counts the copies of the title that are loaned, set aside for a hold
+     * or in transit between branches, by scanning the loan bits.
+     *
+     * @return the number of copies that are not on a shelf
+     */
+    public int getLoanedCount() {
+        long[][] current = segments;
+        int loaned = 0;
+        for (long[] segment : current) {
+            if (segment == null) {
+                break;
+            }
+            for (int i = 0; i < segment.length; i++) {
+                loaned += Long.bitCount((long) WORDS.getVolatile(segment, i));
+            }
+        }
+        return loaned;
+    }
+
+    /**
+     * Gets the number of copies of the title available at a branch.
+     *
+     * @param branch the branch
+     * @return the number of available copies
+     */
+    public int getAvailableCount(Branch branch) {
+        return branch.getAvailableCount(this);
+    }
+
+    /**
+     * Checks if any branch has an available copy of the title.
+     *
+     * @return true if a copy is available somewhere
+     */
+    public synchronized boolean isAvailable() {
+        for (long word : availableBranches) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the branches that have an available copy of the title, in handle
+     * order.
+     *
+     * @return the branches, empty if no copy is available or the title is
+     * not in a library
+     */
+    public List<Branch> getBranchesWithAvailableCopies() {
+        List<Integer> handles = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < availableBranches.length; i++) {
+                long word = availableBranches[i];
+                while (word != 0) {
+                    handles.add(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+        List<Branch> branches = new ArrayList<>(handles.size());
+        if (library != null) {
+            for (int handle : handles) {
+                Branch branch = library.getBranch(handle);
+                if (branch != null) {
+                    branches.add(branch);
+                }
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * Records whether a branch has an available copy of the title. Called by
+     * the branch, holding its monitor, when its count of available copies of
+     * the title leaves or reaches zero.
+     *
+     * @param branchHandle the handle of the branch, or -1 if the branch is
+     * not in a library
+     * @param available true if the branch has an available copy
+     */
+    synchronized void setAvailableAt(int branchHandle, boolean available) {
+        if (branchHandle < 0 || library == null) {
+            // the branch or the book is not in a library yet
+            return;
+        }
+        int index = branchHandle / Long.SIZE;
+        if (index >= availableBranches.length) {
+            if (!available) {
+                return;
+            }
+            availableBranches = Arrays.copyOf(availableBranches, Math.max(index + 1, availableBranches.length * 2));
+        }
+        long mask = 1L << branchHandle;
+        if (available) {
+            availableBranches[index] |= mask;
+        } else {
+            availableBranches[index] &= ~mask;
+        }
+    }
+
+    /**
+     * Adds a copy to the title.
+     *
+     * @param loaned the loan state of the new copy
+     * @return the position of the copy's bit
+     */
+    synchronized int addCopy(boolean loaned) {
+        int copy = copyCount;
+        int word = copy / Long.SIZE;
+        int segment = segmentOf(word);
+        long[][] current = segments;
+        if (segment >= current.length) {
+            current = Arrays.copyOf(current, segment + 1);
+        }
+        if (current[segment] == null) {
+            // segments never move, so a compare-and-set on a copy's word is never lost
+            current[segment] = new long[segment == 0 ? 1 : 1 << (segment - 1)];
+        }
+        segments = current;
+        if (loaned) {
+            WORDS.getAndBitwiseOr(current[segment], offsetOf(word, segment), 1L << copy);
+        }
+        copyCount = copy + 1;
+        return copy;
+    }
+
+    /**
+     * Checks if a copy is loaned.
+     *
+     * @param copy the position of the copy's bit
+     * @return true if the copy is loaned
+     */
+    boolean isLoaned(int copy) {
+        int word = copy / Long.SIZE;
+        int segment = segmentOf(word);
+        return ((long) WORDS.getVolatile(segments[segment], offsetOf(word, segment)) & (1L << copy)) != 0;
+    }
+
+    /**
+     * Atomically marks a copy as loaned if it is not loaned already.
+     *
+     * @param copy the position of the copy's bit
+     * @return true if the caller obtained the copy, false if it was already
+     * loaned
+     */
+    boolean tryLoan(int copy) {
+        int word = copy / Long.SIZE;
+        int segment = segmentOf(word);
+        long[] words = segments[segment];
+        int offset = offsetOf(word, segment);
+        long mask = 1L << copy;
+        long current = (long) WORDS.getVolatile(words, offset);
+        while ((current & mask) == 0) {
+            long witness = (long) WORDS.compareAndExchange(words, offset, current, current | mask);
+            if (witness == current) {
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the loan state of a copy.
+     *
+     * @param copy the position of the copy's bit
+     * @param loaned true if the copy is loaned
+     */
+    void setLoaned(int copy, boolean loaned) {
+        int word = copy / Long.SIZE;
+        int segment = segmentOf(word);
+        long mask = 1L << copy;
+        if (loaned) {
+            WORDS.getAndBitwiseOr(segments[segment], offsetOf(word, segment), mask);
+        } else {
+            WORDS.getAndBitwiseAnd(segments[segment], offsetOf(word, segment), ~mask);
+        }
+    }
+
+    /**
+     * Gets the segment holding a word of loan bits. Segment 0 holds word 0
+     * and segment s holds words 2^(s-1) to 2^s - 1, so the bitset grows by
+     * doubling without moving the words already in use.
+     *
+     * @param word the index of the word
+     * @return the index of the segment
+     */
+    private static int segmentOf(int word) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * Gets the position of a word in its segment.
+     *
+     * @param word the index of the word
+     * @param segment the index of its segment
+     * @return the position in the segment
+     */
+    private static int offsetOf(int word, int segment) {
+        return segment == 0 ? 0 : word - (1 << (segment - 1));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Title)) {
+            return false;
+        }
+        Title title = (Title) other;
+        return Objects.equals(name, title.name) && Objects.equals(author, title.author);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(name) + Objects.hashCode(author);
+    }
+}
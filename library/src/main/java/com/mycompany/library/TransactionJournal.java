@@ -0,0 +1,808 @@
+package com.mycompany.library;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes made to a library: branches, users and
+ * books added, books moved between branches, and every lend and return. Together with a snapshot it lets a
+ * library be rebuilt after a crash without losing circulation events.
+ * <p>
+ * Each record is framed as
+ * <pre>
+ * int length, int CRC-32, long sequence, byte type, long time, fields...
+ * </pre>
+ * where length and CRC cover everything after the CRC. Records are appended
+ * to segment files named after the sequence of their first record, and a new
+ * segment is started once the current one exceeds its size limit.
+ * <p>
+ * Writes use group commit. Callers only queue their record, which is cheap,
+ * and a single flusher thread writes everything queued so far and forces it
+ * to disk with one fsync. {@link #sync()} blocks until the records of the
+ * calling thread are durable, so many concurrent requests share each fsync.
+ * <p>
+ * Branches queue a lend before the borrower can return the book, and a return
+ * before the book can be lent again, so the records of one book are always
+ * in the order the changes happened. {@link #compact(Path)} folds the journal
+ * into a snapshot in the background, and a {@link Tail} reads the durable
+ * records from a given sequence on, following new segments as they are
+ * started, so they can be shipped to replicas.
+ */
+public class TransactionJournal implements Closeable {
+
+    static final byte ADD_BRANCH = 1;
+    static final byte ADD_USER = 2;
+    static final byte ADD_BOOK = 3;
+    static final byte LEND = 4;
+    static final byte RETURN = 5;
+    static final byte TRANSFER = 6;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ThreadLocal<long[]> lastWritten = ThreadLocal.withInitial(() -> new long[1]);
+    private final Thread flusher;
+    private final Object compactLock = new Object();
+
+    private FileChannel segment;
+    private long segmentSize;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long lastSequence;
+    private long durableSequence;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens the journal stored in a directory, creating the directory if
+     * needed. A torn record at the end of the last segment, left by a crash
+     * during a write, is cut off so new records follow the last complete one.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentBytes the size after which a new segment is started
+     * @throws IOException if the journal cannot be opened
+     */
+    public TransactionJournal(Path directory, long segmentBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(1);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            long[] end = scan(last, null, 0, Long.MAX_VALUE, null);
+            this.lastSequence = end[1] > 0 ? end[1] : firstSequence(last) - 1;
+            this.segment = FileChannel.open(last, StandardOpenOption.WRITE);
+            this.segment.truncate(end[0]);
+            this.segment.position(end[0]);
+            this.segmentSize = end[0];
+        }
+        this.durableSequence = lastSequence;
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Records that a branch was added.
+     *
+     * @param branch the added branch
+     */
+    void logAddBranch(Branch branch) {
+        append(ADD_BRANCH, System.currentTimeMillis(), branch.getID(), branch.getName());
+    }
+
+    /**
+     * Records that a user was added.
+     *
+     * @param user the added user
+     */
+    void logAddUser(User user) {
+        append(ADD_USER, System.currentTimeMillis(), user.getID(), user.getName());
+    }
+
+    /**
+     * Records that a book was added to a branch.
+     *
+     * @param book the added book
+     * @param branch the branch that received the book
+     */
+    void logAddBook(Book book, Branch branch) {
+        append(ADD_BOOK, System.currentTimeMillis(), book.getID(), book.getName(), book.getAuthor(), branch.getID());
+    }
+
+    /**
+     * Records that a book was lent.
+     *
+     * @param user the borrower
+     * @param book the lent book
+     * @param branch the lending branch
+     * @param dateOfLoan the date of the loan
+     */
+    void logLend(User user, Book book, Branch branch, Date dateOfLoan) {
+        append(LEND, dateOfLoan.getTime(), user.getID(), book.getID(), branch.getID());
+    }
+
+    /**
+     * Records that a book was returned.
+     *
+     * @param user the user returning the book
+     * @param book the returned book
+     * @param branch the branch receiving the book
+     * @param dateOfReturn the date of the return
+     */
+    void logReturn(User user, Book book, Branch branch, Date dateOfReturn) {
+        append(RETURN, dateOfReturn.getTime(), user.getID(), book.getID(), branch.getID());
+    }
+
+    /**
+     * Records that a book was moved from one branch to another.
+     *
+     * @param book the moved book
+     * @param from the branch the book left
+     * @param to the branch that received the book
+     */
+    void logTransfer(Book book, Branch from, Branch to) {
+        append(TRANSFER, System.currentTimeMillis(), book.getID(), from.getID(), to.getID());
+    }
+
+    /**
+     * Gets the sequence of the last record queued.
+     *
+     * @return the last sequence, or 0 if the journal is empty
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Waits until every record queued by the calling thread is on disk.
+     *
+     * @throws UncheckedIOException if the journal could not be written or the
+     * thread was interrupted while waiting
+     */
+    public void sync() {
+        sync(lastWritten.get()[0]);
+    }
+
+    /**
+     * Gets the sequence of the last record queued by the calling thread, so
+     * that another thread can wait for it with {@link #sync(long)}.
+     *
+     * @return the sequence, or 0 if the thread queued nothing
+     */
+    long getLastWritten() {
+        return lastWritten.get()[0];
+    }
+
+    /**
+     * Waits until every record up to a sequence is on disk.
+     *
+     * @param sequence the sequence to wait for
+     * @throws UncheckedIOException if the journal could not be written, or
+     * the thread was interrupted before the records were on disk, in which
+     * case its interrupt flag is set again
+     */
+    void sync(long sequence) {
+        synchronized (this) {
+            while (durableSequence < sequence && failure == null && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (durableSequence >= sequence) {
+                        return;
+                    }
+                    InterruptedIOException interrupted = new InterruptedIOException(
+                            "Interrupted before sequence " + sequence + " was on disk");
+                    interrupted.initCause(e);
+                    throw new UncheckedIOException(interrupted);
+                }
+            }
+            if (durableSequence < sequence) {
+                throw new UncheckedIOException(failure != null ? failure : new IOException("Journal is closed"));
+            }
+        }
+    }
+
+    /**
+     * Replays the journal into a library, applying every record whose
+     * sequence is greater than the given one. The library must not be
+     * attached to this journal while it is replayed.
+     *
+     * @param library the library to rebuild
+     * @param afterSequence the sequence already contained in the library,
+     * usually the one of the snapshot it was loaded from
+     * @return the number of records applied
+     * @throws IOException if a segment cannot be read or is corrupt before its
+     * end
+     */
+    public long replay(Library library, long afterSequence) throws IOException {
+        return replay(library, afterSequence, Long.MAX_VALUE);
+    }
+
+    /**
+     * Replays the records whose sequence is in a range into a library.
+     *
+     * @param library the library to rebuild
+     * @param afterSequence records up to this sequence are skipped
+     * @param untilSequence records after this sequence are not applied
+     * @return the number of records applied
+     * @throws IOException if a segment cannot be read or is corrupt before its
+     * end
+     */
+    private long replay(Library library, long afterSequence, long untilSequence) throws IOException {
+        List<Path> segments = listSegments(directory);
+        long[] applied = new long[1];
+        for (int i = 0; i < segments.size(); i++) {
+            Path next = i + 1 < segments.size() ? segments.get(i + 1) : null;
+            if (next != null && firstSequence(next) <= afterSequence + 1) {
+                continue;
+            }
+            if (firstSequence(segments.get(i)) > untilSequence) {
+                break;
+            }
+            long[] end = scan(segments.get(i), library, afterSequence, untilSequence, applied);
+            if (next != null && end[1] < untilSequence && end[0] != Files.size(segments.get(i))) {
+                throw new IOException("Corrupt record in " + segments.get(i) + " at offset " + end[0]);
+            }
+        }
+        return applied[0];
+    }
+
+    /**
+     * Folds the durable part of the journal into a snapshot file and deletes
+     * the segments it covers. The previous snapshot, if any, is loaded into a
+     * separate library, the journal records written after it are replayed on
+     * top, and the result is written as the new snapshot. The live library is
+     * never read, so circulation is not paused and the new snapshot is exactly
+     * the state after its recorded sequence.
+     *
+     * @param snapshot the snapshot file to update
+     * @return the sequence contained in the new snapshot
+     * @throws IOException if the snapshot or the journal cannot be read or
+     * written
+     */
+    public long compact(Path snapshot) throws IOException {
+        synchronized (compactLock) {
+            long until = getDurableSequence();
+            Library library = Files.exists(snapshot) ? LibrarySnapshot.load(snapshot) : new Library();
+            long after = Files.exists(snapshot) ? LibrarySnapshot.readSequence(snapshot) : 0;
+            if (until <= after) {
+                return after;
+            }
+            replay(library, after, until);
+            LibrarySnapshot.write(library, snapshot, until);
+            // the snapshot and its directory entry are on disk by now
+            deleteSegmentsUpTo(until);
+            return until;
+        }
+    }
+
+    /**
+     * Gets the sequence of the last record on disk.
+     *
+     * @return the durable sequence
+     */
+    public synchronized long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * Waits until a record after a sequence is on disk.
+     *
+     * @param sequence the sequence already seen
+     * @param timeoutMillis the longest time to wait
+     * @return the durable sequence, which is not greater than the given one
+     * if the time ran out
+     * @throws IOException if the journal is closed or failed
+     */
+    synchronized long awaitDurable(long sequence, long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (durableSequence <= sequence && failure == null && !closed && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+        if (durableSequence <= sequence && (failure != null || closed)) {
+            throw failure != null ? failure : new IOException("Journal is closed");
+        }
+        return durableSequence;
+    }
+
+    /**
+     * Opens a tail that reads the records after a sequence.
+     *
+     * @param afterSequence the last sequence the reader already has
+     * @return the tail, or null if the records after the sequence are no
+     * longer in the journal, or the sequence is ahead of it
+     * @throws IOException if a segment cannot be opened
+     */
+    Tail openTail(long afterSequence) throws IOException {
+        if (afterSequence < 0 || afterSequence > getDurableSequence()) {
+            return null;
+        }
+        List<Path> segments = listSegments(directory);
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (firstSequence(segments.get(i)) <= afterSequence + 1) {
+                try {
+                    return new Tail(FileChannel.open(segments.get(i), StandardOpenOption.READ), afterSequence);
+                } catch (NoSuchFileException e) {
+                    return null; // compacted away while it was listed
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence lower than or
+     * equal to the given one, typically one contained in a snapshot.
+     *
+     * @param sequence the last sequence that is no longer needed
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void deleteSegmentsUpTo(long sequence) throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequence(segments.get(i + 1)) <= sequence + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Flushes every queued record, stops the flusher and closes the current
+     * segment.
+     *
+     * @throws IOException if the last records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Encodes a record and queues it for the flusher. The sequence is
+     * assigned under the journal's lock, so records appear in the journal in
+     * the order they were queued.
+     *
+     * @param type the record type
+     * @param time the time of the event in milliseconds
+     * @param fields the string fields of the record
+     */
+    private void append(byte type, long time, String... fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(time);
+            for (String field : fields) {
+                out.writeUTF(field);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + Long.BYTES + payload.length);
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            sequence = ++lastSequence;
+            record.putInt(Long.BYTES + payload.length).putInt(0).putLong(sequence).put(payload);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), HEADER_BYTES, Long.BYTES + payload.length);
+            record.putInt(4, (int) crc.getValue());
+            record.flip();
+            pending.add(record);
+            notifyAll();
+        }
+        lastWritten.get()[0] = sequence;
+    }
+
+    /**
+     * Body of the flusher thread: writes every queued record with one
+     * gathering write and one fsync, then wakes up the callers waiting for
+     * them.
+     */
+    private void flushLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchSequence;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchSequence = lastSequence;
+            }
+            try {
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                long written = 0;
+                for (ByteBuffer buffer : buffers) {
+                    written += buffer.remaining();
+                }
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    segment.write(buffers);
+                }
+                segment.force(false);
+                segmentSize += written;
+                if (segmentSize >= segmentBytes) {
+                    segment.close();
+                    openSegment(batchSequence + 1);
+                }
+                synchronized (this) {
+                    durableSequence = batchSequence;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    closed = true;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment.
+     *
+     * @param firstSequence the sequence of the first record of the segment
+     * @throws IOException if the segment cannot be created
+     */
+    private void openSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segmentSize = 0;
+        try (FileChannel parent = FileChannel.open(directory, StandardOpenOption.READ)) {
+            parent.force(true);
+        } catch (IOException e) {
+            // not every platform can sync a directory; the segment itself is synced on write
+        }
+    }
+
+    /**
+     * Reads the records of a segment up to the first incomplete or corrupt
+     * one, optionally applying them to a library.
+     *
+     * @param file the segment file
+     * @param library the library to apply records to, or null to only scan
+     * @param afterSequence records up to this sequence are not applied
+     * @param untilSequence reading stops after the record with this sequence
+     * @param applied counter of applied records, or null
+     * @return the offset after the last valid record read and its sequence
+     * @throws IOException if the file cannot be read
+     */
+    private static long[] scan(Path file, Library library, long afterSequence, long untilSequence, long[] applied) throws IOException {
+        long validEnd = 0;
+        long sequence = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] body = new byte[256];
+            while (sequence < untilSequence) {
+                int length;
+                int crc;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < Long.BYTES + 9 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                if (in.readNBytes(body, 0, length) < length) {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(body, 0, length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+                sequence = record.readLong();
+                if (library != null && sequence > afterSequence && sequence <= untilSequence) {
+                    apply(library, record);
+                    applied[0]++;
+                }
+                validEnd += HEADER_BYTES + length;
+            }
+        }
+        return new long[]{validEnd, sequence};
+    }
+
+    /**
+     * Checks and applies one record shipped from another journal, as framed
+     * by a {@link Tail}.
+     *
+     * @param library the library to update
+     * @param crc the CRC-32 of the record's body
+     * @param body the record's body: sequence, type, time and fields
+     * @param length the length of the body
+     * @param afterSequence the last sequence already applied; only the next
+     * one is applied, and older ones are skipped
+     * @return the sequence of the record
+     * @throws IOException if the record is corrupt or malformed, or a record
+     * is missing before it
+     */
+    static long applyRecord(Library library, int crc, byte[] body, int length, long afterSequence) throws IOException {
+        CRC32 check = new CRC32();
+        check.update(body, 0, length);
+        if ((int) check.getValue() != crc) {
+            throw new IOException("Corrupt record after sequence " + afterSequence);
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+        long sequence = record.readLong();
+        if (sequence > afterSequence + 1) {
+            throw new IOException("Missing records " + (afterSequence + 1) + " to " + (sequence - 1));
+        }
+        if (sequence == afterSequence + 1) {
+            apply(library, record);
+        }
+        return sequence;
+    }
+
+    /**
+     * Applies one record to a library.
+     *
+     * @param library the library to update
+     * @param record the record, positioned after its sequence
+     * @throws IOException if the record is malformed
+     */
+    private static void apply(Library library, DataInputStream record) throws IOException {
+        byte type = record.readByte();
+        Date time = new Date(record.readLong());
+        switch (type) {
+            case ADD_BRANCH ->
+                library.addBranch(new Branch(record.readUTF(), record.readUTF()));
+            case ADD_USER ->
+                library.addUser(new User(record.readUTF(), record.readUTF()));
+            case ADD_BOOK -> {
+                Book book = new Book(record.readUTF(), record.readUTF(), record.readUTF());
+                Branch branch = library.searchBranchByID(record.readUTF());
+                if (branch != null) {
+                    branch.addBook(book);
+                }
+            }
+            case LEND -> {
+                User user = library.searchUserByID(record.readUTF());
+                String bookID = record.readUTF();
+                Branch branch = library.searchBranchByID(record.readUTF());
+                if (user != null && branch != null) {
+                    branch.applyLoan(user, bookID, time);
+                }
+            }
+            case RETURN -> {
+                User user = library.searchUserByID(record.readUTF());
+                Book book = library.searchBookByID(record.readUTF());
+                Branch branch = library.searchBranchByID(record.readUTF());
+                if (user != null && book != null && branch != null) {
+                    branch.applyReturn(user, book, time);
+                }
+            }
+            case TRANSFER -> {
+                Book book = library.searchBookByID(record.readUTF());
+                Branch from = library.searchBranchByID(record.readUTF());
+                Branch to = library.searchBranchByID(record.readUTF());
+                if (book != null && from != null) {
+                    from.transferBooks(List.of(book), to);
+                }
+            }
+            default ->
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Lists the segment files of a journal in sequence order.
+     *
+     * @param directory the journal directory
+     * @return the segment files
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingLong(TransactionJournal::firstSequence));
+        return segments;
+    }
+
+    /**
+     * Gets the sequence of the first record of a segment from its name.
+     *
+     * @param segment the segment file
+     * @return the first sequence of the segment
+     */
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Reads the durable records of the journal in order, from a sequence on.
+     * Records are read from the segment files as they are, so a record only
+     * becomes visible once the flusher has forced it to disk; when the end of
+     * a segment is reached the tail moves on to the next one. A segment
+     * deleted by a compaction stays readable while the tail has it open.
+     */
+    final class Tail implements Closeable {
+
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private FileChannel channel;
+        private long position;
+        private long lastSequence;
+        private byte[] body = new byte[256];
+
+        /**
+         * Constructs a tail at the start of a segment.
+         *
+         * @param channel the segment holding the record after the sequence
+         * @param afterSequence the last sequence the reader already has
+         */
+        private Tail(FileChannel channel, long afterSequence) {
+            this.channel = channel;
+            this.lastSequence = afterSequence;
+        }
+
+        /**
+         * Gets the sequence of the last record read.
+         *
+         * @return the last sequence
+         */
+        long getLastSequence() {
+            return lastSequence;
+        }
+
+        /**
+         * Copies the next durable records, framed as in the segments, waiting
+         * for new ones if there are none yet.
+         *
+         * @param out receives each record as int length, int CRC-32 and body
+         * @param maxRecords the most records to copy
+         * @param timeoutMillis the longest time to wait for a new record
+         * @return the number of records copied, 0 if the time ran out
+         * @throws IOException if the journal is closed, a segment cannot be
+         * read, or the next record is no longer in the journal
+         */
+        int read(DataOutputStream out, int maxRecords, long timeoutMillis) throws IOException {
+            long durable = awaitDurable(lastSequence, timeoutMillis);
+            int count = 0;
+            while (count < maxRecords && lastSequence < durable) {
+                if (!readRecord()) {
+                    nextSegment();
+                    continue;
+                }
+                long sequence = ByteBuffer.wrap(body, 0, Long.BYTES).getLong();
+                if (sequence <= lastSequence) {
+                    continue;
+                }
+                out.writeInt(header.getInt(0));
+                out.writeInt(header.getInt(4));
+                out.write(body, 0, header.getInt(0));
+                lastSequence = sequence;
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Reads the record at the current position of the segment.
+         *
+         * @return true if a whole record was read, false at the end of the
+         * segment
+         * @throws IOException if the segment cannot be read or is corrupt
+         */
+        private boolean readRecord() throws IOException {
+            if (channel.size() < position + HEADER_BYTES) {
+                return false;
+            }
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length < Long.BYTES + 9 || length > MAX_RECORD_BYTES) {
+                throw new IOException("Corrupt record after sequence " + lastSequence);
+            }
+            if (channel.size() < position + HEADER_BYTES + length) {
+                return false;
+            }
+            if (body.length < length) {
+                body = new byte[Math.max(length, body.length * 2)];
+            }
+            readFully(ByteBuffer.wrap(body, 0, length), position + HEADER_BYTES);
+            position += HEADER_BYTES + length;
+            return true;
+        }
+
+        /**
+         * Reads bytes of the segment until a buffer is full.
+         *
+         * @param buffer the buffer to fill
+         * @param offset the position in the segment
+         * @throws IOException if the segment ends first
+         */
+        private void readFully(ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, offset);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+        }
+
+        /**
+         * Moves to the segment that starts after the last record read.
+         *
+         * @throws IOException if there is no such segment
+         */
+        private void nextSegment() throws IOException {
+            for (Path segment : listSegments(directory)) {
+                if (firstSequence(segment) == lastSequence + 1) {
+                    FileChannel next = FileChannel.open(segment, StandardOpenOption.READ);
+                    channel.close();
+                    channel = next;
+                    position = 0;
+                    return;
+                }
+            }
+            throw new IOException("Record " + (lastSequence + 1) + " is no longer in the journal");
+        }
+
+        /**
+         * Closes the segment being read.
+         *
+         * @throws IOException if it cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.mycompany.library;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Represents a user of the library. Extends the Element class to inherit common
+ * properties. Loans are kept twice: an append-only history of every loan and
+ * an index of the open loans keyed by the handle of the book's ID. Once the user belongs to a
+ * library, returned loans are moved out of the history list into the
+ * library's columnar {@link LoanHistory} as soon as no read view can see them
+ * open, and the user only keeps their rows.
+ * Debts and loans can be updated from several circulation desks at once.
+ * The debt and the number of open loans also keep their recent changes by
+ * version, so a {@link ReadView} can read them as of its point in time.
+ */
+public class User extends Element {
+
+    private final AtomicLong accumulatedDebts;
+    private final VersionedCounter debtVersions;
+    private final VersionedCounter activeLoanVersions;
+    private List<Loan> loan;
+    private IntObjectMap<Loan> activeLoans;
+    private LoanHistory history;
+    private volatile Library library;
+    private int[] historyRows;
+    private int historyCount;
+
+    /**
+     * Constructs a new User with the specified ID and name. Initializes the
+     * user with no debts and no loans.
+     *
+     * @param ID the unique identifier of the user
+     * @param name the name of the user
+     */
+    public User(String ID, String name) {
+        super(ID, name);
+        this.accumulatedDebts = new AtomicLong();
+        this.debtVersions = new VersionedCounter();
+        this.activeLoanVersions = new VersionedCounter();
+        this.loan = new ArrayList<>();
+        this.activeLoans = new IntObjectMap<>();
+        this.historyRows = new int[0];
+    }
+
+    /**
+     * Adds a debt to the user's accumulated debts. The debt of a user in a
+     * library is recorded as a fine in the library's debt ledger, with no
+     * branch; a user outside a library keeps it until the library tracks it.
+     *
+     * @param debt the amount of debt to be added
+     */
+    void addDebts(long debt) {
+        Library owner = library;
+        if (owner != null) {
+            owner.getDebtLedger().recordFine(this, null, debt);
+            return;
+        }
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            addDebts(debt, version);
+        } finally {
+            clock.commit(version);
+        }
+    }
+
+    /**
+     * Adds a debt to the user's accumulated debts as part of a versioned
+     * change.
+     *
+     * @param debt the amount of debt to be added
+     * @param version the version of the change
+     */
+    void addDebts(long debt, long version) {
+        this.accumulatedDebts.addAndGet(debt);
+        this.debtVersions.add(debt, version, clock());
+    }
+
+    /**
+     * Gets the user's accumulated debts as of a version.
+     *
+     * @param version a version pinned by a read view
+     * @return the debts at that version
+     */
+    long getAccumulatedDebts(long version) {
+        return debtVersions.get(version);
+    }
+
+    /**
+     * Gets the user's accumulated debts.
+     *
+     * @return the user's accumulated debts
+     */
+    public long getAccumulatedDebts() {
+        return accumulatedDebts.get();
+    }
+
+    /**
+     * Adds a loan to the user's loan history and, while it has not been
+     * returned, to the user's open loans. The open loan counts from the
+     * version of the loan.
+     *
+     * @param loan the loan to be added
+     */
+    public void addLoan(Loan loan) {
+        synchronized (this.loan) {
+            this.loan.add(loan);
+        }
+        if (loan.getDateOfReturn() == null) {
+            synchronized (activeLoans) {
+                this.activeLoans.put(loan.getBook().getHandle(), loan);
+                this.activeLoanVersions.add(1, loan.getLoanVersion(), clock());
+            }
+        }
+    }
+
+    /**
+     * Gets a copy of the user's full loan history, including returned loans.
+     * Archived loans come first, in the order they were returned, as views
+     * built from the columnar history.
+     *
+     * @return the user's list of loans
+     */
+    public List<Loan> getLoan() {
+        synchronized (loan) {
+            List<Loan> loans = new ArrayList<>(historyCount + loan.size());
+            for (int i = 0; i < historyCount; i++) {
+                loans.add(history.get(historyRows[i]));
+            }
+            loans.addAll(loan);
+            return loans;
+        }
+    }
+
+    /**
+     * Gets the number of loans in the user's history, including returned
+     * loans.
+     *
+     * @return the number of loans
+     */
+    public int getLoanCount() {
+        synchronized (loan) {
+            return historyCount + loan.size();
+        }
+    }
+
+    /**
+     * Gets one loan of the user's history, in the order of
+     * {@link #getLoan()}, without copying the rest of the history.
+     *
+     * @param index the position of the loan
+     * @return the loan, or null if the position is past the end
+     */
+    public Loan getLoanAt(int index) {
+        synchronized (loan) {
+            if (index < 0 || index >= historyCount + loan.size()) {
+                return null;
+            }
+            return index < historyCount ? history.get(historyRows[index]) : loan.get(index - historyCount);
+        }
+    }
+
+    /**
+     * Moves the user's returned loans into a columnar history, and makes it
+     * the destination of the loans returned from now on.
+     *
+     * @param history the library's loan history
+     */
+    void attachHistory(LoanHistory history) {
+        synchronized (loan) {
+            this.history = history;
+            Iterator<Loan> it = loan.iterator();
+            while (it.hasNext()) {
+                Loan returned = it.next();
+                if (returned.getDateOfReturn() != null) {
+                    appendRow(history.append(returned));
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a returned loan to the columnar history, if the user has one,
+     * which moves it out of the history list once no read view can see it
+     * open.
+     *
+     * @param returned the returned loan
+     */
+    void archiveLoan(Loan returned) {
+        LoanHistory target;
+        synchronized (loan) {
+            target = history;
+        }
+        if (target != null) {
+            target.archive(returned);
+        }
+    }
+
+    /**
+     * Moves a returned loan from the history list to the columnar history.
+     *
+     * @param returned the returned loan
+     */
+    void moveToHistory(Loan returned) {
+        synchronized (loan) {
+            if (loan.remove(returned)) {
+                appendRow(history.append(returned));
+            }
+        }
+    }
+
+    /**
+     * Records a row of the columnar history as one of the user's loans.
+     * Callers must hold the history list's monitor.
+     *
+     * @param row the row of the loan
+     */
+    private void appendRow(int row) {
+        if (historyCount == historyRows.length) {
+            historyRows = Arrays.copyOf(historyRows, Math.max(4, historyCount * 2));
+        }
+        historyRows[historyCount++] = row;
+    }
+
+    /**
+     * Gets the open loan the user holds for a book.
+     *
+     * @param bookID the ID of the borrowed book
+     * @return the open loan for the book, or null if the user does not hold it
+     */
+    public Loan getActiveLoan(String bookID) {
+        int handle = bookHandle(bookID);
+        return handle >= 0 ? activeLoans.get(handle) : null;
+    }
+
+    /**
+     * Gets the handle of a book ID. Once the user is in a library the ID is
+     * looked up in the library's symbol table; before that, among the books
+     * of the user's open loans.
+     *
+     * @param bookID the ID of the book
+     * @return the handle, or -1 if the ID has none
+     */
+    private int bookHandle(String bookID) {
+        Library owner = library;
+        if (owner != null) {
+            return owner.getBookIds().lookup(bookID);
+        }
+        for (Loan open : getActiveLoans()) {
+            if (open.getBook().getID().equals(bookID)) {
+                return open.getBook().getHandle();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the library the user belongs to, whose symbol table the user looks
+     * up book IDs in and whose clock versions the user's changes.
+     *
+     * @param library the library the user joins
+     */
+    void setLibrary(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Gets the clock that versions the user's changes.
+     *
+     * @return the clock of the user's library, or the detached clock if the
+     * user is not in a library
+     */
+    private VersionClock clock() {
+        Library owner = library;
+        return owner != null ? owner.getClock() : VersionClock.DETACHED;
+    }
+
+    /**
+     * Moves an open loan to the new handle of its book, after the book's
+     * branch joined a library.
+     *
+     * @param loan the open loan
+     * @param previous the handle the book had before
+     */
+    void rekeyLoan(Loan loan, int previous) {
+        synchronized (activeLoans) {
+            if (activeLoans.remove(previous, loan)) {
+                activeLoans.put(loan.getBook().getHandle(), loan);
+            }
+        }
+    }
+
+    /**
+     * Closes the open loan the user holds for a book. The loan stays in the
+     * user's history.
+     *
+     * @param bookID the ID of the borrowed book
+     * @return the loan that was closed, or null if the user does not hold the
+     * book
+     */
+    public Loan closeLoan(String bookID) {
+        VersionClock clock = clock();
+        long version = clock.begin();
+        try {
+            return closeLoan(bookID, version);
+        } finally {
+            clock.commit(version);
+        }
+    }
+
+    /**
+     * Closes the open loan the user holds for a book as part of a versioned
+     * change.
+     *
+     * @param bookID the ID of the borrowed book
+     * @param version the version of the change
+     * @return the loan that was closed, or null if the user does not hold the
+     * book
+     */
+    Loan closeLoan(String bookID, long version) {
+        int handle = bookHandle(bookID);
+        if (handle < 0) {
+            return null;
+        }
+        synchronized (activeLoans) {
+            Loan loan = activeLoans.get(handle);
+            if (loan == null || !activeLoans.remove(handle, loan)) {
+                return null;
+            }
+            activeLoanVersions.add(-1, version, clock());
+            return loan;
+        }
+    }
+
+    /**
+     * Gets a copy of the loans the user has not returned yet.
+     *
+     * @return the user's open loans
+     */
+    public Collection<Loan> getActiveLoans() {
+        synchronized (activeLoans) {
+            return activeLoans.values();
+        }
+    }
+
+    /**
+     * Gets the number of books the user currently holds.
+     *
+     * @return the number of open loans
+     */
+    public int getActiveLoanCount() {
+        return activeLoans.size();
+    }
+
+    /**
+     * Gets the number of books the user held as of a version.
+     *
+     * @param version a version pinned by a read view
+     * @return the number of open loans at that version
+     */
+    int getActiveLoanCount(long version) {
+        return (int) activeLoanVersions.get(version);
+    }
+}
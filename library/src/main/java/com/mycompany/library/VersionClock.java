@@ -0,0 +1,229 @@
+package com.mycompany.library;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Numbers the changes made to a library so that a {@link ReadView} can see
+ * them as of one point in time. Each library has its own clock.
+ * <p>
+ * Every change takes the next version with {@link #begin()}, stamps the state
+ * it writes with it, and calls {@link #commit(long)} once it is done. Changes
+ * run concurrently and finish in any order; the visible version is the
+ * highest one such that every change up to it has committed, and it advances
+ * without locks. Views pin the visible version while they are open, so the
+ * history they need is kept until they close. Pins are kept in a lock-free
+ * ordered set, so finding the oldest one never blocks a change.
+ * <p>
+ * Elements that are not in a library yet use the {@link #DETACHED} clock,
+ * whose changes all have version 0: no view can see such an element, and its
+ * history is merged as soon as it joins a library.
+ */
+final class VersionClock {
+
+    /**
+     * The clock of the elements that are not in a library.
+     */
+    static final VersionClock DETACHED = new VersionClock(true);
+
+    private static final int WINDOW = 1 << 12;
+    private static final long WAIT_MILLIS = 1;
+    private static final Pin LOWEST = new Pin(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    private final boolean detached;
+    private final AtomicLong next;
+    private final AtomicLong visible;
+    private final AtomicLongArray committed;
+    private final ConcurrentSkipListSet<Pin> pins;
+    private final AtomicLong pinIds;
+    private final AtomicLong horizon;
+    private volatile int waiters;
+
+    /**
+     * Constructs a clock at version 0.
+     */
+    VersionClock() {
+        this(false);
+    }
+
+    /**
+     * Constructs a clock.
+     *
+     * @param detached true for the clock of the elements outside a library
+     */
+    private VersionClock(boolean detached) {
+        this.detached = detached;
+        this.next = new AtomicLong();
+        this.visible = new AtomicLong();
+        this.committed = new AtomicLongArray(detached ? 1 : WINDOW);
+        this.pins = new ConcurrentSkipListSet<>();
+        this.pinIds = new AtomicLong();
+        this.horizon = new AtomicLong();
+    }
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Starts a change. Every call must be followed by {@link #commit(long)},
+     * even if the change fails, or the visible version stops advancing. If
+     * more changes are in flight than the clock can track, waits for the
+     * oldest ones to commit.
+     *
+     * @return the version of the change
+     */
+    long begin() {
+        if (detached) {
+            return 0;
+        }
+        long version = next.incrementAndGet();
+        if (version - visible.get() >= WINDOW) {
+            awaitWindow(version);
+        }
+        return version;
+    }
+
+    /**
+     * Waits until a version fits in the window of changes in flight. Each
+     * wait is bounded, so a missed wake-up costs at most one period.
+     *
+     * @param version the version of the waiting change
+     */
+    private synchronized void awaitWindow(long version) {
+        waiters++;
+        try {
+            boolean interrupted = false;
+            while (version - visible.get() >= WINDOW) {
+                try {
+                    wait(WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    // the change has a version already and must go on
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            waiters--;
+        }
+    }
+
+    /**
+     * Marks a change as done and advances the visible version past every
+     * change that has committed.
+     *
+     * @param version the version returned by {@link #begin()}
+     */
+    void commit(long version) {
+        if (detached) {
+            return;
+        }
+        committed.set((int) (version & (WINDOW - 1)), version);
+        long current = visible.get();
+        while (committed.get((int) ((current + 1) & (WINDOW - 1))) == current + 1) {
+            if (visible.compareAndSet(current, current + 1)) {
+                current++;
+            } else {
+                current = visible.get();
+            }
+        }
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Pins the visible version, keeping the history needed to read it. The
+     * pin is taken again if a horizon above it was handed out before the pin
+     * could be seen.
+     *
+     * @return the pin, to be released with {@link #unpin(Pin)}
+     */
+    Pin pin() {
+        long id = pinIds.incrementAndGet();
+        while (true) {
+            Pin pin = new Pin(visible.get(), id);
+            pins.add(pin);
+            if (horizon.get() <= pin.version) {
+                return pin;
+            }
+            pins.remove(pin);
+        }
+    }
+
+    /**
+     * Releases a pin taken by {@link #pin()}.
+     *
+     * @param pin the pin
+     */
+    void unpin(Pin pin) {
+        pins.remove(pin);
+    }
+
+    /**
+     * Gets the oldest version that can still be read: the oldest pinned
+     * version, or the visible version if nothing is pinned. History at or
+     * below it can be merged.
+     *
+     * @return the oldest readable version
+     */
+    long horizon() {
+        if (detached) {
+            return 0;
+        }
+        long version = visible.get();
+        // published before the pins are read, so a pin taken meanwhile sees it
+        long handed = horizon.get();
+        while (handed < version && !horizon.compareAndSet(handed, version)) {
+            handed = horizon.get();
+        }
+        Pin oldest = pins.ceiling(LOWEST);
+        return oldest != null ? Math.min(version, oldest.version) : version;
+    }
+
+    /**
+     * A version pinned by a view.
+     */
+    static final class Pin implements Comparable<Pin> {
+
+        private final long version;
+        private final long id;
+
+        /**
+         * Constructs a pin.
+         *
+         * @param version the pinned version
+         * @param id the number of the pin, unique in its clock
+         */
+        Pin(long version, long id) {
+            this.version = version;
+            this.id = id;
+        }
+
+        /**
+         * Gets the pinned version.
+         *
+         * @return the version
+         */
+        long getVersion() {
+            return version;
+        }
+
+        @Override
+        public int compareTo(Pin other) {
+            int byVersion = Long.compare(version, other.version);
+            return byVersion != 0 ? byVersion : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Pin && compareTo((Pin) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(version) * 31 + Long.hashCode(id);
+        }
+    }
+}
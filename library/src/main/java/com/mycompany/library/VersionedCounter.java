@@ -0,0 +1,130 @@
+package com.mycompany.library;
+
+/**
+ * A counter that can be read as of any version still pinned by a
+ * {@link ReadView}.
+ * <p>
+ * The counter is a base value plus a short list of changes, each stamped
+ * with the version that made it. Changes commute, so they are recorded in
+ * whatever order their writers arrive, and a read at a version adds up the
+ * changes at or below it. The changes are appended in place to two arrays
+ * and published by a volatile length, so recording one allocates nothing
+ * until the arrays are full. Then the changes below the
+ * {@link VersionClock#horizon()} are merged into the base and the rest are
+ * copied to new arrays, twice as long as they need, so the list stays short
+ * unless a view is left open. Reads never lock.
+ */
+final class VersionedCounter {
+
+    private static final int MIN_CAPACITY = 4;
+    private static final State EMPTY = new State(0, new long[0], new long[0], 0);
+
+    private volatile State state = EMPTY;
+
+    /* ---------------------- METODS ------------------------*/
+    /**
+     * Records a change.
+     *
+     * @param delta the amount added to the counter
+     * @param version the version of the change
+     * @param clock the clock the version comes from
+     */
+    synchronized void add(long delta, long version, VersionClock clock) {
+        State current = state;
+        int length = current.length;
+        if (length < current.versions.length) {
+            // readers only look below the published length, so the slot is theirs once it is set
+            current.versions[length] = version;
+            current.deltas[length] = delta;
+            current.length = length + 1;
+            return;
+        }
+        long horizon = clock.horizon();
+        long base = current.base;
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            if (current.versions[i] > horizon) {
+                kept++;
+            } else {
+                base += current.deltas[i];
+            }
+        }
+        if (version <= horizon) {
+            int capacity = Math.max(MIN_CAPACITY, kept * 2);
+            state = new State(base + delta, new long[capacity], new long[capacity], 0).copyAbove(current, horizon);
+            return;
+        }
+        int capacity = Math.max(MIN_CAPACITY, (kept + 1) * 2);
+        State folded = new State(base, new long[capacity], new long[capacity], 0).copyAbove(current, horizon);
+        folded.versions[folded.length] = version;
+        folded.deltas[folded.length] = delta;
+        folded.length++;
+        state = folded;
+    }
+
+    /**
+     * Gets the value of the counter as of a version.
+     *
+     * @param version a version at or above the horizon
+     * @return the value at that version
+     */
+    long get(long version) {
+        State current = state;
+        int length = current.length;
+        long value = current.base;
+        for (int i = 0; i < length; i++) {
+            if (current.versions[i] <= version) {
+                value += current.deltas[i];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * A state of the counter: a base and the changes not merged yet. Only
+     * the length changes, when a change is appended.
+     */
+    private static final class State {
+
+        private final long base;
+        private final long[] versions;
+        private final long[] deltas;
+        private volatile int length;
+
+        /**
+         * Constructs a state.
+         *
+         * @param base the sum of the merged changes
+         * @param versions the versions of the changes not merged yet
+         * @param deltas the amounts of the changes not merged yet
+         * @param length the number of changes not merged yet
+         */
+        State(long base, long[] versions, long[] deltas, int length) {
+            this.base = base;
+            this.versions = versions;
+            this.deltas = deltas;
+            this.length = length;
+        }
+
+        /**
+         * Appends the changes of another state that are above a horizon.
+         * Called before the state is published.
+         *
+         * @param other the state to copy from
+         * @param horizon the version at or below which changes were merged
+         * @return this state
+         */
+        State copyAbove(State other, long horizon) {
+            int length = this.length;
+            for (int i = 0; i < other.length; i++) {
+                if (other.versions[i] > horizon) {
+                    versions[length] = other.versions[i];
+                    deltas[length] = other.deltas[i];
+                    length++;
+                }
+            }
+            this.length = length;
+            return this;
+        }
+    }
+}
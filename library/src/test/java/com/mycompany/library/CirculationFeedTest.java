@@ -0,0 +1,203 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Publishes events from several threads at once and reads them back.
+ */
+class CirculationFeedTest {
+
+    private static final int PRODUCERS = 4;
+    private static final long STRIDE = 1_000_000;
+
+    /**
+     * Checks that a subscriber that keeps up reads every event once, in
+     * sequence order and, for each producer, in the order it published.
+     *
+     * @throws Exception if a producer fails
+     */
+    @Test
+    void deliversEveryEventInOrder() throws Exception {
+        Library library = newLibrary();
+        CirculationFeed feed = new CirculationFeed(library, 1 << 16);
+        try (CirculationFeed.Subscription subscription = feed.subscribe()) {
+            publish(library, feed, 10_000);
+            Checker checker = new Checker();
+            while (subscription.poll(checker, 1000) > 0) {
+                // drains the feed
+            }
+            assertEquals(PRODUCERS * 10_000L, feed.getPublished());
+            assertEquals(feed.getPublished(), checker.delivered);
+            assertEquals(0, subscription.getDropped());
+            assertEquals(0, subscription.getLag());
+            assertTrue(checker.endOfBatch);
+        }
+    }
+
+    /**
+     * Checks that a subscriber reading while producers lap a small ring
+     * counts the events it lost as dropped, never reads a slot while it is
+     * being overwritten and still sees each producer's events in order.
+     *
+     * @throws Exception if a producer fails
+     */
+    @Test
+    void countsOverwrittenEventsAsDropped() throws Exception {
+        Library library = newLibrary();
+        CirculationFeed feed = new CirculationFeed(library, 64);
+        try (CirculationFeed.Subscription subscription = feed.subscribe()) {
+            Checker checker = new Checker();
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        subscription.poll(checker, 16);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            reader.start();
+            try {
+                publish(library, feed, 50_000);
+            } finally {
+                done.set(true);
+                reader.join();
+            }
+            if (failure.get() != null) {
+                fail(failure.get());
+            }
+            while (subscription.poll(checker, 1000) > 0) {
+                // drains the feed
+            }
+            assertEquals(feed.getPublished(), checker.delivered + subscription.getDropped());
+            assertTrue(subscription.getDropped() > 0, "the reader never fell a ring behind");
+        }
+    }
+
+    /**
+     * Checks that a handler failure on a subscription's thread is reported
+     * to the handler and skips only the event that failed.
+     *
+     * @throws Exception if the wait is interrupted
+     */
+    @Test
+    void reportsHandlerFailures() throws Exception {
+        Library library = newLibrary();
+        CirculationFeed feed = new CirculationFeed(library, 64);
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        try (CirculationFeed.Subscription subscription = feed.subscribe("feed-test", new CirculationEventHandler() {
+            @Override
+            public void onEvent(CirculationEvent event, boolean endOfBatch) {
+                if (event.getAmount() == 1) {
+                    throw new IllegalStateException("bad event");
+                }
+                received.add(event.getAmount());
+            }
+
+            @Override
+            public void onFailure(RuntimeException cause) {
+                received.add(cause);
+            }
+        })) {
+            Book book = library.searchBookByID("K0");
+            Branch branch = book.getBranch();
+            for (long amount = 0; amount < 3; amount++) {
+                feed.publish(CirculationEvent.Type.FINED, null, book, branch, amount, 0);
+            }
+            assertEquals(0L, received.poll(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, received.poll(10, TimeUnit.SECONDS));
+            assertEquals(2L, received.poll(10, TimeUnit.SECONDS));
+            assertEquals(0, subscription.getDropped());
+        }
+    }
+
+    /**
+     * Builds a library with one branch holding a book per producer.
+     *
+     * @return the library
+     */
+    private static Library newLibrary() {
+        Library library = new Library();
+        Branch branch = new Branch("S0", "North");
+        library.addBranch(branch);
+        for (int p = 0; p < PRODUCERS; p++) {
+            branch.addBook(new Book("K" + p, "Title " + p, "Author"));
+        }
+        return library;
+    }
+
+    /**
+     * Publishes events from several threads at once. Producer p publishes
+     * for book Kp with amounts p * STRIDE, p * STRIDE + 1 and so on.
+     *
+     * @param library the library of the books
+     * @param feed the feed
+     * @param events the number of events of each producer
+     * @throws Exception if a producer fails
+     */
+    private static void publish(Library library, CirculationFeed feed, int events) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Book book = library.searchBookByID("K" + p);
+            producers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < events; i++) {
+                    feed.publish(CirculationEvent.Type.LENT, null, book, book.getBranch(), producer * STRIDE + i, i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> producer : producers) {
+                producer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks the events it receives: sequences grow, every field of an event
+     * comes from the same publication and each producer's amounts grow.
+     */
+    private static final class Checker implements CirculationEventHandler {
+
+        private final long[] lastAmount;
+        private long lastSequence;
+        private long delivered;
+        private boolean endOfBatch;
+
+        /**
+         * Constructs a checker that has seen no events.
+         */
+        Checker() {
+            this.lastAmount = new long[PRODUCERS];
+            Arrays.fill(lastAmount, -1);
+            this.lastSequence = -1;
+        }
+
+        @Override
+        public void onEvent(CirculationEvent event, boolean endOfBatch) {
+            assertTrue(event.getSequence() > lastSequence, "sequence went back");
+            lastSequence = event.getSequence();
+            int producer = (int) (event.getAmount() / STRIDE);
+            assertEquals("K" + producer, event.getBook().getID());
+            assertEquals(event.getAmount() % STRIDE, event.getTime());
+            assertTrue(event.getAmount() > lastAmount[producer], "producer order lost");
+            lastAmount[producer] = event.getAmount();
+            delivered++;
+            this.endOfBatch = endOfBatch;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs lends, returns, drop-box returns and transfers from many threads on
+ * shared books and users, then checks that the library is still consistent.
+ */
+class ConcurrentLendingTest {
+
+    private static final int BRANCHES = 4;
+    private static final int BOOKS_PER_BRANCH = 100;
+    private static final int USERS = 30;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 4000;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Checks the invariants with every call on the caller's thread.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    void keepsInvariantsUnderConcurrentCirculation() throws Exception {
+        Library library = newLibrary();
+        circulate(library);
+        assertInvariants(library);
+    }
+
+    /**
+     * Checks the invariants with lends and returns routed through branch
+     * shards.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    void keepsInvariantsWithBranchShards() throws Exception {
+        Library library = newLibrary();
+        try (BranchShards shards = new BranchShards(library, 3)) {
+            library.setShards(shards);
+            circulate(library);
+        }
+        assertNull(library.getShards());
+        assertInvariants(library);
+    }
+
+    /**
+     * Checks that the batch returns of closed shards are applied on the
+     * calling thread and synced to the journal before they are reported.
+     *
+     * @param directory a directory for the journal
+     * @throws IOException if the journal fails
+     */
+    @Test
+    void returnsOnTheCallerThreadOnceShardsClose(@TempDir Path directory) throws IOException {
+        Library library = newLibrary();
+        try (TransactionJournal journal = new TransactionJournal(directory, 1 << 20)) {
+            library.setJournal(journal);
+            assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0_0", "S0"));
+            assertEquals(CirculationResult.LENT, library.lendBook("U1", "K0_1", "S0"));
+            BranchShards shards = new BranchShards(library, 2);
+            shards.close();
+
+            Branch branch = library.searchBranchByID("S1");
+            List<CirculationResult> results = shards.returnBooks(branch,
+                    List.of(library.searchUserByID("U0"), library.searchUserByID("U1")),
+                    List.of(library.searchBookByID("K0_0"), library.searchBookByID("K0_1")), new Date());
+            assertEquals(List.of(CirculationResult.RETURNED, CirculationResult.RETURNED), results);
+            assertEquals(journal.getLastSequence(), journal.getDurableSequence());
+            assertEquals(BOOKS_PER_BRANCH + 2, branch.getAvailableCount());
+        }
+    }
+
+    /**
+     * Builds a library with a few branches full of books and some users.
+     *
+     * @return the library
+     */
+    private static Library newLibrary() {
+        Library library = new Library();
+        for (int b = 0; b < BRANCHES; b++) {
+            Branch branch = new Branch("S" + b, "Branch " + b);
+            library.addBranch(branch);
+            for (int i = 0; i < BOOKS_PER_BRANCH; i++) {
+                branch.addBook(new Book("K" + b + "_" + i, "Title " + i, "Author " + b));
+            }
+        }
+        for (int u = 0; u < USERS; u++) {
+            library.addUser(new User("U" + u, "User " + u));
+        }
+        return library;
+    }
+
+    /**
+     * Runs random circulation from several threads at once. Returns are
+     * dated up to a month ahead, so some of them are fined.
+     *
+     * @param library the library
+     * @throws Exception if a worker fails
+     */
+    private static void circulate(Library library) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    String user = "U" + random.nextInt(USERS);
+                    String branch = "S" + random.nextInt(BRANCHES);
+                    String book = "K" + random.nextInt(BRANCHES) + "_" + random.nextInt(BOOKS_PER_BRANCH);
+                    Date dateOfReturn = new Date(System.currentTimeMillis() + random.nextInt(30) * DAY);
+                    switch (random.nextInt(5)) {
+                        case 0, 1 -> {
+                            Branch owner = library.searchBranchOfBook(book);
+                            if (owner != null) {
+                                library.lendBook(user, book, owner.getID());
+                            }
+                        }
+                        case 2 -> {
+                            Iterator<Loan> loans = library.searchUserByID(user).getActiveLoans().iterator();
+                            if (loans.hasNext()) {
+                                library.returnBook(user, loans.next().getBook().getID(), branch, dateOfReturn);
+                            }
+                        }
+                        case 3 ->
+                            library.returnDropBox(List.of(book), branch, dateOfReturn);
+                        default -> {
+                            Branch owner = library.searchBranchOfBook(book);
+                            if (owner != null) {
+                                library.transferBooks(List.of(book), owner.getID(), branch);
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that no book is lent twice, that open loans and loaned books
+     * agree, that no book was lost and that the fines add up to the debt
+     * ledger's total.
+     *
+     * @param library the library
+     */
+    private static void assertInvariants(Library library) {
+        Map<Book, User> borrowers = new HashMap<>();
+        long debts = 0;
+        for (User user : library.getUsers()) {
+            for (Loan loan : user.getActiveLoans()) {
+                User previous = borrowers.put(loan.getBook(), user);
+                assertNull(previous, () -> loan.getBook().getID() + " is lent twice");
+                assertSame(loan, loan.getBook().getCurrentLoan());
+            }
+            long fines = 0;
+            for (Loan loan : user.getLoan()) {
+                fines += loan.calculatePenalty();
+            }
+            assertEquals(fines, user.getAccumulatedDebts(), user.getID());
+            debts += user.getAccumulatedDebts();
+        }
+        int collection = 0;
+        int available = 0;
+        int loaned = 0;
+        for (Branch branch : library.getBranches()) {
+            collection += branch.getBookCount();
+            available += branch.getAvailableCount();
+            for (Book book : branch.getBookCollection()) {
+                if (book.isLoaned()) {
+                    loaned++;
+                    assertTrue(borrowers.containsKey(book), () -> book.getID() + " is loaned without a loan");
+                }
+            }
+        }
+        assertEquals(BRANCHES * BOOKS_PER_BRANCH, collection);
+        assertEquals(borrowers.size(), loaned);
+        assertEquals(collection, available + loaned);
+        assertTrue(debts > 0, "no return was fined");
+        assertEquals(debts, library.getDebtLedger().getTotalOutstanding());
+    }
+}
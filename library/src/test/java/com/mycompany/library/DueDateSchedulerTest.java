@@ -0,0 +1,92 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Indexes open loans by due day and flags the overdue ones.
+ */
+class DueDateSchedulerTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Checks that a loan registered after its due day was swept, as a
+     * restored loan is, is flagged by the next sweep, and that a returned
+     * loan is no longer reported.
+     */
+    @Test
+    void flagsLoansRegisteredAfterTheirDayWasSwept() {
+        DueDateScheduler scheduler = new DueDateScheduler();
+        long today = DueDateScheduler.today();
+        Loan recent = loan(today - 20);
+        scheduler.register(recent);
+        List<Loan> flagged = new ArrayList<>();
+        assertEquals(1, scheduler.sweep(today, flagged::add));
+        assertEquals(0, scheduler.sweep(today, flagged::add));
+
+        Loan restored = loan(today - 30);
+        scheduler.register(restored);
+        assertEquals(1, scheduler.sweep(today, flagged::add));
+        assertEquals(List.of(recent, restored), flagged);
+        assertTrue(restored.isOverdue());
+
+        restored.setDateOfReturn(new Date());
+        scheduler.unregister(restored);
+        assertEquals(0, scheduler.sweep(today, null));
+        assertEquals(List.of(recent), scheduler.getOverdue(today));
+        assertEquals(5 * Loan.PENALTY, scheduler.getAccruedFines(today));
+    }
+
+    /**
+     * Checks that loans registered while a sweep drops the empty buckets of
+     * their due day are never lost. Each day holds one loan, which is
+     * returned just before the next one of the day is registered, so its
+     * bucket is empty in between.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    void keepsLoansRegisteredWhileBucketsAreDropped() throws Exception {
+        DueDateScheduler scheduler = new DueDateScheduler();
+        long today = DueDateScheduler.today();
+        int days = 8;
+        Loan[] open = new Loan[days];
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> registrar = executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    int d = i % days;
+                    if (open[d] != null) {
+                        open[d].setDateOfReturn(new Date());
+                        scheduler.unregister(open[d]);
+                    }
+                    open[d] = loan(today - 20 - d);
+                    scheduler.register(open[d]);
+                }
+            });
+            while (!registrar.isDone()) {
+                scheduler.sweep(today, null);
+            }
+            registrar.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(Set.of(open), new HashSet<>(scheduler.getOverdue(today)));
+        assertEquals(days, scheduler.getOverdue(today).size());
+    }
+
+    /**
+     * Builds an open loan made on a day.
+     *
+     * @param day the day of the loan, in days since the epoch
+     * @return the loan
+     */
+    private static Loan loan(long day) {
+        return new Loan(new User("U0", "Ana"), new Book("K0", "Title", "Author"), new Branch("S0", "North"),
+                new Date(day * DAY));
+    }
+}
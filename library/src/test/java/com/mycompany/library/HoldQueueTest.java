@@ -0,0 +1,101 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Places, cancels and fulfills holds on one book.
+ */
+class HoldQueueTest {
+
+    private Library library;
+    private List<String> ready;
+    private HoldListener listener;
+
+    /**
+     * Builds a library with one book lent to U0, two branches and three more
+     * users waiting to place holds.
+     */
+    @BeforeEach
+    void setUp() {
+        library = new Library();
+        Branch north = new Branch("S0", "North");
+        library.addBranch(north);
+        library.addBranch(new Branch("S1", "South"));
+        north.addBook(new Book("K0", "Title", "Author"));
+        for (int u = 0; u < 4; u++) {
+            library.addUser(new User("U" + u, "User " + u));
+        }
+        ready = new CopyOnWriteArrayList<>();
+        listener = hold -> ready.add(hold.getUser().getID() + "@" + hold.getBranch().getID());
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+    }
+
+    /**
+     * Checks that a returned copy goes to the first waiting hold at the
+     * branch it was returned to, and to the next one when that hold is
+     * cancelled.
+     */
+    @Test
+    void handsReturnedCopiesOverInOrder() {
+        Hold first = library.placeHold("U1", "K0", listener);
+        Hold second = library.placeHold("U2", "K0", listener);
+        Hold third = library.placeHold("U3", "K0", listener);
+        assertEquals(3, library.searchBookByID("K0").getHoldCount());
+        assertTrue(second.cancel());
+        assertFalse(second.cancel());
+
+        assertTrue(library.returnBook("U0", "K0", "S1", new Date()));
+        assertEquals(List.of("U1@S1"), ready);
+        assertEquals(Hold.State.READY, first.getState());
+        assertEquals(0, library.getAvailableCount("S1"));
+        assertEquals(CirculationResult.ON_HOLD, library.lendBook("U3", "K0", "S1"));
+
+        assertTrue(first.cancel());
+        assertEquals(List.of("U1@S1", "U3@S1"), ready);
+        assertEquals(CirculationResult.LENT, library.lendBook("U3", "K0", "S1"));
+        assertEquals(Hold.State.FULFILLED, third.getState());
+        assertFalse(third.cancel());
+    }
+
+    /**
+     * Checks that a hold on a copy that is on a shelf is ready at once, and
+     * that cancelling it puts the copy back on the shelf.
+     */
+    @Test
+    void setsAsideACopyOnTheShelf() {
+        assertTrue(library.returnBook("U0", "K0", "S0", new Date()));
+        assertEquals(1, library.getAvailableCount("S0"));
+
+        Hold hold = library.placeHold("U1", "K0", listener);
+        assertEquals(Hold.State.READY, hold.getState());
+        assertEquals(List.of("U1@S0"), ready);
+        assertEquals(0, library.getAvailableCount("S0"));
+        assertTrue(library.searchBookByID("K0").isReserved());
+
+        assertTrue(hold.cancel());
+        assertEquals(1, library.getAvailableCount("S0"));
+        assertFalse(library.searchBookByID("K0").isLoaned());
+    }
+
+    /**
+     * Checks that a hold whose listener fails is cancelled and the copy
+     * passes to the next hold.
+     */
+    @Test
+    void skipsAHoldWhoseListenerFails() {
+        Hold failing = library.placeHold("U1", "K0", hold -> {
+            throw new IllegalStateException("kiosk offline");
+        });
+        Hold next = library.placeHold("U2", "K0", listener);
+
+        assertTrue(library.returnBook("U0", "K0", "S0", new Date()));
+        assertEquals(Hold.State.CANCELLED, failing.getState());
+        assertEquals(Hold.State.READY, next.getState());
+        assertEquals(List.of("U2@S0"), ready);
+    }
+}
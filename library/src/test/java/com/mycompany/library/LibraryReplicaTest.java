@@ -0,0 +1,106 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Follows a primary with a replica over a local connection.
+ */
+class LibraryReplicaTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Checks that a replica started after a checkpoint loads the primary's
+     * snapshot, applies the journal records written after it and then keeps
+     * up with new ones.
+     *
+     * @throws Exception if replication fails
+     */
+    @Test
+    void catchesUpFromSnapshotAndTail() throws Exception {
+        Path snapshot = directory.resolve("library.snap");
+        Library library = new Library();
+        try (TransactionJournal journal = new TransactionJournal(directory.resolve("journal"), 1 << 20)) {
+            library.setJournal(journal);
+            Branch north = new Branch("S0", "North");
+            library.addBranch(north);
+            library.addBranch(new Branch("S1", "South"));
+            for (int i = 0; i < 20; i++) {
+                north.addBook(new Book("K" + i, "Title " + i, "Author"));
+            }
+            for (int u = 0; u < 3; u++) {
+                library.addUser(new User("U" + u, "User " + u));
+            }
+            assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+            journal.sync();
+            long checkpoint = journal.compact(snapshot);
+            assertEquals(journal.getLastSequence(), checkpoint);
+
+            // the tail the replica must replay after the snapshot
+            assertEquals(CirculationResult.LENT, library.lendBook("U1", "K1", "S0"));
+            assertTrue(library.returnBook("U0", "K0", "S1", new Date(System.currentTimeMillis() + 20 * DAY)));
+            assertTrue(journal.getLastSequence() > checkpoint);
+
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            try (ReplicationServer server = new ReplicationServer(journal, snapshot, new InetSocketAddress(loopback, 0));
+                    LibraryReplica replica = new LibraryReplica(new InetSocketAddress(loopback, server.getPort()),
+                            directory.resolve("replica"))) {
+                server.start();
+                replica.start();
+                assertTrue(replica.awaitSequence(journal.getLastSequence(), TIMEOUT_MILLIS));
+                TransactionJournalTest.assertSameState(library, replica.getLibrary());
+                assertEquals(1, server.getFollowerCount());
+
+                assertEquals(CirculationResult.LENT, library.lendBook("U2", "K2", "S0"));
+                assertTrue(replica.awaitSequence(journal.getLastSequence(), TIMEOUT_MILLIS));
+                TransactionJournalTest.assertSameState(library, replica.getLibrary());
+                assertTrue(replica.searchBookByID("K2").isLoaned());
+                assertEquals(0, replica.getLag());
+            }
+        }
+    }
+
+    /**
+     * Checks that a replica of a primary that has no checkpoint yet starts
+     * from an empty snapshot and replays the whole journal.
+     *
+     * @throws IOException if the journal fails
+     * @throws InterruptedException if the wait is interrupted
+     */
+    @Test
+    void replaysTheWholeJournalWithoutACheckpoint() throws IOException, InterruptedException {
+        Library library = new Library();
+        try (TransactionJournal journal = new TransactionJournal(directory.resolve("journal"), 1 << 20)) {
+            library.setJournal(journal);
+            Branch branch = new Branch("S0", "North");
+            library.addBranch(branch);
+            branch.addBook(new Book("K0", "Title", "Author"));
+            library.addUser(new User("U0", "Ana"));
+            assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            try (ReplicationServer server = new ReplicationServer(journal, directory.resolve("missing.snap"),
+                    new InetSocketAddress(loopback, 0));
+                    LibraryReplica replica = new LibraryReplica(new InetSocketAddress(loopback, server.getPort()),
+                            directory.resolve("replica"))) {
+                server.start();
+                replica.start();
+                assertTrue(replica.awaitSequence(journal.getLastSequence(), TIMEOUT_MILLIS));
+                TransactionJournalTest.assertSameState(library, replica.getLibrary());
+                assertFalse(Files.exists(directory.resolve("missing.snap")));
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.*;
+import java.net.http.*;
+import java.util.*;
+import java.util.logging.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sends lends, returns and searches to a server on a free local port.
+ */
+class LibraryServerTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * Checks that a lend, a search, a late return and the debt it leaves are
+     * answered with the library's results.
+     *
+     * @throws Exception if a request fails
+     */
+    @Test
+    void lendsSearchesAndReturns() throws Exception {
+        Library library = newLibrary();
+        try (LibraryServer server = new LibraryServer(library, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            assertResponse(200, "{\"result\":\"LENT\"}", post(server, "/lend", "user=U0&book=K0&branch=S0"));
+            assertResponse(409, "{\"result\":\"ALREADY_LOANED\"}", post(server, "/lend", "user=U0&book=K0&branch=S0"));
+            assertSame(library.searchUserByID("U0"), library.searchBookByID("K0").getCurrentLoan().getUser());
+
+            HttpResponse<String> search = get(server, "/search?q=cien+anos&available=true");
+            assertEquals(200, search.statusCode());
+            assertFalse(search.body().contains("\"K0\""), search.body());
+            assertTrue(search.body().contains("\"K1\""), search.body());
+
+            long late = System.currentTimeMillis() + 20 * DAY;
+            assertResponse(200, "{\"result\":\"RETURNED\"}", post(server, "/return", "user=U0&book=K0&branch=S0&date=" + late));
+            assertFalse(library.searchBookByID("K0").isLoaned());
+            assertTrue(get(server, "/search?q=cien+anos&available=true").body().contains("\"K0\""));
+            assertTrue(get(server, "/debts?user=U0").body().contains("\"debt\":50"), "U0 was not fined");
+
+            assertEquals(400, post(server, "/lend", "user=U0&book=K1").statusCode());
+            assertEquals(405, get(server, "/lend?user=U0&book=K1&branch=S0").statusCode());
+        }
+    }
+
+    /**
+     * Checks that an unexpected failure is answered with a generic 500 and
+     * logged, without sending its message to the client.
+     *
+     * @throws Exception if a request fails
+     */
+    @Test
+    void hidesTheCauseOfInternalErrors() throws Exception {
+        Library library = new Library() {
+            @Override
+            public List<Book> searchBooks(String query, String branchID, boolean availableOnly, int limit) {
+                throw new IllegalStateException("secret detail");
+            }
+        };
+        Logger logger = Logger.getLogger(LibraryServer.class.getName());
+        List<LogRecord> logged = Collections.synchronizedList(new ArrayList<>());
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        try (LibraryServer server = new LibraryServer(library, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            assertResponse(500, "{\"error\":\"Internal error\"}", get(server, "/search?q=x"));
+        } finally {
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(true);
+        }
+        assertEquals(1, logged.size());
+        assertEquals("secret detail", logged.get(0).getThrown().getMessage());
+    }
+
+    /**
+     * Builds a library with one branch, two copies of a title and a user.
+     *
+     * @return the library
+     */
+    private static Library newLibrary() {
+        Library library = new Library();
+        Branch branch = new Branch("S0", "North");
+        library.addBranch(branch);
+        branch.addBook(new Book("K0", "Cien anos de soledad", "Gabriel Garcia Marquez"));
+        branch.addBook(new Book("K1", "Cien anos de soledad", "Gabriel Garcia Marquez"));
+        library.addUser(new User("U0", "Ana"));
+        return library;
+    }
+
+    /**
+     * Sends a GET request.
+     *
+     * @param server the server
+     * @param path the path and query string
+     * @return the response
+     * @throws IOException if the request fails
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private HttpResponse<String> get(LibraryServer server, String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(server, path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sends a POST request with a form body.
+     *
+     * @param server the server
+     * @param path the path
+     * @param form the URL-encoded form
+     * @return the response
+     * @throws IOException if the request fails
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private HttpResponse<String> post(LibraryServer server, String path, String form)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri(server, path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Builds the URI of a path on the server.
+     *
+     * @param server the server
+     * @param path the path and query string
+     * @return the URI
+     */
+    private static URI uri(LibraryServer server, String path) {
+        return URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + path);
+    }
+
+    /**
+     * Checks the status and body of a response.
+     *
+     * @param status the expected status
+     * @param body the expected body
+     * @param response the response
+     */
+    private static void assertResponse(int status, String body, HttpResponse<String> response) {
+        assertEquals(status, response.statusCode(), response.body());
+        assertEquals(body, response.body());
+    }
+}
@@ -0,0 +1,183 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes libraries to snapshots and loads them back.
+ */
+class LibrarySnapshotTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Checks that a loaded snapshot has the branches, books, open and
+     * returned loans, debts and journal sequence that were written, and that
+     * the debt ledger is rebuilt from them.
+     *
+     * @throws IOException if the snapshot fails
+     */
+    @Test
+    void loadsWhatWasWritten() throws IOException {
+        Library library = new Library();
+        Branch north = new Branch("S0", "North");
+        Branch south = new Branch("S1", "South");
+        library.addBranch(north);
+        library.addBranch(south);
+        for (int i = 0; i < 10; i++) {
+            north.addBook(new Book("K" + i, "Title " + i, "Author"));
+        }
+        south.addBook(new Book("K10", "Title 0", "Author"));
+        library.addUser(new User("U0", "Ana"));
+        library.addUser(new User("U1", "Luis"));
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K1", "S0"));
+        assertEquals(CirculationResult.LENT, library.lendBook("U1", "K2", "S0"));
+        assertTrue(library.returnBook("U0", "K1", "S1", new Date(System.currentTimeMillis() + 20 * DAY)));
+        assertTrue(library.getDebtLedger().getTotalOutstanding() > 0);
+
+        Path file = directory.resolve("library.snap");
+        LibrarySnapshot.write(library, file, 42);
+        assertEquals(42, LibrarySnapshot.readSequence(file));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            assertEquals(List.of(file), toList(files));
+        }
+
+        Library loaded = LibrarySnapshot.load(file);
+        TransactionJournalTest.assertSameState(library, loaded);
+        assertEquals(library.searchBranchOfBook("K1").getID(), loaded.searchBranchOfBook("K1").getID());
+        assertTrue(loaded.searchBookByID("K0").isLoaned());
+        assertEquals("U0", loaded.searchBookByID("K0").getCurrentLoan().getUser().getID());
+        assertEquals(library.calculatePenaltyByUser("U0"), loaded.calculatePenaltyByUser("U0"));
+        assertEquals(2, loaded.searchTitle("Title 0", "Author").getCopyCount());
+        DebtLedger ledger = loaded.getDebtLedger();
+        assertEquals(library.getDebtLedger().getBranchTotal("S0"), ledger.getBranchTotal("S0"));
+        assertEquals(ledger.getTotalOutstanding(), ledger.getBranchTotal("S0") + ledger.getBranchTotal("S1"));
+        assertEquals(CirculationResult.LENT, loaded.lendBook("U1", "K3", "S0"));
+    }
+
+    /**
+     * Checks that writing a snapshot over an existing one replaces it whole.
+     *
+     * @throws IOException if the snapshot fails
+     */
+    @Test
+    void replacesAnOlderSnapshot() throws IOException {
+        Library library = new Library();
+        Branch branch = new Branch("S0", "North");
+        library.addBranch(branch);
+        branch.addBook(new Book("K0", "Title", "Author"));
+        Path file = directory.resolve("library.snap");
+        LibrarySnapshot.write(library, file, 1);
+        branch.addBook(new Book("K1", "Title", "Author"));
+        LibrarySnapshot.write(library, file, 2);
+
+        Library loaded = LibrarySnapshot.load(file);
+        assertEquals(2, LibrarySnapshot.readSequence(file));
+        assertEquals(2, loaded.searchBranchByID("S0").getBookCount());
+    }
+
+    /**
+     * Checks that snapshots written while many threads lend and return are
+     * consistent: every book loaded as loaned has an open loan, and no book
+     * on a shelf has one.
+     *
+     * @throws Exception if a worker or a snapshot fails
+     */
+    @Test
+    void capturesAConsistentCutDuringCirculation() throws Exception {
+        Library library = new Library();
+        for (int b = 0; b < 2; b++) {
+            Branch branch = new Branch("S" + b, "Branch " + b);
+            library.addBranch(branch);
+            for (int i = 0; i < 50; i++) {
+                branch.addBook(new Book("K" + b + "_" + i, "Title " + i, "Author"));
+            }
+        }
+        for (int u = 0; u < 10; u++) {
+            library.addUser(new User("U" + u, "User " + u));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 5000; i++) {
+                    String user = "U" + random.nextInt(10);
+                    String book = "K" + random.nextInt(2) + "_" + random.nextInt(50);
+                    Branch owner = library.searchBranchOfBook(book);
+                    if (owner != null && library.lendBook(user, book, owner.getID()) == CirculationResult.LENT) {
+                        library.returnBook(user, book, "S" + random.nextInt(2),
+                                new Date(System.currentTimeMillis() + random.nextInt(20) * DAY));
+                    }
+                }
+                return null;
+            }));
+        }
+        Path file = directory.resolve("library.snap");
+        try {
+            for (int i = 0; i < 20 || !allDone(workers); i++) {
+                LibrarySnapshot.write(library, file);
+                Library loaded = LibrarySnapshot.load(file);
+                int loans = 0;
+                int books = 0;
+                for (User user : loaded.getUsers()) {
+                    loans += user.getActiveLoanCount();
+                }
+                for (Branch branch : loaded.getBranches()) {
+                    books += branch.getBookCount();
+                    for (Book book : branch.getBookCollection()) {
+                        assertEquals(book.isLoaned(), book.getCurrentLoan() != null, book.getID());
+                        if (book.isLoaned()) {
+                            loans--;
+                        }
+                    }
+                }
+                assertEquals(0, loans);
+                assertEquals(100, books);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (Future<?> worker : workers) {
+            worker.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Checks if every worker has finished.
+     *
+     * @param workers the workers
+     * @return true if none is running
+     */
+    private static boolean allDone(List<Future<?>> workers) {
+        for (Future<?> worker : workers) {
+            if (!worker.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the files of a directory.
+     *
+     * @param files the directory stream
+     * @return the files
+     */
+    private static List<Path> toList(DirectoryStream<Path> files) {
+        List<Path> list = new ArrayList<>();
+        files.forEach(list::add);
+        return list;
+    }
+}
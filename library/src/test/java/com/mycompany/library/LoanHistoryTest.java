@@ -0,0 +1,56 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Archives returned loans into the columnar history.
+ */
+class LoanHistoryTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Checks that a returned loan stays out of the history while a view that
+     * saw it open is still open, and that once archived it keeps the day it
+     * was lent and the penalty it was billed.
+     */
+    @Test
+    void archivesReturnsOnceNoViewSeesThemOpen() {
+        Library library = new Library();
+        Branch branch = new Branch("S0", "North");
+        library.addBranch(branch);
+        for (int i = 0; i < 3; i++) {
+            branch.addBook(new Book("K" + i, "Title " + i, "Author"));
+        }
+        library.addUser(new User("U0", "Ana"));
+        User user = library.searchUserByID("U0");
+        LoanHistory history = library.getLoanHistory();
+
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+        Date dateOfLoan = user.getActiveLoan("K0").getDateOfLoan();
+        try (ReadView view = library.openReadView()) {
+            assertTrue(library.returnBook("U0", "K0", "S0", new Date(dateOfLoan.getTime() + 20 * DAY)));
+            assertEquals(CirculationResult.LENT, library.lendBook("U0", "K1", "S0"));
+            assertTrue(library.returnBook("U0", "K1", "S0", new Date()));
+            assertEquals(0, history.size());
+            Loan seen = view.getLoans(user).get(0);
+            assertEquals("K0", seen.getBook().getID());
+            assertNull(view.getDateOfReturn(seen));
+        }
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K2", "S0"));
+        assertTrue(library.returnBook("U0", "K2", "S0", new Date()));
+
+        assertEquals(2, history.size());
+        assertEquals(50, history.calculatePenalty(0));
+        assertEquals(50, history.getTotalPenalties());
+        Loan archived = history.get(0);
+        assertEquals("K0", archived.getBook().getID());
+        assertEquals(Loan.toEpochDay(dateOfLoan.getTime()), Loan.toEpochDay(archived.getDateOfLoan().getTime()));
+        assertEquals(50, archived.calculatePenalty());
+        assertEquals(user.getAccumulatedDebts(), archived.calculatePenalty());
+        assertEquals(3, user.getLoanCount());
+    }
+}
@@ -0,0 +1,93 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Caches query results and drops them when their data changes.
+ */
+class QueryCacheTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Checks that a result is reused while its generation stays the same,
+     * recomputed once it changes, and never replaced by the result of a
+     * query that read an older generation.
+     */
+    @Test
+    void keepsResultsForTheirGeneration() {
+        QueryCache cache = new QueryCache(1000);
+        AtomicInteger runs = new AtomicInteger();
+        List<Object> key = List.of("query", 1);
+
+        assertEquals(List.of(1), cache.get(key, 1, () -> List.of(runs.incrementAndGet())));
+        assertEquals(List.of(1), cache.get(key, 1, () -> List.of(runs.incrementAndGet())));
+        assertEquals(1, cache.getHits());
+        assertEquals(List.of(2), cache.get(key, 2, () -> List.of(runs.incrementAndGet())));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(2, runs.get());
+        assertThrows(UnsupportedOperationException.class, () -> cache.get(key, 2, List::of).add(0));
+
+        // a query of generation 1 that finishes after one of generation 2 was stored
+        List<Object> slow = List.of("query", 2);
+        cache.get(slow, 1, () -> {
+            cache.get(slow, 2, () -> List.of("new"));
+            return List.of("old");
+        });
+        assertEquals(List.of("new"), cache.get(slow, 2, () -> List.of("again")));
+    }
+
+    /**
+     * Checks that the cache evicts the least recently used results to stay
+     * within its weight, and caches nothing when its weight is 0.
+     */
+    @Test
+    void staysWithinItsWeight() {
+        QueryCache cache = new QueryCache(16 * 10);
+        for (int i = 0; i < 1000; i++) {
+            cache.get(List.of("query", i), 0, () -> List.of(1, 2, 3));
+        }
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        assertTrue(cache.getEvictions() > 0);
+
+        QueryCache disabled = new QueryCache(0);
+        disabled.get(List.of("query"), 0, () -> List.of(1));
+        assertEquals(0, disabled.getSize());
+    }
+
+    /**
+     * Checks that the library's cached pages of available books and top
+     * debtors change as soon as a lend or a fine changes them.
+     */
+    @Test
+    void invalidatesLibraryQueriesOnCirculation() {
+        Library library = new Library();
+        Branch branch = new Branch("S0", "North");
+        library.addBranch(branch);
+        for (int i = 0; i < 5; i++) {
+            branch.addBook(new Book("K" + i, "Title " + i, "Author"));
+        }
+        library.addUser(new User("U0", "Ana"));
+        QueryCache cache = library.getQueryCache();
+
+        assertEquals(5, library.getAvailableBooks("S0", 0, 10).size());
+        assertEquals(5, library.getAvailableBooks("S0", 0, 10).size());
+        assertEquals(1, cache.getHits());
+        assertEquals(CirculationResult.LENT, library.lendBook("U0", "K0", "S0"));
+        List<Book> available = library.getAvailableBooks("S0", 0, 10);
+        assertEquals(4, available.size());
+        assertFalse(available.contains(library.searchBookByID("K0")));
+        assertEquals(1, cache.getInvalidations());
+
+        assertTrue(library.getTopDebtors(10).isEmpty());
+        assertTrue(library.returnBook("U0", "K0", "S0", new Date(System.currentTimeMillis() + 20 * DAY)));
+        List<DebtLedger.Entry> debtors = library.getTopDebtors(10);
+        assertEquals(1, debtors.size());
+        assertEquals("U0", debtors.get(0).getUser().getID());
+        assertEquals(5, library.getAvailableBooks("S0", 0, 10).size());
+    }
+}
@@ -0,0 +1,140 @@
+package com.mycompany.library;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Replays journals, including one cut off in the middle of a record.
+ */
+class TransactionJournalTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Checks that a record torn by a crash is ignored on replay and cut off
+     * when the journal is opened again, so new records follow the last
+     * complete one.
+     *
+     * @throws IOException if the journal fails
+     */
+    @Test
+    void replaysUpToATornTailRecord() throws IOException {
+        Path journalDirectory = directory.resolve("journal");
+        Library library = new Library();
+        long lastSequence;
+        try (TransactionJournal journal = new TransactionJournal(journalDirectory, 1 << 20)) {
+            library.setJournal(journal);
+            circulate(library);
+            lastSequence = journal.getLastSequence();
+        }
+        Path segment;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(journalDirectory)) {
+            segment = segments.iterator().next();
+        }
+        long completeSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            // the header of a 40-byte record followed by only part of its body
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 0, 0, 0, 0, 1, 2, 3}));
+        }
+
+        Library replayed = new Library();
+        try (TransactionJournal journal = new TransactionJournal(journalDirectory, 1 << 20)) {
+            assertEquals(lastSequence, journal.getLastSequence());
+            assertEquals(completeSize, Files.size(segment));
+            assertEquals(lastSequence, journal.replay(replayed, 0));
+            assertSameState(library, replayed);
+
+            replayed.setJournal(journal);
+            assertEquals(CirculationResult.LENT, replayed.lendBook("U1", "K0_1", "S0"));
+            journal.sync();
+            assertEquals(lastSequence + 1, journal.getLastSequence());
+        }
+
+        Library reopened = new Library();
+        try (TransactionJournal journal = new TransactionJournal(journalDirectory, 1 << 20)) {
+            assertEquals(lastSequence + 1, journal.replay(reopened, 0));
+        }
+        assertSameState(replayed, reopened);
+    }
+
+    /**
+     * Checks that a thread interrupted while it waits for a record to reach
+     * the disk gets an error instead of a silent return, and keeps its
+     * interrupt flag.
+     *
+     * @throws IOException if the journal fails
+     */
+    @Test
+    void failsASyncInterruptedBeforeTheRecordIsOnDisk() throws IOException {
+        try (TransactionJournal journal = new TransactionJournal(directory.resolve("journal"), 1 << 20)) {
+            long pending = journal.getLastSequence() + 1;
+            Thread.currentThread().interrupt();
+            try {
+                UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> journal.sync(pending));
+                assertInstanceOf(InterruptedIOException.class, e.getCause());
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Fills a library and runs some lends and late returns on it.
+     *
+     * @param library the library
+     */
+    private static void circulate(Library library) {
+        for (int b = 0; b < 2; b++) {
+            Branch branch = new Branch("S" + b, "Branch " + b);
+            library.addBranch(branch);
+            for (int i = 0; i < 20; i++) {
+                branch.addBook(new Book("K" + b + "_" + i, "Title " + i, "Author"));
+            }
+        }
+        for (int u = 0; u < 5; u++) {
+            library.addUser(new User("U" + u, "User " + u));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(CirculationResult.LENT, library.lendBook("U" + (i % 5), "K0_" + (i + 2), "S0"));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(library.returnBook("U" + (i % 5), "K0_" + (i + 2), "S1",
+                    new Date(System.currentTimeMillis() + 20 * DAY)));
+        }
+    }
+
+    /**
+     * Checks that two libraries have the same books on their shelves and
+     * the same loans and debts.
+     *
+     * @param expected the original library
+     * @param actual the rebuilt library
+     */
+    static void assertSameState(Library expected, Library actual) {
+        for (Branch branch : expected.getBranches()) {
+            Branch copy = actual.searchBranchByID(branch.getID());
+            assertNotNull(copy, branch.getID());
+            assertEquals(branch.getBookCount(), copy.getBookCount(), branch.getID());
+            assertEquals(branch.getAvailableCount(), copy.getAvailableCount(), branch.getID());
+        }
+        for (User user : expected.getUsers()) {
+            User copy = actual.searchUserByID(user.getID());
+            assertNotNull(copy, user.getID());
+            assertEquals(user.getAccumulatedDebts(), copy.getAccumulatedDebts(), user.getID());
+            assertEquals(user.getActiveLoanCount(), copy.getActiveLoanCount(), user.getID());
+            assertEquals(user.getLoanCount(), copy.getLoanCount(), user.getID());
+        }
+        assertEquals(expected.getDebtLedger().getTotalOutstanding(), actual.getDebtLedger().getTotalOutstanding());
+    }
+}